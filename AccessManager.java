@@ -1,5 +1,13 @@
 package colgatedb;
 
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.PageMaker;
+import colgatedb.transactions.Permissions;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.RecordId;
+import colgatedb.tuple.Tuple;
 
 /**
  * ColgateDB
@@ -15,7 +23,106 @@ package colgatedb;
  * course at Colgate.  If this file contains remnants from SimpleDB, we are
  * grateful for Sam's permission to use and adapt his materials.
  */
+
+/**
+ * The access manager is the entry point through which files access pages on behalf of
+ * transactions.  It combines concurrency control (deciding when a transaction may
+ * read or write a page), the buffer manager (pinning pages) and transaction
+ * completion.  A file calls {@link #acquireLock} before {@link #pinPage} and calls
+ * {@link #unpinPage} when it is done with the page; the transaction calls
+ * {@link #transactionComplete} once at the end.
+ * <p>
+ * Implementations differ in how they control concurrency; which one is used is set
+ * with {@link Database#setAccessManager}:
+ * <ul>
+ * <li>AccessManagerImpl (the default) uses strict two-phase locking, of pages or,
+ * for deletions, optionally of single records.</li>
+ * <li>{@link OptimisticAccessManager} uses optimistic concurrency control, which
+ * avoids locking overhead in read-mostly workloads with few conflicts.</li>
+ * </ul>
+ */
 public interface AccessManager {
-     // this interface will be filled in later during the semester
 
+    /**
+     * Declares that transaction tid is about to read (or, with
+     * {@link Permissions#READ_WRITE}, modify) page pid, waiting if the concurrency
+     * control requires it.
+     *
+     * @throws TransactionAbortedException if tid has to be aborted, e.g., on deadlock
+     */
+    void acquireLock(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException;
+
+    /**
+     * Declares that transaction tid is about to read (or, with
+     * {@link Permissions#READ_WRITE}, modify) record rid of a page, rather than the
+     * whole page.  Implementations that do not lock single records treat this as
+     * {@link #acquireLock} on the record's page.
+     *
+     * @throws TransactionAbortedException if tid has to be aborted, e.g., on deadlock
+     */
+    void acquireRecordLock(TransactionId tid, RecordId rid, Permissions perm) throws TransactionAbortedException;
+
+    /**
+     * Notes that tid has deleted record rid, which held tuple t, from page, after
+     * locking it with {@link #acquireRecordLock}, so that the deletion alone can be
+     * undone if tid aborts.  Must be called while page is latched exclusively, and
+     * the page must still be unpinned with {@link #unpinPage} as dirty.
+     */
+    void recordDeleted(TransactionId tid, Page page, RecordId rid, Tuple t);
+
+    /**
+     * @return true if tid may access page pid with permissions at least as strong as
+     * perm
+     */
+    boolean holdsLock(TransactionId tid, PageId pid, Permissions perm);
+
+    /**
+     * Gives up tid's access to page pid before the transaction completes, e.g., after
+     * finding that the page has no free slot.  Use with caution: this gives up the
+     * isolation guarantees for the page.
+     */
+    void releaseLock(TransactionId tid, PageId pid);
+
+    /**
+     * Pins page pid for transaction tid, which must have called {@link #acquireLock}
+     * first.  The page returned is the one tid must read and modify; it need not be
+     * the page in the buffer pool.
+     *
+     * @param pageMaker used to create the page if it must be read from disk
+     */
+    Page pinPage(TransactionId tid, PageId pid, PageMaker pageMaker);
+
+    /**
+     * Unpins a page returned by {@link #pinPage}.
+     *
+     * @param isDirty whether tid modified the page
+     */
+    void unpinPage(TransactionId tid, Page page, boolean isDirty);
+
+    /**
+     * Allocates a new page on disk.
+     */
+    void allocatePage(PageId pid);
+
+    /**
+     * Commits transaction tid.
+     *
+     * @throws TransactionAbortedException if tid cannot commit and was aborted instead
+     */
+    void transactionComplete(TransactionId tid) throws TransactionAbortedException;
+
+    /**
+     * Commits or aborts transaction tid.  Afterwards, tid no longer holds any locks.
+     *
+     * @param commit true to commit, false to abort
+     * @throws TransactionAbortedException if tid was to commit but cannot and was
+     * aborted instead
+     */
+    void transactionComplete(TransactionId tid, boolean commit) throws TransactionAbortedException;
+
+    /**
+     * Sets whether the pages modified by a transaction are written to disk when it
+     * commits (FORCE) or only eventually (NO-FORCE).
+     */
+    void setForce(boolean force);
 }
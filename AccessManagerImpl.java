@@ -0,0 +1,475 @@
+package colgatedb;
+
+import colgatedb.logging.LogFile;
+import colgatedb.logging.LogManagerException;
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.PageMaker;
+import colgatedb.page.SlottedPage;
+import colgatedb.transactions.LockManager;
+import colgatedb.transactions.LockManagerImpl;
+import colgatedb.transactions.Permissions;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.transactions.VersionStore;
+import colgatedb.tuple.RecordId;
+import colgatedb.tuple.Tuple;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * The default access manager: strict two-phase locking with page locks from a
+ * {@link LockManagerImpl}, held until the transaction completes.  Read-only
+ * transactions reading a snapshot (see {@link VersionStore}) take no locks.
+ * <p>
+ * It supports two buffer policies for the pages a transaction modifies (see the
+ * textbook, Ch. 18):
+ * <ul>
+ * <li>FORCE / NO-FORCE: whether the pages are written to disk when the transaction
+ * commits ({@link #setForce}).  With NO-FORCE, a commit only writes the log, and the
+ * pages are written whenever the buffer manager evicts or flushes them.</li>
+ * <li>STEAL / NO-STEAL: whether the buffer manager may evict the pages, writing
+ * them to disk, before the transaction completes ({@link #setSteal}).  With
+ * NO-STEAL, the buffer pool must hold all the pages being modified at once.</li>
+ * </ul>
+ * NO-FORCE and STEAL rely on the log (see {@link Database#getLogFile}) for recovery:
+ * an update record with the page's before and after images is written and forced
+ * before a page may be stolen, and again for each modified page at commit, followed
+ * by the commit record.  Without a log file, only FORCE and NO-STEAL (the
+ * defaults) are allowed.  NO-FORCE also requires STEAL, as otherwise committed pages
+ * could never leave the buffer pool: a page stays dirty after its transaction
+ * commits, and NO-STEAL never evicts dirty pages.
+ * <p>
+ * With record locking ({@link #setRecordLocking}), a deletion locks just the record
+ * (see {@link #acquireRecordLock}), so transactions deleting different records of a
+ * page do not block each other.  The page then holds changes of several
+ * transactions at once: a transaction's deletions are undone by reinserting the
+ * records, and when it commits, the page's committed image (its before image with
+ * the transaction's deletions applied) rather than the page itself becomes the
+ * before image and is written to disk, until no other transaction is modifying it.
+ */
+public class AccessManagerImpl implements AccessManager {
+
+    private final BufferManager bufferManager;
+    private final LockManager lockManager;
+    private final Map<TransactionId, Map<PageId, Dirtied>> dirtied = new ConcurrentHashMap<>();
+    private final Map<PageId, Set<TransactionId>> recordWriters = new ConcurrentHashMap<>();  // see recordDeleted
+    private final Object recordCommits = new Object();
+    private volatile boolean force = true;
+    private volatile boolean steal = false;
+    private volatile boolean recordLocking = false;
+
+    /**
+     * Note: this is the only constructor; {@link Database} creates the access
+     * manager reflectively with its buffer manager.
+     */
+    public AccessManagerImpl(BufferManager bufferManager) {
+        this.bufferManager = bufferManager;
+        this.lockManager = new LockManagerImpl();
+        bufferManager.evictDirty(false);
+    }
+
+    /**
+     * @return the lock manager, e.g., to look at its statistics
+     */
+    public LockManager getLockManager() {
+        return lockManager;
+    }
+
+    @Override
+    public void acquireLock(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException {
+        if (Database.getVersionStore().hasSnapshot(tid)) {
+            if (perm == Permissions.READ_WRITE) {
+                throw new DbException(tid + " is read-only");
+            }
+            return;
+        }
+        lockManager.acquireLock(tid, pid, perm);
+    }
+
+    /**
+     * With record locking, locks just the record, and its page and table in an
+     * intention mode; otherwise locks the record's page.
+     */
+    @Override
+    public void acquireRecordLock(TransactionId tid, RecordId rid, Permissions perm)
+            throws TransactionAbortedException {
+        if (!recordLocking || Database.getVersionStore().hasSnapshot(tid)) {
+            acquireLock(tid, rid.getPageId(), perm);
+            return;
+        }
+        lockManager.acquireRecordLock(tid, rid, perm);
+    }
+
+    @Override
+    public boolean holdsLock(TransactionId tid, PageId pid, Permissions perm) {
+        return lockManager.holdsLock(tid, pid, perm);
+    }
+
+    @Override
+    public void releaseLock(TransactionId tid, PageId pid) {
+        lockManager.releaseLock(tid, pid);
+    }
+
+    @Override
+    public Page pinPage(TransactionId tid, PageId pid, PageMaker pageMaker) {
+        return bufferManager.pinPage(pid, pageMaker);
+    }
+
+    /**
+     * When tid first dirties a page, its committed image is kept for undo (and for
+     * snapshots) and, under STEAL, logged before the page can be evicted.
+     */
+    @Override
+    public void unpinPage(TransactionId tid, Page page, boolean isDirty) {
+        if (isDirty) {
+            dirtied(tid, page, null);
+        }
+        bufferManager.unpinPage(page.getId(), isDirty);
+    }
+
+    /**
+     * Unless tid holds the page in X mode, in which case the deletion is undone with
+     * the rest of the page, remembers t so that the deletion can be undone by
+     * reinserting it, and registers tid as one of the page's writers.  Both happen
+     * under the page's exclusive latch, as does checking whether a page has other
+     * writers when a transaction completes.
+     */
+    @Override
+    public void recordDeleted(TransactionId tid, Page page, RecordId rid, Tuple t) {
+        if (!recordLocking || lockManager.holdsLock(tid, page.getId(), Permissions.READ_WRITE)) {
+            return;
+        }
+        dirtied(tid, page, new Deleted(rid.tupleno(), t));
+        recordWriters.computeIfAbsent(page.getId(), pid -> ConcurrentHashMap.newKeySet()).add(tid);
+    }
+
+    /**
+     * Notes that tid has modified page, and deleted a record if deleted is not null.
+     */
+    private void dirtied(TransactionId tid, Page page, Deleted deleted) {
+        Map<PageId, Dirtied> pages = dirtied.computeIfAbsent(tid, t -> new HashMap<>());
+        synchronized (pages) {
+            Dirtied d = pages.get(page.getId());
+            if (d == null) {
+                d = new Dirtied(page.getBeforeImage());
+                pages.put(page.getId(), d);
+                Database.getVersionStore().beginWrite(page.getId(), d.before);
+                if (steal) {
+                    LogFile log = Database.getLogFile();
+                    log.logWrite(tid, d.before, page);
+                    log.force();
+                }
+            }
+            d.page = page;      // the page may have been read back after eviction
+            if (deleted != null) {
+                if (d.deleted == null) {
+                    d.deleted = new ArrayList<>();
+                }
+                d.deleted.add(deleted);
+            }
+        }
+    }
+
+    @Override
+    public void allocatePage(PageId pid) {
+        bufferManager.allocatePage(pid);
+    }
+
+    @Override
+    public void transactionComplete(TransactionId tid) {
+        transactionComplete(tid, true);
+    }
+
+    @Override
+    public void transactionComplete(TransactionId tid, boolean commit) {
+        VersionStore versions = Database.getVersionStore();
+        if (versions.hasSnapshot(tid)) {
+            versions.endSnapshot(tid);
+            return;
+        }
+        Map<PageId, Dirtied> pages = dirtied.remove(tid);
+        List<Dirtied> modified = new ArrayList<>();
+        boolean byRecord = false;
+        if (pages != null) {
+            synchronized (pages) {
+                modified.addAll(pages.values());
+            }
+        }
+        for (Dirtied d : modified) {
+            if (d.deleted != null) {
+                d.byRecord = !lockManager.holdsLock(tid, d.page.getId(), Permissions.READ_WRITE);
+                byRecord |= d.byRecord;
+            }
+        }
+        try {
+            if (!commit) {
+                abort(tid, modified);
+            } else if (byRecord) {
+                synchronized (recordCommits) {  // committed images are computed from before images
+                    commit(tid, modified);
+                }
+            } else {
+                commit(tid, modified);
+            }
+        } finally {
+            lockManager.releaseAllLocks(tid);
+        }
+    }
+
+    private void commit(TransactionId tid, List<Dirtied> modified) {
+        boolean logging = Database.hasLogFile();
+        List<Page> committed = new ArrayList<>(modified.size());
+        Map<PageId, byte[]> images = new HashMap<>();
+        try {
+            LogFile log = logging ? Database.getLogFile() : null;
+            for (Dirtied d : modified) {
+                if (d.byRecord) {
+                    d.image = committedImage(d);
+                    images.put(d.page.getId(), d.image.getPageData());
+                }
+                if (logging) {
+                    log.logWrite(tid, d.committed(), d.byRecord ? d.image : d.page);
+                }
+                committed.add(d.page);
+            }
+            if (logging) {
+                log.logCommit(tid);     // forces the log
+            }
+        } catch (IOException e) {
+            throw new LogManagerException(e);
+        }
+        if (committed.isEmpty()) {
+            return;
+        }
+        Database.getVersionStore().commit(committed, images);
+        for (Dirtied d : modified) {
+            if (d.byRecord) {
+                completeRecords(tid, d, true);
+            } else {
+                if (d.deleted != null) {
+                    removeRecordWriter(tid, d.page.getId());
+                }
+                if (force) {
+                    bufferManager.flushPage(d.page.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the committed image of a page tid modified under record locks: its
+     * before image with tid's deletions applied
+     */
+    private static SlottedPage committedImage(Dirtied d) {
+        SlottedPage image = (SlottedPage) d.page.getBeforeImage();
+        for (Deleted deleted : d.deleted) {
+            image.deleteTuple(deleted.slot);
+        }
+        return image;
+    }
+
+    /**
+     * Completes tid's changes to a page it modified under record locks: on abort,
+     * reinserts the records it deleted.  If no other transaction is modifying the
+     * page, it now holds only committed changes and is flushed, which also marks it
+     * clean; otherwise, on commit, its committed image is written to disk instead
+     * (record locking implies FORCE).
+     */
+    private void completeRecords(TransactionId tid, Dirtied d, boolean commit) {
+        PageId pid = d.page.getId();
+        SlottedPage page = (SlottedPage) (bufferManager.inBufferPool(pid) ? bufferManager.getPage(pid) : d.page);
+        page.latch(Permissions.READ_WRITE);
+        try {
+            if (!commit) {
+                for (int i = d.deleted.size() - 1; i >= 0; i--) {
+                    page.insertTuple(d.deleted.get(i).slot, d.deleted.get(i).tuple);
+                }
+            }
+            if (removeRecordWriter(tid, pid)) {
+                bufferManager.flushPage(pid);
+            } else if (commit) {
+                Database.getDiskManager().writePage(d.image);
+            }
+        } finally {
+            page.unlatch(Permissions.READ_WRITE);
+        }
+    }
+
+    /**
+     * @return true if no other transaction is modifying page pid under record locks
+     */
+    private boolean removeRecordWriter(TransactionId tid, PageId pid) {
+        return recordWriters.computeIfPresent(pid, (p, writers) -> {
+            writers.remove(tid);
+            return writers.isEmpty() ? null : writers;
+        }) == null;
+    }
+
+    /**
+     * Restores the committed images of the pages tid modified, in the buffer pool and,
+     * if they may have been stolen, on disk.  A restored page in the buffer pool is
+     * flushed, which writes its committed image and marks it clean again, so that it
+     * can be evicted under NO-STEAL.
+     */
+    private void abort(TransactionId tid, List<Dirtied> modified) {
+        for (Dirtied d : modified) {
+            PageId pid = d.page.getId();
+            if (d.byRecord) {
+                completeRecords(tid, d, false);
+                Database.getVersionStore().abort(pid);
+                continue;
+            }
+            Page before = d.committed();
+            restore(d.page, before);
+            Page current = bufferManager.inBufferPool(pid) ? bufferManager.getPage(pid) : null;
+            if (current != null && current != d.page) {
+                restore(current, before);       // read back from disk after eviction
+            }
+            if (d.deleted != null) {
+                removeRecordWriter(tid, pid);
+            }
+            if (bufferManager.inBufferPool(pid)) {
+                bufferManager.flushPage(pid);
+            } else if (steal) {
+                Database.getDiskManager().writePage(before);
+            }
+            Database.getVersionStore().abort(pid);
+        }
+        if (Database.hasLogFile()) {
+            try {
+                Database.getLogFile().logAbort(tid);
+            } catch (IOException e) {
+                throw new LogManagerException(e);
+            }
+        }
+    }
+
+    private void restore(Page page, Page before) {
+        if (!(page instanceof SlottedPage)) {
+            bufferManager.discardPage(page.getId());
+            return;
+        }
+        SlottedPage slotted = (SlottedPage) page;
+        slotted.latch(Permissions.READ_WRITE);
+        try {
+            slotted.setPageData(before.getPageData().clone());
+            slotted.setBeforeImage();
+        } finally {
+            slotted.unlatch(Permissions.READ_WRITE);
+        }
+    }
+
+    /**
+     * NO-FORCE (force false) requires a log file and STEAL, so call {@link #setSteal}
+     * first.
+     */
+    @Override
+    public void setForce(boolean force) {
+        if (!force) {
+            requireLogFile("NO-FORCE");
+            if (!steal) {
+                throw new DbException("NO-FORCE requires STEAL, as committed pages could not be evicted otherwise");
+            }
+        }
+        this.force = force;
+    }
+
+    /**
+     * Sets whether pages modified by a transaction that has not completed may be
+     * evicted (STEAL), which requires a log file.  NO-STEAL (steal false) requires
+     * FORCE.
+     */
+    public void setSteal(boolean steal) {
+        if (steal) {
+            requireLogFile("STEAL");
+            if (recordLocking) {
+                throw new DbException("STEAL is not supported with record locking");
+            }
+        } else if (!force) {
+            throw new DbException("NO-STEAL requires FORCE, as committed pages could not be evicted otherwise");
+        }
+        this.steal = steal;
+        bufferManager.evictDirty(steal);
+    }
+
+    /**
+     * Sets whether deletions lock just the record deleted rather than its page (see
+     * {@link #acquireRecordLock}); insertions still lock the page they insert into.
+     * Record locking requires NO-STEAL (and so FORCE).  It should only be changed
+     * while no transactions are running.
+     */
+    public void setRecordLocking(boolean recordLocking) {
+        if (recordLocking && steal) {
+            throw new DbException("record locking requires NO-STEAL");
+        }
+        this.recordLocking = recordLocking;
+    }
+
+    private static void requireLogFile(String policy) {
+        if (!Database.hasLogFile()) {
+            throw new DbException(policy + " requires a log file for recovery");
+        }
+    }
+
+    /**
+     * A page modified by a transaction: its committed image and the page itself, and
+     * the records the transaction deleted from it under record locks, if any.
+     */
+    private static class Dirtied {
+        final Page before;
+        Page page;
+        List<Deleted> deleted;
+        boolean byRecord;       // modified only under record locks, not in X mode
+        SlottedPage image;      // the committed image once a record-level commit has begun
+
+        Dirtied(Page before) {
+            this.before = before;
+        }
+
+        /**
+         * @return the committed image of the page before the transaction's changes.
+         * Once other transactions may have modified the page under record locks,
+         * that is the page's current before image rather than the one it had when
+         * the transaction first modified it (record locking implies NO-STEAL, so the
+         * before image is reliable).
+         */
+        Page committed() {
+            return deleted == null ? before : page.getBeforeImage();
+        }
+    }
+
+    /**
+     * A record deleted under a record lock and the tuple it held.
+     */
+    private static class Deleted {
+        final int slot;
+        final Tuple tuple;
+
+        Deleted(int slot, Tuple tuple) {
+            this.slot = slot;
+            this.tuple = tuple;
+        }
+    }
+}
@@ -5,7 +5,6 @@ import colgatedb.page.*;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.ArrayList;
 import java.util.Iterator;
 
 import static org.junit.Assert.fail;
@@ -87,7 +86,7 @@ public class BufferManagerImpl implements BufferManager {
             }
             **/
             if (frame.pinCount > 0) {
-                frame.isDirty = isDirty;
+                frame.isDirty |= isDirty;   // stays dirty until flushed, whoever unpins it last
                 frame.pinCount--;
                 // If page has been dirtied but not flushed to disk, mark as so.
                 if (isDirty) {
@@ -110,26 +109,17 @@ public class BufferManagerImpl implements BufferManager {
             Frame frame = bufferPool.get(pid);
             if (frame.isDirty || frame.dirtyButNotFlushed) {
                 dm.writePage(frame.page);
-                bufferPool.remove(pid);
+                frame.isDirty = false;      // the page stays in the pool, where it may be pinned
+                frame.dirtyButNotFlushed = false;
             }
         }
     }
 
     @Override
     public synchronized void flushAllPages() {
-        ArrayList<PageId> pidsToRemove = new ArrayList<>();
-        for (HashMap.Entry<PageId, Frame> entry : bufferPool.entrySet()) {
-            PageId pid = entry.getKey();
-            Frame frame = entry.getValue();
-            if (frame.isDirty || frame.dirtyButNotFlushed) {
-                dm.writePage(frame.page);
-                pidsToRemove.add(pid);
-            }
+        for (PageId pid : bufferPool.keySet()) {
+            flushPage(pid);
         }
-        for (int i = 0; i < pidsToRemove.size(); i++) {
-            bufferPool.remove(pidsToRemove.get(i));
-        }
-
     }
 
     @Override
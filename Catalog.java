@@ -143,6 +143,7 @@ public class Catalog {
      Genre(mid int, genre string)
 
      * in the above, "pk" indicates that the field is the primary key for that table.
+     * Field types are int, string, long, double, date and decimal.
      *
      * This implementation assumes that (a) each table is stored in a separate file whose name is the name
      * of the table followed by ".dat" and (b) is located in the same directory as catalogFile and (c) each
@@ -172,6 +173,14 @@ public class Catalog {
                         types.add(Type.INT_TYPE);
                     else if (els2[1].trim().toLowerCase().equals("string"))
                         types.add(Type.STRING_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("long"))
+                        types.add(Type.LONG_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("double"))
+                        types.add(Type.DOUBLE_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("date"))
+                        types.add(Type.DATE_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("decimal"))
+                        types.add(Type.DECIMAL_TYPE);
                     else {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
@@ -187,7 +196,7 @@ public class Catalog {
                 }
                 Type[] typeAr = types.toArray(new Type[types.size()]);
                 String[] namesAr = names.toArray(new String[names.size()]);
-                TupleDesc td = new TupleDesc(typeAr, namesAr);
+                TupleDesc td = new TupleDesc(typeAr, namesAr).intern();
                 File dataFile = new File(baseFolder, name + ".dat");
                 HeapFile tabHf = addHeapFile(name, td, primaryKey, dataFile);
                 System.out.print("Added table : " + name + " with schema " + td + (primaryKey.equals("") ? "" : (" key is " + primaryKey)));
@@ -1,6 +1,7 @@
 package colgatedb;
 
 import colgatedb.logging.LogFile;
+import colgatedb.transactions.VersionStore;
 
 import java.io.File;
 import java.lang.reflect.Constructor;
@@ -48,6 +49,7 @@ public class Database {
     private DiskManagerImpl _diskManager;
     private BufferManager _bufferManager;
     private AccessManager _accessManager;
+    private final VersionStore _versionStore = new VersionStore();
 
     private final static String LOGFILENAME = "log";
     private LogFile _logfile;
@@ -106,6 +108,17 @@ public class Database {
         return _instance.get()._accessManager;
     }
 
+    public static VersionStore getVersionStore() {
+        return _instance.get()._versionStore;
+    }
+
+    /**
+     * @return true if a log file was initialized (see {@link #getLogFile})
+     */
+    public static boolean hasLogFile() {
+        return _instance.get()._logfile != null;
+    }
+
     public static LogFile getLogFile() {
         if (_instance.get()._logfile == null) {
             throw new DbException("Log file was never initialized!");
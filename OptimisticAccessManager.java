@@ -0,0 +1,387 @@
+package colgatedb;
+
+import colgatedb.logging.LogFile;
+import colgatedb.logging.LogManagerException;
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.PageMaker;
+import colgatedb.page.SlottedPage;
+import colgatedb.transactions.Permissions;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.RecordId;
+import colgatedb.tuple.Tuple;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * An access manager using optimistic concurrency control (see the textbook, Ch. 18)
+ * instead of locks.  Transactions never wait for each other; instead a transaction
+ * is validated when it commits and aborted if it read a page that another transaction
+ * has changed since.
+ * <p>
+ * Every page has a version: the timestamp of the last commit that installed changes
+ * to it.  Versions only matter to transactions that read the page before that
+ * commit, so those of commits older than every active transaction are forgotten
+ * once there are many (all such versions are equivalent; see {@link #prune}).
+ * <ul>
+ * <li>Read phase: {@link #acquireLock} records the version of each page the
+ * transaction reads in its read set.  A page it is going to modify is also added to
+ * its write set, and {@link #pinPage} gives it a private copy of the page; its
+ * changes are buffered there, invisible to other transactions.</li>
+ * <li>Validation and write phase: at commit, the transaction is aborted if any page
+ * in its read set has a newer version.  Otherwise its private copies are installed
+ * in the buffer pool and the versions of the pages are advanced.  Validation and
+ * installation happen for one transaction at a time, but take no longer than copying
+ * the written pages (and, with a log file, logging them).</li>
+ * </ul>
+ * Pages read under a version that is being installed are caught by validation, since
+ * a version is only advanced after the page has been installed.  Pages must be
+ * {@link SlottedPage}s so that private copies can be installed.
+ * <p>
+ * This works best for short transactions in read-mostly workloads with few
+ * conflicts, where locking is pure overhead.  Under heavy contention, transactions
+ * may be aborted repeatedly; use the locking access manager instead.
+ */
+public class OptimisticAccessManager implements AccessManager {
+
+    private final BufferManager bufferManager;
+    private static final int PRUNE_THRESHOLD = 1024;
+
+    private final Map<PageId, Long> pageVersions = new ConcurrentHashMap<>();
+    private final Map<TransactionId, Txn> txns = new ConcurrentHashMap<>();
+    private volatile long clock = 0;            // timestamp of the last commit; written under this
+    private volatile long prunedThrough = 0;    // versions at or below this are equivalent
+    private int pruneAt = PRUNE_THRESHOLD;      // guarded by this
+    private volatile boolean force = true;
+    private final LongAdder commitCount = new LongAdder();
+    private final LongAdder abortCount = new LongAdder();
+
+    public OptimisticAccessManager(BufferManager bufferManager) {
+        this.bufferManager = bufferManager;
+    }
+
+    @Override
+    public void acquireLock(TransactionId tid, PageId pid, Permissions perm) {
+        Txn txn = txns.computeIfAbsent(tid, t -> new Txn(clock));
+        synchronized (txn) {
+            if (!txn.reads.containsKey(pid)) {
+                txn.reads.put(pid, version(pid));
+            }
+            if (perm == Permissions.READ_WRITE && !txn.writes.containsKey(pid)) {
+                txn.writes.put(pid, null);  // copied on first pin
+            }
+        }
+    }
+
+    /**
+     * Records are not tracked separately: this is the same as {@link #acquireLock} on
+     * the record's page.
+     */
+    @Override
+    public void acquireRecordLock(TransactionId tid, RecordId rid, Permissions perm) {
+        acquireLock(tid, rid.getPageId(), perm);
+    }
+
+    /**
+     * Does nothing, as the deletion was made to tid's private copy of the page.
+     */
+    @Override
+    public void recordDeleted(TransactionId tid, Page page, RecordId rid, Tuple t) {
+    }
+
+    @Override
+    public boolean holdsLock(TransactionId tid, PageId pid, Permissions perm) {
+        Txn txn = txns.get(tid);
+        if (txn == null) {
+            return false;
+        }
+        synchronized (txn) {
+            return perm == Permissions.READ_WRITE ? txn.writes.containsKey(pid) : txn.reads.containsKey(pid);
+        }
+    }
+
+    /**
+     * Drops pid from tid's read set unless tid is going to modify it, so tid is no
+     * longer validated against changes to it.
+     */
+    @Override
+    public void releaseLock(TransactionId tid, PageId pid) {
+        Txn txn = txns.get(tid);
+        if (txn == null) {
+            return;
+        }
+        synchronized (txn) {
+            if (!txn.writes.containsKey(pid)) {
+                txn.reads.remove(pid);
+            }
+        }
+    }
+
+    /**
+     * Returns tid's private copy of pid if tid is going to modify it and the page in
+     * the buffer pool otherwise.
+     */
+    @Override
+    public Page pinPage(TransactionId tid, PageId pid, PageMaker pageMaker) {
+        Txn txn = txns.get(tid);
+        if (txn == null) {
+            throw new DbException(tid + " must acquire a lock on " + pid + " before pinning it");
+        }
+        synchronized (txn) {
+            if (!txn.writes.containsKey(pid)) {
+                return bufferManager.pinPage(pid, pageMaker);
+            }
+            PrivateCopy copy = txn.writes.get(pid);
+            if (copy == null) {
+                copy = new PrivateCopy(copyOf(pid, pageMaker), pageMaker);
+                txn.writes.put(pid, copy);
+            }
+            return copy.page;
+        }
+    }
+
+    private Page copyOf(PageId pid, PageMaker pageMaker) {
+        SlottedPage page = slottedPage(bufferManager.pinPage(pid, pageMaker));
+        try {
+            page.latch(Permissions.READ_ONLY);
+            try {
+                return pageMaker.makePage(pid, page.getPageData().clone());
+            } finally {
+                page.unlatch(Permissions.READ_ONLY);
+            }
+        } finally {
+            bufferManager.unpinPage(pid, false);
+        }
+    }
+
+    @Override
+    public void unpinPage(TransactionId tid, Page page, boolean isDirty) {
+        Txn txn = txns.get(tid);
+        if (txn != null) {
+            synchronized (txn) {
+                PrivateCopy copy = txn.writes.get(page.getId());
+                if (copy != null && copy.page == page) {
+                    return;     // private copies are not in the buffer pool
+                }
+            }
+        }
+        if (isDirty) {
+            throw new DbException(tid + " modified " + page.getId() + " without write access");
+        }
+        bufferManager.unpinPage(page.getId(), false);
+    }
+
+    @Override
+    public void allocatePage(PageId pid) {
+        bufferManager.allocatePage(pid);
+    }
+
+    @Override
+    public void transactionComplete(TransactionId tid) throws TransactionAbortedException {
+        transactionComplete(tid, true);
+    }
+
+    /**
+     * Validates and commits tid, or discards its private copies.
+     *
+     * @throws TransactionAbortedException if tid read a page that has changed since
+     */
+    @Override
+    public void transactionComplete(TransactionId tid, boolean commit) throws TransactionAbortedException {
+        Txn txn = txns.remove(tid);
+        if (txn == null || !commit) {
+            return;
+        }
+        List<Page> installed = new ArrayList<>(txn.writes.size());
+        synchronized (this) {
+            for (Map.Entry<PageId, Long> read : txn.reads.entrySet()) {
+                if (!sameVersion(read.getValue(), version(read.getKey()))) {
+                    abortCount.increment();
+                    throw new TransactionAbortedException();
+                }
+            }
+            if (Database.hasLogFile()) {
+                log(tid, txn);
+            }
+            long ts = clock + 1;
+            for (Map.Entry<PageId, PrivateCopy> write : txn.writes.entrySet()) {
+                PrivateCopy copy = write.getValue();
+                if (copy != null) {
+                    installed.add(install(write.getKey(), copy, ts));
+                }
+            }
+            clock = ts;
+            if (!installed.isEmpty()) {
+                Database.getVersionStore().commit(installed);
+            }
+            prune();
+        }
+        if (force) {
+            for (Page page : installed) {
+                bufferManager.flushPage(page.getId());
+            }
+        }
+        commitCount.increment();
+    }
+
+    /**
+     * Writes an update record for each page tid modified, with the page's committed
+     * image and tid's private copy, followed by tid's commit record, which forces the
+     * log.  This is done before the copies are installed, so the buffer manager never
+     * holds changes that are not in the log.
+     */
+    private void log(TransactionId tid, Txn txn) {
+        LogFile log = Database.getLogFile();
+        try {
+            for (Map.Entry<PageId, PrivateCopy> write : txn.writes.entrySet()) {
+                PrivateCopy copy = write.getValue();
+                if (copy != null) {
+                    Page page = bufferManager.pinPage(write.getKey(), copy.pageMaker);
+                    try {
+                        log.logWrite(tid, page.getBeforeImage(), copy.page);
+                    } finally {
+                        bufferManager.unpinPage(write.getKey(), false);
+                    }
+                }
+            }
+            log.logCommit(tid);
+        } catch (IOException e) {
+            throw new LogManagerException(e);
+        }
+    }
+
+    /**
+     * Copies a transaction's private copy of pid into the page in the buffer pool and
+     * then sets the page's version to ts, the timestamp of the commit.
+     *
+     * @return the page in the buffer pool
+     */
+    private Page install(PageId pid, PrivateCopy copy, long ts) {
+        SlottedPage page = slottedPage(bufferManager.pinPage(pid, copy.pageMaker));
+        page.latch(Permissions.READ_WRITE);
+        try {
+            page.setPageData(copy.page.getPageData().clone());
+        } finally {
+            page.unlatch(Permissions.READ_WRITE);
+        }
+        bufferManager.unpinPage(pid, true);
+        pageVersions.put(pid, ts);
+        return page;
+    }
+
+    /**
+     * Forgets the versions of pages last changed by commits no later than the start
+     * of the oldest active transaction, once there are many versions.  Every active
+     * transaction read such a page after that commit, and any later commit gets a
+     * larger timestamp, so the versions can all be treated as equal (see
+     * {@link #sameVersion}); a forgotten version reads as 0.
+     */
+    private void prune() {
+        if (pageVersions.size() < pruneAt) {
+            return;
+        }
+        long oldest = clock;
+        for (Txn txn : txns.values()) {
+            oldest = Math.min(oldest, txn.start);
+        }
+        long through = Math.max(prunedThrough, oldest);
+        prunedThrough = through;
+        pageVersions.values().removeIf(v -> v <= through);
+        pruneAt = Math.max(PRUNE_THRESHOLD, 2 * pageVersions.size());
+    }
+
+    /**
+     * @return true if a transaction that read a page at version read can still be
+     * validated against its current version
+     */
+    private boolean sameVersion(long read, long current) {
+        long through = prunedThrough;
+        return read == current || (read <= through && current <= through);
+    }
+
+    /**
+     * NO-FORCE (force false) requires a log file, as the commit record is then the
+     * only durable trace of a committed transaction.  Since the buffer pool only
+     * ever holds committed (and logged) changes, it may then also evict dirty pages.
+     */
+    @Override
+    public void setForce(boolean force) {
+        if (!force && !Database.hasLogFile()) {
+            throw new DbException("NO-FORCE requires a log file for recovery");
+        }
+        this.force = force;
+        bufferManager.evictDirty(!force);
+    }
+
+    /**
+     * @return the number of transactions committed
+     */
+    public long getCommitCount() {
+        return commitCount.sum();
+    }
+
+    /**
+     * @return the number of transactions aborted because they failed validation
+     */
+    public long getAbortCount() {
+        return abortCount.sum();
+    }
+
+    private long version(PageId pid) {
+        Long v = pageVersions.get(pid);
+        return v == null ? 0 : v;
+    }
+
+    private static SlottedPage slottedPage(Page page) {
+        if (!(page instanceof SlottedPage)) {
+            throw new DbException("optimistic concurrency control requires slotted pages");
+        }
+        return (SlottedPage) page;
+    }
+
+    /**
+     * The read set (page versions) and write set (private copies, null until the page
+     * is first pinned) of a transaction.
+     */
+    private static class Txn {
+        final long start;       // the timestamp of the last commit when it began
+        final Map<PageId, Long> reads = new HashMap<>();
+        final Map<PageId, PrivateCopy> writes = new HashMap<>();
+
+        Txn(long start) {
+            this.start = start;
+        }
+    }
+
+    private static class PrivateCopy {
+        final Page page;
+        final PageMaker pageMaker;
+
+        PrivateCopy(Page page, PageMaker pageMaker) {
+            this.page = page;
+            this.pageMaker = pageMaker;
+        }
+    }
+}
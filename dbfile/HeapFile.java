@@ -2,13 +2,17 @@ package colgatedb.dbfile;
 
 import colgatedb.*;
 import colgatedb.page.*;
+import colgatedb.transactions.Permissions;
 import colgatedb.transactions.TransactionAbortedException;
 import colgatedb.transactions.TransactionId;
+import colgatedb.transactions.VersionStore;
 import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
 import colgatedb.tuple.RecordId;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -41,7 +45,7 @@ public class HeapFile implements DbFile {
     private final TupleDesc td;
     private final int pageSize;
     private final int tableid;
-    private int numPages;
+    private volatile int numPages;
 
     /**
      * Creates a heap file.
@@ -51,6 +55,7 @@ public class HeapFile implements DbFile {
      * @param numPages size of this heapfile (i.e., number of pages already stored on disk)
      */
     public HeapFile(TupleDesc td, int pageSize, int tableid, int numPages) {
+        td = td.intern();
         this.td = td;
         this.pageSize = pageSize;
         this.tableid = tableid;
@@ -65,6 +70,13 @@ public class HeapFile implements DbFile {
         return this.numPages;
     }
 
+    /**
+     * Returns the number of tuple slots on each page of this HeapFile.
+     */
+    public int slotsPerPage() {
+        return SlottedPageFormatter.computePageCapacity(pageSize, td);
+    }
+
     @Override
     public int getId() {
         return this.tableid;
@@ -77,46 +89,149 @@ public class HeapFile implements DbFile {
 
     @Override
     public void insertTuple(TransactionId tid, Tuple t) throws TransactionAbortedException {
-        SlottedPage page = getFreePage();
-        page.insertTuple(t);
-        BufferManager bufferManager = Database.getBufferManager();
-        bufferManager.unpinPage(page.getId(), true); // Since we've added a tuple, the page is dirty and must be unpinned
+        SlottedPage page = getFreePage(tid);
+        try {
+            page.insertTuple(t);
+        } finally {
+            page.unlatch(Permissions.READ_WRITE);
+        }
+        Database.getAccessManager().unpinPage(tid, page, true); // Since we've added a tuple, the page is dirty and must be unpinned
     }
 
     /**
+     * Returns a pinned page with a free slot, locked by tid with
+     * {@link Permissions#READ_WRITE} and latched exclusively so that the slot stays
+     * free until the caller has used it and called {@link SlottedPage#unlatch}.
+     * <p>
+     * Pages are first checked for a free slot without a lock, so that full pages
+     * (e.g., those locked by other inserters) are skipped without waiting; a page
+     * found to be full once locked is released again unless tid held a lock on it
+     * before.
+     *
      * @return the first page with a free slot or a newly created page if none exists
      */
-    public SlottedPage getFreePage() {
-        BufferManager bufferManager = Database.getBufferManager();
+    public SlottedPage getFreePage(TransactionId tid) throws TransactionAbortedException {
+        AccessManager accessManager = Database.getAccessManager();
         for (int i = 0; i < numPages; i++) { // loop through pages, pinning them, seeing if they have space
             SimplePageId pid = new SimplePageId(tableid, i);
-            SlottedPage page = (SlottedPage)bufferManager.pinPage(pid, pageMaker);
+            if (!mayHaveFreeSlot(pid)) {
+                continue;
+            }
+            boolean held = accessManager.holdsLock(tid, pid, Permissions.READ_ONLY);
+            accessManager.acquireLock(tid, pid, Permissions.READ_WRITE);
+            SlottedPage page = (SlottedPage) accessManager.pinPage(tid, pid, pageMaker);
+            page.latch(Permissions.READ_WRITE);
             if (page.getNumEmptySlots() > 0) {
                 return page;
             }
-            bufferManager.unpinPage(pid, false);
+            page.unlatch(Permissions.READ_WRITE);
+            accessManager.unpinPage(tid, page, false);
+            if (!held) {
+                accessManager.releaseLock(tid, pid);
+            }
         }
         // If no page has a free slot, create a new page, allocate space for it, and increment the page count
-        SimplePageId pid = new SimplePageId(tableid, numPages);
-        bufferManager.allocatePage(pid);
-        numPages++;
-        SlottedPage page = (SlottedPage)bufferManager.pinPage(pid, pageMaker);
+        SimplePageId pid;
+        synchronized (this) {
+            pid = new SimplePageId(tableid, numPages);
+            accessManager.allocatePage(pid);
+            numPages++;
+        }
+        accessManager.acquireLock(tid, pid, Permissions.READ_WRITE);
+        SlottedPage page = (SlottedPage) accessManager.pinPage(tid, pid, pageMaker);
+        page.latch(Permissions.READ_WRITE);
         return page;
     }
 
+    /**
+     * @return false if page pid has no free slot at the moment; this is only a hint,
+     * read without a lock
+     */
+    private boolean mayHaveFreeSlot(PageId pid) {
+        BufferManager bufferManager = Database.getBufferManager();
+        SlottedPage page = (SlottedPage) bufferManager.pinPage(pid, pageMaker);
+        page.latch(Permissions.READ_ONLY);
+        try {
+            return page.getNumEmptySlots() > 0;
+        } finally {
+            page.unlatch(Permissions.READ_ONLY);
+            bufferManager.unpinPage(pid, false);
+        }
+    }
+
+    /**
+     * Locks page pageNo of this file for reading on behalf of tid, pins it and
+     * latches it (shared).  The caller is responsible for calling
+     * {@link #unpinPage} as soon as it is done with the page, and must not wait for
+     * a lock in between.
+     * <p>
+     * If tid is reading a snapshot (see {@link VersionStore}), the page as of the
+     * snapshot is returned instead; it is neither locked, pinned nor latched.
+     *
+     * @param tid the transaction reading the page
+     * @param pageNo the page number, 0 <= pageNo < numPages()
+     * @return the pinned page
+     * @throws TransactionAbortedException if tid is aborted while waiting for the lock
+     */
+    public SlottedPage pinPage(TransactionId tid, int pageNo) throws TransactionAbortedException {
+        SimplePageId pid = new SimplePageId(tableid, pageNo);
+        VersionStore versions = Database.getVersionStore();
+        if (versions.hasSnapshot(tid)) {
+            return (SlottedPage) versions.readVersion(tid, pid, pageMaker);
+        }
+        AccessManager accessManager = Database.getAccessManager();
+        accessManager.acquireLock(tid, pid, Permissions.READ_ONLY);
+        SlottedPage page = (SlottedPage) accessManager.pinPage(tid, pid, pageMaker);
+        page.latch(Permissions.READ_ONLY);
+        return page;
+    }
+
+    /**
+     * Unlatches and unpins a page that was pinned with {@link #pinPage} and not
+     * modified.  The lock on it is kept until tid completes.
+     */
+    public void unpinPage(TransactionId tid, SlottedPage page) {
+        if (Database.getVersionStore().hasSnapshot(tid)) {
+            return;
+        }
+        page.unlatch(Permissions.READ_ONLY);
+        Database.getAccessManager().unpinPage(tid, page, false);
+    }
 
     @Override
     public void deleteTuple(TransactionId tid, Tuple t) throws TransactionAbortedException {
-        BufferManager bufferManager = Database.getBufferManager();
-        PageId pid = t.getRecordId().getPageId();
-        SlottedPage page = (SlottedPage)bufferManager.pinPage(pid, pageMaker);
-        page.deleteTuple(t);
-        bufferManager.unpinPage(pid, true);
+        AccessManager accessManager = Database.getAccessManager();
+        RecordId rid = t.getRecordId();
+        PageId pid = rid.getPageId();
+        accessManager.acquireRecordLock(tid, rid, Permissions.READ_WRITE);
+        SlottedPage page = (SlottedPage) accessManager.pinPage(tid, pid, pageMaker);
+        page.latch(Permissions.READ_WRITE);
+        try {
+            page.deleteTuple(t);
+            accessManager.recordDeleted(tid, page, rid, t);
+        } finally {
+            page.unlatch(Permissions.READ_WRITE);
+        }
+        accessManager.unpinPage(tid, page, true);
     }
 
     @Override
     public DbFileIterator iterator(TransactionId tid) {
-        return new HeapFileIterator(tid);
+        return new HeapFileIterator(tid, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns an iterator over the tuples on pages startPage (inclusive) through
+     * endPage (exclusive).  Iterators over disjoint page ranges can be used from
+     * different threads to scan the file in parallel.
+     *
+     * @param tid the transaction reading the file
+     * @param startPage the first page to read
+     * @param endPage one past the last page to read; pages at or beyond numPages()
+     *                are ignored
+     */
+    public DbFileIterator iterator(TransactionId tid, int startPage, int endPage) {
+        return new HeapFileIterator(tid, startPage, endPage);
     }
 
     /**
@@ -124,35 +239,62 @@ public class HeapFile implements DbFile {
      */
     private class HeapFileIterator implements DbFileIterator {
         private int curPage;
+        private final int startPage;
+        private final int endPage;
         private Iterator<Tuple> iterator;
         private TransactionId tid;
         private boolean opened = false;
         private Tuple curTuple;
         private boolean alreadyHasNexted = false;
 
-        public HeapFileIterator(TransactionId tid) {
+        public HeapFileIterator(TransactionId tid, int startPage, int endPage) {
             this.tid = tid;
+            this.startPage = startPage;
+            this.endPage = endPage;
+        }
+
+        /**
+         * @return one past the last page this iterator reads
+         */
+        private int lastPage() {
+            return Math.min(endPage, numPages);
         }
 
         @Override
         public void open() throws TransactionAbortedException {
             if (!opened) {
-                curPage = 0;
-                BufferManager bufferManager = Database.getBufferManager();
-                SimplePageId pid = new SimplePageId(tableid, curPage);
-                SlottedPage page = (SlottedPage)bufferManager.pinPage(pid, pageMaker);
-                iterator =  page.iterator(); // if i include Iterator<tuple> iterator i pass another test
+                curPage = startPage;
                 opened = true;
-                bufferManager.unpinPage(pid, false);
+                if (curPage >= lastPage()) {
+                    iterator = null;    // empty range
+                    return;
+                }
+                iterator = readPage(curPage);
             }
             else {
                 throw new TransactionAbortedException();
             }
         }
 
+        /**
+         * @return an iterator over the tuples of the page, read under its latch
+         */
+        private Iterator<Tuple> readPage(int pageNo) throws TransactionAbortedException {
+            SlottedPage page = pinPage(tid, pageNo);
+            try {
+                List<Tuple> tuples = new ArrayList<Tuple>(page.getNumSlots() - page.getNumEmptySlots());
+                Iterator<Tuple> it = page.iterator();
+                while (it.hasNext()) {
+                    tuples.add(it.next());
+                }
+                return tuples.iterator();
+            } finally {
+                unpinPage(tid, page);
+            }
+        }
+
         @Override
         public boolean hasNext() throws TransactionAbortedException {
-            BufferManager bufferManager = Database.getBufferManager();
             if (iterator == null) {
                 return false;
             }
@@ -166,12 +308,9 @@ public class HeapFile implements DbFile {
                     return true;
                 }
                 curPage++;
-                if (curPage < numPages) {
-                    for (; curPage < numPages; curPage++){ // checks pages in order
-                        SimplePageId pid = new SimplePageId(tableid, curPage);
-                        SlottedPage page = (SlottedPage)bufferManager.pinPage(pid, pageMaker);
-                        iterator =  page.iterator();
-                        bufferManager.unpinPage((PageId)pid, false);
+                if (curPage < lastPage()) {
+                    for (; curPage < lastPage(); curPage++){ // checks pages in order
+                        iterator = readPage(curPage);
                         if (iterator.hasNext()) {
                             curTuple = iterator.next();
                             alreadyHasNexted = true;
@@ -56,6 +56,7 @@ public class OperatorMain {
             System.out.println("\t"+tup);
         }
         filterStudents.close();
+        Database.getAccessManager().transactionComplete(tid);
 
 
     }
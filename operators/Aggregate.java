@@ -6,6 +6,7 @@ import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
 import colgatedb.tuple.Type;
 
+import java.util.ArrayList;
 import java.util.NoSuchElementException;
 
 /**
@@ -26,16 +27,35 @@ import java.util.NoSuchElementException;
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
  * min). Note that we only support aggregates over a single column, grouped by a
- * single column.
+ * single column.  Without grouping there is always one result tuple, as in SQL:
+ * over no input, COUNT is 0 and the other aggregates are NULL.
  */
 public class Aggregate extends Operator {
 
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default number of groups to keep in memory before spilling partial
+     * aggregates to disk.  With INT_TYPE group keys, each group costs roughly
+     * 64 bytes, so this is on the order of 64MB.
+     */
+    public static final int DEFAULT_MAX_GROUPS = 1 << 20;
+
+    private DbIterator child;
+    private final int afield;
+    private final int gfield;
+    private final Aggregator.Op aop;
+    private final int maxGroups;
+    private final TupleDesc td;
+    private SpillingAggregator spilling;
+    private DbIterator aggIt;
+
     /**
      * Constructor.
      * <p/>
-     * Implementation hint: depending on the type of afield, you will want to
-     * construct an {@link IntegerAggregator} or {@link StringAggregator} to help
-     * you with your implementation of readNext().
+     * Depending on the type of afield, an {@link IntegerAggregator} or
+     * {@link StringAggregator} computes the groups when the operator is opened.
+     * At most {@link #DEFAULT_MAX_GROUPS} groups are kept in memory.
      *
      * @param child  The DbIterator that is feeding us tuples.
      * @param afield The column over which we are computing an aggregate.
@@ -44,7 +64,30 @@ public class Aggregate extends Operator {
      * @param aop    The aggregation operator to use
      */
     public Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop) {
-        throw new UnsupportedOperationException("implement me!");
+        this(child, afield, gfield, aop, DEFAULT_MAX_GROUPS);
+    }
+
+    /**
+     * Constructor.
+     * <p/>
+     * If there is grouping and the number of groups grows beyond maxGroups, the
+     * aggregate automatically switches to spilling sorted partial aggregates to
+     * disk and merging them afterwards (see {@link SpillingAggregator}).
+     *
+     * @param child     The DbIterator that is feeding us tuples.
+     * @param afield    The column over which we are computing an aggregate.
+     * @param gfield    The column over which we are grouping the result, or -1 if
+     *                  there is no grouping
+     * @param aop       The aggregation operator to use
+     * @param maxGroups The number of groups to hold in memory before spilling
+     */
+    public Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop, int maxGroups) {
+        this.child = child;
+        this.maxGroups = maxGroups;
+        this.afield = afield;
+        this.gfield = gfield;
+        this.aop = aop;
+        this.td = makeTupleDesc(child.getTupleDesc(), afield, gfield, aop);
     }
 
     /**
@@ -53,7 +96,7 @@ public class Aggregate extends Operator {
      * {@link Aggregator#NO_GROUPING}
      */
     public int groupField() {
-        throw new UnsupportedOperationException("implement me!");
+        return this.gfield;
     }
 
     /**
@@ -62,14 +105,17 @@ public class Aggregate extends Operator {
      * null;
      */
     public String groupFieldName() {
-        throw new UnsupportedOperationException("implement me!");
+        if (gfield == Aggregator.NO_GROUPING) {
+            return null;
+        }
+        return td.getFieldName(0);
     }
 
     /**
      * @return the aggregate field
      */
     public int aggregateField() {
-        throw new UnsupportedOperationException("implement me!");
+        return this.afield;
     }
 
     /**
@@ -77,28 +123,58 @@ public class Aggregate extends Operator {
      * tuples
      */
     public String aggregateFieldName() {
-        throw new UnsupportedOperationException("implement me!");
+        return td.getFieldName(gfield == Aggregator.NO_GROUPING ? 0 : 1);
     }
 
     /**
      * @return return the aggregate operator
      */
     public Aggregator.Op aggregateOp() {
-        throw new UnsupportedOperationException("implement me!");
+        return this.aop;
     }
 
     public static String nameOfAggregatorOp(Aggregator.Op aop) {
-        throw new UnsupportedOperationException("implement me!");
+        return aop.toString();
     }
 
     public void open() throws NoSuchElementException, DbException,
             TransactionAbortedException {
-        throw new UnsupportedOperationException("implement me!");
+        child.open();
+        Aggregator aggregator = makeAggregator(child.getTupleDesc(), afield, gfield, aop, maxGroups);
+        if (aggregator instanceof SpillingAggregator) {
+            spilling = (SpillingAggregator) aggregator;
+        }
+        while (child.hasNext()) {
+            aggregator.mergeTupleIntoGroup(child.next());
+        }
+        aggIt = aggregator.iterator();
+        aggIt.open();
+    }
+
+    /**
+     * @return a fresh aggregator suited to the type of the aggregate field; grouped
+     * aggregates spill to disk once they have more than maxGroups groups.
+     */
+    static Aggregator makeAggregator(TupleDesc childTd, int afield, int gfield,
+                                     Aggregator.Op aop, int maxGroups) {
+        Type gtype = gfield == Aggregator.NO_GROUPING ? null : childTd.getFieldType(gfield);
+        PartialAggregator aggregator;
+        Type atype = childTd.getFieldType(afield);
+        if (atype == Type.STRING_TYPE) {
+            aggregator = new StringAggregator(gfield, gtype, afield, aop);
+        } else {
+            aggregator = new IntegerAggregator(gfield, gtype, afield, atype, aop);
+        }
+        if (gtype == null) {
+            return aggregator;
+        }
+        return new SpillingAggregator(aggregator, gtype, IntegerAggregator.valueType(atype),
+                aop, maxGroups);
     }
 
     @Override
     public boolean hasNext() throws DbException, TransactionAbortedException {
-        throw new UnsupportedOperationException("implement me!");
+        return aggIt != null && aggIt.hasNext();
     }
 
     /**
@@ -111,18 +187,22 @@ public class Aggregate extends Operator {
     @Override
     public Tuple next() throws DbException, TransactionAbortedException,
             NoSuchElementException {
-        throw new UnsupportedOperationException("implement me!");
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        return aggIt.next();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        throw new UnsupportedOperationException("implement me!");
+        aggIt.rewind();
     }
 
     /**
      * Returns the TupleDesc of this Aggregate. If there is no group by field,
      * this will have one field - the aggregate column. If there is a group by
      * field, the first field will be the group by field, and the second will be
-     * the aggregate value column.
+     * the aggregate value column.  SUM_COUNT produces two aggregate value
+     * columns: the sum followed by the count.
      * <p/>
      * The name of an aggregate column should be informative. For example:
      * "aggName(aop) (child_td.getFieldName(afield))" where aop and afield are
@@ -130,21 +210,58 @@ public class Aggregate extends Operator {
      * iterator.
      */
     public TupleDesc getTupleDesc() {
-        throw new UnsupportedOperationException("implement me!");
+        return td;
+    }
+
+    /**
+     * @return the schema of the output of an aggregate over tuples with schema childTd
+     */
+    static TupleDesc makeTupleDesc(TupleDesc childTd, int afield, int gfield, Aggregator.Op aop) {
+        ArrayList<Type> types = new ArrayList<Type>();
+        ArrayList<String> names = new ArrayList<String>();
+        if (gfield != Aggregator.NO_GROUPING) {
+            types.add(childTd.getFieldType(gfield));
+            names.add(childTd.getFieldName(gfield));
+        }
+        String aname = childTd.getFieldName(afield);
+        TupleDesc result = IntegerAggregator.resultTupleDesc(null,
+                IntegerAggregator.valueType(childTd.getFieldType(afield)), aop);
+        for (int i = 0; i < result.numFields(); i++) {
+            types.add(result.getFieldType(i));
+        }
+        if (aop == Aggregator.Op.SUM_COUNT) {
+            names.add(nameOfAggregatorOp(Aggregator.Op.SUM) + " (" + aname + ")");
+            names.add(nameOfAggregatorOp(Aggregator.Op.COUNT) + " (" + aname + ")");
+        } else {
+            names.add(nameOfAggregatorOp(aop) + " (" + aname + ")");
+        }
+        return new TupleDesc(types.toArray(new Type[types.size()]),
+                names.toArray(new String[names.size()]));
     }
 
     public void close() {
-        throw new UnsupportedOperationException("implement me!");
+        child.close();
+        if (aggIt != null) {
+            aggIt.close();
+        }
+        aggIt = null;
+        if (spilling != null) {
+            spilling.deleteRuns();
+            spilling = null;
+        }
     }
 
     @Override
     public DbIterator[] getChildren() {
-        throw new UnsupportedOperationException("implement me!");
+        return new DbIterator[]{this.child};
     }
 
     @Override
     public void setChildren(DbIterator[] children) {
-        throw new UnsupportedOperationException("implement me!");
+        if (children.length != 1) {
+            throw new DbException("Expected only one child!");
+        }
+        this.child = children[0];
     }
 
 }
@@ -0,0 +1,78 @@
+package colgatedb.operators;
+
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A pipeline breaker that aggregates the tuples pushed into it.  Once the pipeline
+ * has finished, {@link #iterator} returns the same tuples as an {@link Aggregate}
+ * over the pushed tuples would, and can be the source of the next pipeline.
+ */
+public final class AggregateSink implements TupleConsumer {
+
+    private final Aggregator aggregator;
+    private final TupleDesc td;
+    private boolean finished;
+
+    /**
+     * @param childTd The schema of the pushed tuples
+     * @param afield  The column over which we are computing an aggregate.
+     * @param gfield  The column over which we are grouping the result, or -1 if
+     *                there is no grouping
+     * @param aop     The aggregation operator to use
+     */
+    public AggregateSink(TupleDesc childTd, int afield, int gfield, Aggregator.Op aop) {
+        this.aggregator = Aggregate.makeAggregator(childTd, afield, gfield, aop,
+                Aggregate.DEFAULT_MAX_GROUPS);
+        this.td = Aggregate.makeTupleDesc(childTd, afield, gfield, aop);
+    }
+
+    public void consume(Tuple t) {
+        aggregator.mergeTupleIntoGroup(t);
+    }
+
+    public void finish() {
+        finished = true;
+    }
+
+    /**
+     * @see Aggregate#getTupleDesc()
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return an iterator over the aggregate's result
+     */
+    public DbIterator iterator() {
+        if (!finished) {
+            throw new IllegalStateException("aggregate has not finished");
+        }
+        return aggregator.iterator();
+    }
+
+    /**
+     * Deletes any partial aggregates spilled to disk.
+     */
+    public void close() {
+        if (aggregator instanceof SpillingAggregator) {
+            ((SpillingAggregator) aggregator).deleteRuns();
+        }
+    }
+}
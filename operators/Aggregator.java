@@ -89,6 +89,19 @@ public interface Aggregator extends Serializable {
      */
     public void mergeTupleIntoGroup(Tuple tup);
 
+    /**
+     * Merges the selected rows of a batch into the aggregate, as if by calling
+     * {@link #mergeTupleIntoGroup} on each of them.
+     *
+     * @param batch the rows to merge
+     */
+    default void mergeBatch(TupleBatch batch) {
+        int n = batch.size();
+        for (int i = 0; i < n; i++) {
+            mergeTupleIntoGroup(batch.get(i));
+        }
+    }
+
     /**
      * Create a DbIterator over group aggregate results.
      *
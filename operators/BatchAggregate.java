@@ -0,0 +1,105 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.TupleDesc;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Batch version of {@link Aggregate}.  The input is consumed a batch at a time;
+ * the output has the same schema and contents as Aggregate's.
+ */
+public class BatchAggregate implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final BatchIterator child;
+    private final int afield;
+    private final int gfield;
+    private final Aggregator.Op aop;
+    private final int maxGroups;
+    private final TupleDesc td;
+    private final TupleBatch out = new TupleBatch();
+    private Aggregator aggregator;
+    private DbIterator aggIt;
+
+    /**
+     * @param child  The BatchIterator that is feeding us tuples.
+     * @param afield The column over which we are computing an aggregate.
+     * @param gfield The column over which we are grouping the result, or -1 if
+     *               there is no grouping
+     * @param aop    The aggregation operator to use
+     */
+    public BatchAggregate(BatchIterator child, int afield, int gfield, Aggregator.Op aop) {
+        this(child, afield, gfield, aop, Aggregate.DEFAULT_MAX_GROUPS);
+    }
+
+    /**
+     * @param maxGroups The number of groups to hold in memory before spilling
+     * @see Aggregate#Aggregate(DbIterator, int, int, Aggregator.Op, int)
+     */
+    public BatchAggregate(BatchIterator child, int afield, int gfield, Aggregator.Op aop,
+                          int maxGroups) {
+        this.child = child;
+        this.afield = afield;
+        this.gfield = gfield;
+        this.aop = aop;
+        this.maxGroups = maxGroups;
+        this.td = Aggregate.makeTupleDesc(child.getTupleDesc(), afield, gfield, aop);
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        aggregator = Aggregate.makeAggregator(child.getTupleDesc(), afield, gfield, aop, maxGroups);
+        TupleBatch batch;
+        while ((batch = child.nextBatch()) != null) {
+            aggregator.mergeBatch(batch);
+        }
+        aggIt = aggregator.iterator();
+        aggIt.open();
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (aggIt == null) {
+            return null;
+        }
+        out.clear();
+        while (!out.isFull() && aggIt.hasNext()) {
+            out.add(aggIt.next());
+        }
+        return out.isEmpty() ? null : out;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        aggIt.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        child.close();
+        if (aggIt != null) {
+            aggIt.close();
+        }
+        aggIt = null;
+        if (aggregator instanceof SpillingAggregator) {
+            ((SpillingAggregator) aggregator).deleteRuns();
+        }
+        aggregator = null;
+    }
+}
@@ -0,0 +1,84 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.TupleDesc;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Batch version of {@link Filter}.  Rows that fail the predicate are removed from
+ * the batch's selection vector; no tuples are copied.
+ */
+public class BatchFilter implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final Predicate p;
+    private final PredicateCompiler.TupleTest test;
+    private final BatchIterator child;
+    private int[] keep = new int[TupleBatch.DEFAULT_SIZE];
+
+    /**
+     * @param p     The predicate to filter tuples with
+     * @param child The child operator
+     */
+    public BatchFilter(Predicate p, BatchIterator child) {
+        this.p = p;
+        this.test = PredicateCompiler.compile(p);
+        this.child = child;
+    }
+
+    public Predicate getPredicate() {
+        return this.p;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch batch;
+        while ((batch = child.nextBatch()) != null) {
+            int size = batch.size();
+            if (keep.length < size) {
+                keep = new int[batch.capacity()];
+            }
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (test.test(batch.get(i))) {
+                    keep[n++] = i;
+                }
+            }
+            if (n > 0) {
+                batch.select(keep, n);
+                return batch;
+            }
+        }
+        return null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void close() {
+        child.close();
+    }
+}
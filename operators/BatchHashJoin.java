@@ -0,0 +1,121 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.TupleDesc;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Batch version of {@link HashJoin}.  When opened, the right (build) child is read
+ * into a {@link JoinHashTable}; batches from the left (probe) child are then looked
+ * up in the table.  Output tuples are the concatenation of the left and right
+ * tuples.
+ */
+public class BatchHashJoin implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BatchIterator probe;
+    private final BatchIterator build;
+    private final int probeField;
+    private final int buildField;
+    private final TupleDesc td;
+    private final TupleBatch out = new TupleBatch();
+
+    private JoinHashTable table;
+    private TupleBatch probeBatch;
+    private int probePos;
+    private int match = JoinHashTable.END;
+
+    /**
+     * @param p     the join predicate; its operator must be {@link Op#EQUALS}
+     * @param left  the probe side; its tuples come first in the output
+     * @param right the build side; this side is held in memory
+     */
+    public BatchHashJoin(JoinPredicate p, BatchIterator left, BatchIterator right) {
+        if (p.getOperator() != Op.EQUALS) {
+            throw new DbException("hash join requires an equality predicate");
+        }
+        this.probe = left;
+        this.build = right;
+        this.probeField = p.getField1();
+        this.buildField = p.getField2();
+        this.td = TupleDesc.merge(left.getTupleDesc(), right.getTupleDesc());
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        build.open();
+        table = new JoinHashTable(buildField, build.getTupleDesc().getFieldType(buildField));
+        TupleBatch batch;
+        while ((batch = build.nextBatch()) != null) {
+            int size = batch.size();
+            for (int i = 0; i < size; i++) {
+                table.add(batch.get(i));
+            }
+        }
+        build.close();
+        probe.open();
+        probeBatch = null;
+        match = JoinHashTable.END;
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (table == null) {
+            return null;
+        }
+        out.clear();
+        while (!out.isFull()) {
+            if (match != JoinHashTable.END) {
+                out.add(JoinHashTable.concat(td, probeBatch.get(probePos), table.get(match)));
+                match = table.next(match);
+                if (match == JoinHashTable.END) {
+                    probePos++;
+                }
+                continue;
+            }
+            if (probeBatch == null || probePos >= probeBatch.size()) {
+                probeBatch = probe.nextBatch();
+                probePos = 0;
+                if (probeBatch == null) {
+                    break;
+                }
+            }
+            match = table.first(probeBatch.get(probePos), probeField);
+            if (match == JoinHashTable.END) {
+                probePos++;
+            }
+        }
+        return out.isEmpty() ? null : out;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        probe.rewind();
+        probeBatch = null;
+        match = JoinHashTable.END;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        probe.close();
+        table = null;
+        probeBatch = null;
+    }
+}
@@ -0,0 +1,67 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.TupleDesc;
+
+import java.io.Serializable;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * BatchIterator is the batch-at-a-time counterpart of {@link DbIterator}.  Rather
+ * than one tuple per hasNext/next pair, each call to {@link #nextBatch()} returns a
+ * {@link TupleBatch} of up to {@link TupleBatch#DEFAULT_SIZE} tuples, which
+ * amortizes the per-call overhead of the operator tree over the whole batch.
+ * <p>
+ * As with DbIterator, open should open any children and close should close them.
+ * Use {@link TupleToBatchIterator} and {@link BatchToTupleIterator} to mix batch
+ * and tuple operators in one plan.
+ */
+public interface BatchIterator extends Serializable {
+
+    /**
+     * Opens the iterator. This must be called before any of the other methods.
+     *
+     * @throws DbException when there are problems opening/accessing the database.
+     */
+    void open() throws DbException, TransactionAbortedException;
+
+    /**
+     * Returns the next batch of tuples.  The returned batch is never empty, and
+     * may be reused by the iterator, so it is only valid until the next call.
+     *
+     * @return the next batch, or null if there are no more tuples.
+     */
+    TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+
+    /**
+     * Resets the iterator to the start.
+     *
+     * @throws DbException when rewind is unsupported.
+     */
+    void rewind() throws DbException, TransactionAbortedException;
+
+    /**
+     * @return the TupleDesc of the tuples in the batches.
+     */
+    TupleDesc getTupleDesc();
+
+    /**
+     * Closes the iterator.
+     */
+    void close();
+}
@@ -0,0 +1,92 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.util.List;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Batch version of {@link Project}.
+ */
+public class BatchProject implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final BatchIterator child;
+    private final int[] outFieldIds;
+    private final TupleDesc td;
+    private TupleBatch out = new TupleBatch();
+
+    /**
+     * @param fieldList The ids of the fields child's tupleDesc to project out
+     * @param child     The child operator
+     */
+    public BatchProject(List<Integer> fieldList, BatchIterator child) {
+        this.child = child;
+        TupleDesc childtd = child.getTupleDesc();
+        outFieldIds = new int[fieldList.size()];
+        Type[] types = new Type[outFieldIds.length];
+        String[] names = new String[outFieldIds.length];
+        for (int i = 0; i < outFieldIds.length; i++) {
+            outFieldIds[i] = fieldList.get(i);
+            types[i] = childtd.getFieldType(outFieldIds[i]);
+            names[i] = childtd.getFieldName(outFieldIds[i]);
+        }
+        td = new TupleDesc(types, names);
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch in = child.nextBatch();
+        if (in == null) {
+            return null;
+        }
+        int size = in.size();
+        if (out.capacity() < size) {
+            out = new TupleBatch(in.capacity());
+        }
+        out.clear();
+        for (int i = 0; i < size; i++) {
+            Tuple t = in.get(i);
+            Tuple newTuple = new Tuple(td);
+            newTuple.setRecordId(t.getRecordId());
+            for (int j = 0; j < outFieldIds.length; j++) {
+                newTuple.setField(j, t.getField(outFieldIds[j]));
+            }
+            out.add(newTuple);
+        }
+        return out;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        child.close();
+    }
+}
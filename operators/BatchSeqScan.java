@@ -0,0 +1,97 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.dbfile.HeapFile;
+import colgatedb.page.SlottedPage;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.TupleDesc;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Batch version of {@link SeqScan}.  Each call to nextBatch pins a page of the
+ * HeapFile once and copies its occupied slots straight into the batch, instead of
+ * going through a per-tuple iterator.
+ */
+public class BatchSeqScan implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final TransactionId tid;
+    private final int tableid;
+    private final TupleDesc td;
+    private final TupleBatch batch;
+    private HeapFile file;
+    private int curPage;
+    private int curSlot;
+
+    /**
+     * Creates a batch sequential scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid     The transaction this scan is running as a part of.
+     * @param tableid the id of the table to scan; must be stored in a HeapFile.
+     */
+    public BatchSeqScan(TransactionId tid, int tableid) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.td = Database.getCatalog().getTupleDesc(tableid);
+        this.batch = new TupleBatch();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        file = (HeapFile) Database.getCatalog().getDatabaseFile(tableid);
+        curPage = 0;
+        curSlot = 0;
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (file == null) {
+            return null;
+        }
+        batch.clear();
+        while (!batch.isFull() && curPage < file.numPages()) {
+            SlottedPage page = file.pinPage(tid, curPage);
+            int numSlots = page.getNumSlots();
+            for (; curSlot < numSlots && !batch.isFull(); curSlot++) {
+                if (page.isSlotUsed(curSlot)) {
+                    batch.add(page.getTuple(curSlot));
+                }
+            }
+            file.unpinPage(tid, page);
+            if (curSlot == numSlots) {
+                curPage++;
+                curSlot = 0;
+            }
+        }
+        return batch.isEmpty() ? null : batch;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        curPage = 0;
+        curSlot = 0;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        file = null;
+        batch.clear();
+    }
+}
@@ -0,0 +1,92 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Adapts a {@link BatchIterator} to the tuple-at-a-time {@link DbIterator}
+ * interface, so that a batch pipeline can feed ordinary operators.
+ */
+public class BatchToTupleIterator extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private BatchIterator child;
+    private TupleBatch batch;
+    private int pos;
+
+    public BatchToTupleIterator(BatchIterator child) {
+        this.child = child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        batch = null;
+        pos = 0;
+    }
+
+    public void close() {
+        child.close();
+        batch = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        batch = null;
+        pos = 0;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (batch != null && pos < batch.size()) {
+            return true;
+        }
+        batch = child.nextBatch();
+        pos = 0;
+        return batch != null;
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        return batch.get(pos++);
+    }
+
+    /**
+     * @return an empty array: the child of this operator is a BatchIterator
+     */
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        throw new DbException("BatchToTupleIterator has a batch child");
+    }
+}
@@ -0,0 +1,118 @@
+package colgatedb.operators;
+
+import colgatedb.tuple.Field;
+import colgatedb.tuple.IntField;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A Bloom filter over join keys, used as a runtime join filter: a hash join builds
+ * one over the keys of its build side and pushes it into its probe child (see
+ * {@link RuntimeFilterTarget}), which can then drop tuples that cannot match
+ * before they reach the join.
+ * <p>
+ * The filter is blocked: all the bits of a key are set in the same 64-bit word,
+ * so a lookup touches a single word.  The filter has at least 16 bits per key
+ * (its size is rounded up to a power of two) and sets 4 bits per key, so at most
+ * about 0.5% of non-matching keys pass.
+ */
+public final class BloomFilter {
+
+    private static final int BITS_PER_KEY = 16;
+    private static final int BITS_SET = 4;
+
+    private final long[] words;
+    private final int wordMask;
+
+    /**
+     * @param expectedKeys the number of distinct keys that will be added
+     */
+    public BloomFilter(int expectedKeys) {
+        long bits = Math.max(64L, (long) expectedKeys * BITS_PER_KEY);
+        int numWords = Integer.highestOneBit((int) Math.min(1L << 30, (bits + 63) / 64));
+        if (numWords * 64L < bits && numWords < (1 << 30)) {
+            numWords <<= 1;
+        }
+        this.words = new long[numWords];
+        this.wordMask = numWords - 1;
+    }
+
+    /**
+     * @param key a join key; a NULL (null) key matches nothing, so it is not added
+     */
+    public void add(Field key) {
+        if (key != null) {
+            add(hash(key));
+        }
+    }
+
+    /**
+     * @return false if key cannot have been added; always false for a NULL (null) key
+     */
+    public boolean mightContain(Field key) {
+        return key != null && mightContain(hash(key));
+    }
+
+    /**
+     * @param h the hash of a key, as returned by {@link #hash(Field)} or {@link #hash(int)}
+     */
+    public void add(long h) {
+        words[(int) (h >>> 40) & wordMask] |= mask(h);
+    }
+
+    /**
+     * @param h the hash of a key, as returned by {@link #hash(Field)} or {@link #hash(int)}
+     */
+    public boolean mightContain(long h) {
+        long m = mask(h);
+        return (words[(int) (h >>> 40) & wordMask] & m) == m;
+    }
+
+    /**
+     * @return the hash of an INT_TYPE key; hash(i) == hash(new IntField(i))
+     */
+    public static long hash(int key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    public static long hash(Field key) {
+        if (key instanceof IntField) {
+            return hash(((IntField) key).getValue());
+        }
+        return hash(key.hashCode());
+    }
+
+    /**
+     * @return a word with BITS_SET bits chosen by the low bits of h
+     */
+    private static long mask(long h) {
+        long m = 0;
+        for (int i = 0; i < BITS_SET; i++) {
+            m |= 1L << (h >>> (6 * i));
+        }
+        return m;
+    }
+
+    /**
+     * @return the size of the filter in bytes
+     */
+    public int sizeInBytes() {
+        return words.length * 8;
+    }
+}
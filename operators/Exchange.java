@@ -0,0 +1,370 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Field;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Exchange runs each of its children (the producers) on its own worker thread of
+ * a fork-join pool and hands their tuples to the thread consuming the exchange.
+ * Everything below an exchange -- e.g., a partition of a {@link SeqScan} and the
+ * Filter, Project or {@link PartialAggregate} above it -- therefore runs in
+ * parallel with the other producers.
+ * <p>
+ * There are two variants:
+ * <ul>
+ * <li>gather ({@link #Exchange(DbIterator...)}): the tuples of all producers are
+ * returned, in no particular order, by a single exchange operator.</li>
+ * <li>repartition ({@link #repartition}): the tuples of all producers are routed
+ * by the hash of one field to one of several exchange operators, so that all
+ * tuples with equal values of that field end up in the same consumer.  The
+ * consumers must be read concurrently (e.g., each below a gather exchange) since a
+ * consumer that is not being read eventually stalls the producers.</li>
+ * </ul>
+ * Producers pass tuples in chunks through a bounded queue per consumer, which
+ * keeps the synchronization cost per tuple low and limits how far producers can
+ * run ahead of consumers.  The producers must not share state; they may share a
+ * transaction.
+ */
+public class Exchange extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The pool all exchanges run their producers on.  Blocking queue operations go
+     * through {@link ForkJoinPool#managedBlock}, so the pool adds threads when
+     * producers of nested exchanges wait on each other.
+     */
+    static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Number of tuples handed from a producer to a consumer at a time.
+     */
+    public static final int CHUNK_SIZE = 256;
+
+    /**
+     * Number of chunks that may be waiting in a consumer's queue.
+     */
+    private static final int QUEUE_CAPACITY = 16;
+
+    private static final List<Tuple> END = new ArrayList<Tuple>(0);
+
+    private final Channel channel;
+    private final int consumer;
+    private List<Tuple> chunk;
+    private int pos;
+    private int ends;
+    private boolean open;
+
+    /**
+     * Creates a gather exchange returning the tuples of all the producers, which
+     * must have the same schema.
+     */
+    public Exchange(DbIterator... producers) {
+        this(new Channel(producers, -1, 1), 0);
+    }
+
+    private Exchange(Channel channel, int consumer) {
+        this.channel = channel;
+        this.consumer = consumer;
+        setTupleDesc(channel.producers[0].getTupleDesc());
+    }
+
+    /**
+     * Creates numConsumers exchange operators that together return the tuples of
+     * all the producers.  Each tuple goes to the consumer chosen by the hash of its
+     * value in field.
+     *
+     * @param producers    the producers, which must have the same schema
+     * @param field        the field to partition on
+     * @param numConsumers the number of consumers
+     */
+    public static Exchange[] repartition(DbIterator[] producers, int field, int numConsumers) {
+        Channel channel = new Channel(producers, field, numConsumers);
+        Exchange[] consumers = new Exchange[numConsumers];
+        for (int i = 0; i < numConsumers; i++) {
+            consumers[i] = new Exchange(channel, i);
+        }
+        return consumers;
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        channel.start();
+        chunk = null;
+        pos = 0;
+        ends = 0;
+        open = true;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (!open) {
+            return false;
+        }
+        while (chunk == null || pos >= chunk.size()) {
+            if (ends == channel.producers.length) {
+                return false;
+            }
+            List<Tuple> c = channel.take(consumer);
+            channel.checkError();
+            if (c == END) {
+                ends++;
+                chunk = null;
+            } else {
+                chunk = c;
+                pos = 0;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        return chunk.get(pos++);
+    }
+
+    /**
+     * Only gather exchanges can be rewound; the producers are restarted.
+     */
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (channel.queues.size() != 1) {
+            throw new DbException("cannot rewind a repartitioning exchange");
+        }
+        close();
+        open();
+    }
+
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            chunk = null;
+            channel.consumerClosed();
+        }
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return channel.producers.clone();
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (children.length != channel.producers.length) {
+            throw new DbException("Expected " + channel.producers.length + " children!");
+        }
+        System.arraycopy(children, 0, channel.producers, 0, children.length);
+    }
+
+    /**
+     * The producers and queues shared by the consumers of an exchange.
+     */
+    private static class Channel {
+        private final DbIterator[] producers;
+        private final int field;
+        private final List<LinkedBlockingQueue<List<Tuple>>> queues;
+        private final ForkJoinTask<?>[] tasks;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+        private boolean started;
+        private int closed;
+
+        Channel(DbIterator[] producers, int field, int numConsumers) {
+            if (producers.length == 0) {
+                throw new IllegalArgumentException("an exchange needs at least one producer");
+            }
+            this.producers = producers.clone();
+            this.field = field;
+            this.queues = new ArrayList<LinkedBlockingQueue<List<Tuple>>>(numConsumers);
+            for (int i = 0; i < numConsumers; i++) {
+                queues.add(new LinkedBlockingQueue<List<Tuple>>(QUEUE_CAPACITY));
+            }
+            this.tasks = new ForkJoinTask<?>[producers.length];
+        }
+
+        synchronized void start() {
+            if (started) {
+                return;
+            }
+            started = true;
+            closed = 0;
+            cancelled = false;
+            error = null;
+            for (int i = 0; i < producers.length; i++) {
+                final DbIterator producer = producers[i];
+                tasks[i] = POOL.submit(new Runnable() {
+                    public void run() {
+                        produce(producer);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Stops the producers once every consumer has been closed and waits for
+         * them to close their children.
+         */
+        synchronized void consumerClosed() {
+            if (++closed < queues.size()) {
+                return;
+            }
+            cancelled = true;
+            for (ForkJoinTask<?> task : tasks) {
+                task.quietlyJoin();
+            }
+            for (LinkedBlockingQueue<List<Tuple>> queue : queues) {
+                queue.clear();
+            }
+            started = false;
+        }
+
+        private void produce(DbIterator producer) {
+            int n = queues.size();
+            List<List<Tuple>> buffers = new ArrayList<List<Tuple>>(n);
+            for (int i = 0; i < n; i++) {
+                buffers.add(new ArrayList<Tuple>(CHUNK_SIZE));
+            }
+            try {
+                producer.open();
+                while (!cancelled && producer.hasNext()) {
+                    Tuple t = producer.next();
+                    int q = route(t);
+                    List<Tuple> buffer = buffers.get(q);
+                    buffer.add(t);
+                    if (buffer.size() == CHUNK_SIZE) {
+                        put(q, buffer);
+                        buffers.set(q, new ArrayList<Tuple>(CHUNK_SIZE));
+                    }
+                }
+                for (int i = 0; i < n; i++) {
+                    if (!buffers.get(i).isEmpty()) {
+                        put(i, buffers.get(i));
+                    }
+                }
+            } catch (Throwable e) {
+                if (error == null) {
+                    error = e;
+                }
+            } finally {
+                producer.close();
+                for (int i = 0; i < n; i++) {
+                    put(i, END);
+                }
+            }
+        }
+
+        private int route(Tuple t) {
+            if (field < 0) {
+                return 0;
+            }
+            Field f = t.getField(field);
+            int h = (f == null ? 0 : f.hashCode()) * 0x9E3779B9;   // NULLs all go to one consumer
+            h ^= h >>> 16;
+            return (h & 0x7fffffff) % queues.size();
+        }
+
+        /**
+         * Adds a chunk to a consumer's queue, waiting for space unless the
+         * exchange has been cancelled.
+         */
+        private void put(final int q, final List<Tuple> chunk) {
+            final LinkedBlockingQueue<List<Tuple>> queue = queues.get(q);
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    private boolean done;
+
+                    public boolean block() throws InterruptedException {
+                        while (!isReleasable()) {
+                            done = queue.offer(chunk, 10, TimeUnit.MILLISECONDS);
+                        }
+                        return true;
+                    }
+
+                    public boolean isReleasable() {
+                        return done || cancelled || (done = queue.offer(chunk));
+                    }
+                });
+            } catch (InterruptedException e) {
+                cancelled = true;
+            }
+        }
+
+        private List<Tuple> take(int q) throws DbException {
+            final LinkedBlockingQueue<List<Tuple>> queue = queues.get(q);
+            final List<List<Tuple>> result = new ArrayList<List<Tuple>>(1);
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    public boolean block() throws InterruptedException {
+                        if (result.isEmpty()) {
+                            result.add(queue.take());
+                        }
+                        return true;
+                    }
+
+                    public boolean isReleasable() {
+                        if (result.isEmpty()) {
+                            List<Tuple> c = queue.poll();
+                            if (c != null) {
+                                result.add(c);
+                            }
+                        }
+                        return !result.isEmpty();
+                    }
+                });
+            } catch (InterruptedException e) {
+                throw new DbException("interrupted while waiting for an exchange producer");
+            }
+            return result.get(0);
+        }
+
+        /**
+         * Rethrows a failure of any producer on the consumer's thread.
+         */
+        void checkError() throws DbException, TransactionAbortedException {
+            Throwable e = error;
+            if (e == null) {
+                return;
+            }
+            if (e instanceof TransactionAbortedException) {
+                throw (TransactionAbortedException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new DbException("exchange producer failed: " + e);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import colgatedb.main.OperatorMain;
 import colgatedb.transactions.TransactionAbortedException;
 import colgatedb.tuple.Tuple;
 
+import java.util.ArrayList;
 import java.util.NoSuchElementException;
 
 /**
@@ -26,13 +27,16 @@ import java.util.NoSuchElementException;
 /**
  * Filter is an operator that implements a relational select.
  */
-public class Filter extends Operator {
+public class Filter extends Operator implements RuntimeFilterTarget {
 
     Predicate p;
+    private final PredicateCompiler.TupleTest test;
     DbIterator child;
     private boolean opened;
     private boolean alreadyHasNexted = false;
     private Tuple curTuple;
+    private final ArrayList<Integer> runtimeFilterFields = new ArrayList<Integer>();
+    private final ArrayList<BloomFilter> runtimeFilters = new ArrayList<BloomFilter>();
     /**
      * Constructor accepts a predicate to apply and a child operator to read
      * tuples to filter from.
@@ -42,6 +46,7 @@ public class Filter extends Operator {
      */
     public Filter(Predicate p, DbIterator child) {
         this.p = p;
+        this.test = PredicateCompiler.compile(p);
         this.child = child;
         this.setTupleDesc(child.getTupleDesc());
         opened = false;
@@ -79,10 +84,8 @@ public class Filter extends Operator {
         }
         if (opened) {
             while (child.hasNext()) {
-                //System.out.println("HERE");
                 Tuple tempTuple = child.next();
-                System.out.println(tempTuple.toString());
-                if (p.filter(tempTuple)) {
+                if (test.test(tempTuple) && passesRuntimeFilters(tempTuple)) {
                     curTuple = tempTuple;
                     alreadyHasNexted = true;
                     return true;
@@ -103,6 +106,38 @@ public class Filter extends Operator {
         throw new NoSuchElementException();
     }
 
+    /**
+     * Passes the filter on to the child if it can apply it itself, and otherwise
+     * applies it along with the predicate.
+     */
+    public void addRuntimeFilter(int field, BloomFilter filter) {
+        if (child instanceof RuntimeFilterTarget) {
+            ((RuntimeFilterTarget) child).addRuntimeFilter(field, filter);
+        } else {
+            runtimeFilterFields.add(field);
+            runtimeFilters.add(filter);
+        }
+    }
+
+    public void removeRuntimeFilter(BloomFilter filter) {
+        int i = runtimeFilters.indexOf(filter);
+        if (i >= 0) {
+            runtimeFilters.remove(i);
+            runtimeFilterFields.remove(i);
+        } else if (child instanceof RuntimeFilterTarget) {
+            ((RuntimeFilterTarget) child).removeRuntimeFilter(filter);
+        }
+    }
+
+    private boolean passesRuntimeFilters(Tuple t) {
+        for (int i = 0; i < runtimeFilters.size(); i++) {
+            if (!runtimeFilters.get(i).mightContain(t.getField(runtimeFilterFields.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public DbIterator[] getChildren() {
         return new DbIterator[]{child};
@@ -0,0 +1,150 @@
+package colgatedb.operators;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Running sum, count, min and max for every group, stored column-wise in
+ * primitive long arrays indexed by group number (see {@link GroupTable}).
+ * Accumulators for floating point values keep the sum, min and max in double
+ * arrays instead.  Merging a value into an existing group does not allocate.
+ */
+final class GroupAccumulators implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 16;
+
+    long[] sum;
+    long[] count;
+    long[] min;
+    long[] max;
+    double[] dsum;      // the double columns are null unless floating
+    double[] dmin;
+    double[] dmax;
+    private final boolean floating;
+    private int numGroups;
+
+    GroupAccumulators() {
+        this(false);
+    }
+
+    /**
+     * @param floating true to accumulate doubles (see {@link #add(int, double)})
+     *                 rather than longs
+     */
+    GroupAccumulators(boolean floating) {
+        this.floating = floating;
+        clear();
+    }
+
+    /**
+     * Makes sure that accumulators exist for groups 0..group.  Groups are
+     * expected to be added in order, as handed out by GroupTable.
+     */
+    void ensureGroup(int group) {
+        if (group < numGroups) {
+            return;
+        }
+        if (group >= sum.length) {
+            int capacity = Math.max(sum.length * 2, group + 1);
+            sum = Arrays.copyOf(sum, capacity);
+            count = Arrays.copyOf(count, capacity);
+            min = Arrays.copyOf(min, capacity);
+            max = Arrays.copyOf(max, capacity);
+            if (floating) {
+                dsum = Arrays.copyOf(dsum, capacity);
+                dmin = Arrays.copyOf(dmin, capacity);
+                dmax = Arrays.copyOf(dmax, capacity);
+            }
+        }
+        for (int g = numGroups; g <= group; g++) {
+            sum[g] = 0;
+            count[g] = 0;
+            min[g] = Long.MAX_VALUE;
+            max[g] = Long.MIN_VALUE;
+            if (floating) {
+                dsum[g] = 0;
+                dmin[g] = Double.POSITIVE_INFINITY;
+                dmax[g] = Double.NEGATIVE_INFINITY;
+            }
+        }
+        numGroups = group + 1;
+    }
+
+    /**
+     * Merges one value into the given group.
+     */
+    void add(int group, long value) {
+        sum[group] += value;
+        count[group]++;
+        if (value < min[group]) {
+            min[group] = value;
+        }
+        if (value > max[group]) {
+            max[group] = value;
+        }
+    }
+
+    /**
+     * Merges one floating point value into the given group.
+     */
+    void add(int group, double value) {
+        dsum[group] += value;
+        count[group]++;
+        if (value < dmin[group]) {
+            dmin[group] = value;
+        }
+        if (value > dmax[group]) {
+            dmax[group] = value;
+        }
+    }
+
+    /**
+     * Merges an already-aggregated (sum, count) pair into the given group.
+     */
+    void addSumCount(int group, long s, long c) {
+        sum[group] += s;
+        count[group] += c;
+    }
+
+    /**
+     * Merges an already-aggregated floating point (sum, count) pair into the given
+     * group.
+     */
+    void addSumCount(int group, double s, long c) {
+        dsum[group] += s;
+        count[group] += c;
+    }
+
+    int numGroups() {
+        return numGroups;
+    }
+
+    void clear() {
+        sum = new long[INITIAL_CAPACITY];
+        count = new long[INITIAL_CAPACITY];
+        min = new long[INITIAL_CAPACITY];
+        max = new long[INITIAL_CAPACITY];
+        if (floating) {
+            dsum = new double[INITIAL_CAPACITY];
+            dmin = new double[INITIAL_CAPACITY];
+            dmax = new double[INITIAL_CAPACITY];
+        }
+        numGroups = 0;
+    }
+}
@@ -0,0 +1,193 @@
+package colgatedb.operators;
+
+import colgatedb.tuple.Field;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.StringField;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.Type;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Maps the group-by value of a tuple to a dense group number, which the
+ * aggregators use as an index into their primitive accumulator arrays.
+ * <p>
+ * INT_TYPE group-by fields are looked up in an {@link IntGroupMap} without
+ * creating any objects; other types fall back to a HashMap keyed by Field.
+ * When there is no grouping, every tuple belongs to group 0.
+ * <p>
+ * As in SQL's GROUP BY, all tuples whose group-by value is NULL belong to one
+ * group, whose key is null.
+ */
+final class GroupTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int gbfield;
+    private final Type gbfieldtype;
+    private final IntGroupMap intGroups;
+    private final HashMap<Field, Integer> fieldGroups;
+    private final ArrayList<Field> fieldKeys;
+    private int nullGroup = -1;     // the group of NULL values, or -1 if none has been seen
+    private int size;
+
+    /**
+     * @param gbfield     the 0-based index of the group-by field in the tuple, or
+     *                    NO_GROUPING if there is no grouping
+     * @param gbfieldtype the type of the group by field, or null if there is no grouping
+     */
+    GroupTable(int gbfield, Type gbfieldtype) {
+        this.gbfield = gbfield;
+        this.gbfieldtype = gbfieldtype;
+        if (gbfield == Aggregator.NO_GROUPING) {
+            intGroups = null;
+            fieldGroups = null;
+            fieldKeys = null;
+        } else if (gbfieldtype == Type.INT_TYPE) {
+            intGroups = new IntGroupMap();
+            fieldGroups = null;
+            fieldKeys = null;
+        } else {
+            intGroups = null;
+            fieldGroups = new HashMap<Field, Integer>();
+            fieldKeys = new ArrayList<Field>();
+        }
+    }
+
+    boolean isGrouped() {
+        return gbfield != Aggregator.NO_GROUPING;
+    }
+
+    int groupField() {
+        return gbfield;
+    }
+
+    Type groupFieldType() {
+        return gbfieldtype;
+    }
+
+    /**
+     * @return the group number of the group that tup belongs to; new groups are
+     * numbered sequentially starting at 0.
+     */
+    int groupOf(Tuple tup) {
+        return groupOf(tup, gbfield);
+    }
+
+    /**
+     * Same as {@link #groupOf(Tuple)} but reads the group-by value from the given
+     * field of tup (used when merging partial aggregates whose layout differs from
+     * the input).
+     */
+    int groupOf(Tuple tup, int field) {
+        if (isGrouped() && tup.isNull(field)) {
+            return nullGroup();
+        }
+        if (intGroups != null) {
+            int group = intGroups.getOrAdd(((IntField) tup.getField(field)).getValue());
+            size = intGroups.size();
+            return group;
+        }
+        if (fieldGroups != null) {
+            Field key = tup.getField(field);
+            Integer group = fieldGroups.get(key);
+            if (group == null) {
+                if (key instanceof StringField) {
+                    key = ((StringField) key).copy();   // don't keep the page it was read from
+                }
+                group = size++;
+                fieldGroups.put(key, group);
+                fieldKeys.add(key);
+            }
+            return group;
+        }
+        size = 1;
+        return 0;
+    }
+
+    private int nullGroup() {
+        if (nullGroup < 0) {
+            if (intGroups != null) {
+                nullGroup = intGroups.addUnkeyed();
+                size = intGroups.size();
+            } else {
+                nullGroup = size++;
+                fieldKeys.add(null);
+            }
+        }
+        return nullGroup;
+    }
+
+    /**
+     * Looks up the group of the value in the given field of tup without adding
+     * a new group.
+     *
+     * @return the group number, or -1 if the value has not been seen
+     */
+    int find(Tuple tup, int field) {
+        if (isGrouped() && tup.isNull(field)) {
+            return nullGroup;
+        }
+        if (intGroups != null) {
+            return intGroups.get(((IntField) tup.getField(field)).getValue());
+        }
+        if (fieldGroups != null) {
+            Integer group = fieldGroups.get(tup.getField(field));
+            return group == null ? -1 : group;
+        }
+        return size == 0 ? -1 : 0;
+    }
+
+    /**
+     * @return the group-by value of the given group, or null if there is no grouping
+     * or the group is that of NULL values
+     */
+    Field keyOf(int group) {
+        if (group == nullGroup) {
+            return null;
+        }
+        if (intGroups != null) {
+            return new IntField(intGroups.keyOf(group));
+        }
+        if (fieldKeys != null) {
+            return fieldKeys.get(group);
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of groups seen so far
+     */
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        if (intGroups != null) {
+            intGroups.clear();
+        }
+        if (fieldGroups != null) {
+            fieldGroups.clear();
+            fieldKeys.clear();
+        }
+        nullGroup = -1;
+        size = 0;
+    }
+}
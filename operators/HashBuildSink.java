@@ -0,0 +1,63 @@
+package colgatedb.operators;
+
+import colgatedb.tuple.CompactTuple;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A pipeline breaker that builds the hash table of a hash join from the tuples
+ * pushed into it.  The table is probed by a {@link PushHashProbe} in a later
+ * pipeline.
+ */
+public final class HashBuildSink implements TupleConsumer {
+
+    private final JoinHashTable table;
+    private final TupleDesc td;
+    private boolean finished;
+
+    /**
+     * @param td    the schema of the build tuples
+     * @param field the join field of the build tuples
+     */
+    public HashBuildSink(TupleDesc td, int field) {
+        this.td = td;
+        this.table = new JoinHashTable(field, td.getFieldType(field));
+    }
+
+    public void consume(Tuple t) {
+        table.add(t instanceof CompactTuple ? ((CompactTuple) t).copy() : t);
+    }
+
+    public void finish() {
+        finished = true;
+    }
+
+    /**
+     * @return the schema of the build tuples
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    JoinHashTable table() {
+        if (!finished) {
+            throw new IllegalStateException("hash table has not been built");
+        }
+        return table;
+    }
+}
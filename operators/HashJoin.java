@@ -0,0 +1,181 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+
+/**
+ * A hash equi-join.  When opened, the right (build) child is read into a
+ * {@link JoinHashTable}; tuples of the left (probe) child are then looked up in
+ * the table.  As with {@link Join}, output tuples are the concatenation of the left
+ * and right tuples.
+ * <p>
+ * {@link #parallel} probes several inputs in parallel against one shared table.
+ * <p>
+ * After the build phase, a {@link BloomFilter} over the build keys is pushed into
+ * the probe child if it is a {@link RuntimeFilterTarget} (e.g., a SeqScan, or a
+ * Filter above one), so that probe tuples without a match are dropped as early as
+ * possible.  The filter is skipped when the build side has so many keys that it
+ * would rarely drop anything.
+ */
+public class HashJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Runtime filters are only pushed down when the build side has at most this
+     * many distinct keys.
+     */
+    public static final int MAX_RUNTIME_FILTER_KEYS = 1 << 22;
+
+    private final JoinPredicate jp;
+    private DbIterator child1;
+    private DbIterator child2;
+    private JoinHashTable table;
+    private final boolean shared;
+    private BloomFilter runtimeFilter;
+    private Tuple probe;
+    private int match = JoinHashTable.END;
+
+    /**
+     * @param p      The predicate to use to join the children; its operator must be
+     *               {@link Op#EQUALS}
+     * @param child1 Iterator for the left (probe) relation to join
+     * @param child2 Iterator for the right (build) relation to join; this side is
+     *               held in memory
+     */
+    public HashJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, null);
+    }
+
+    private HashJoin(JoinPredicate p, DbIterator child1, DbIterator child2, JoinHashTable table) {
+        if (p.getOperator() != Op.EQUALS) {
+            throw new DbException("hash join requires an equality predicate");
+        }
+        this.jp = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.table = table;
+        this.shared = table != null;
+        setTupleDesc(TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc()));
+    }
+
+    /**
+     * Joins each of the probe inputs (e.g., partitions of a {@link SeqScan}) with
+     * build, probing in parallel below a gather {@link Exchange}.  The build side is
+     * read once, by whichever probe is opened first, into a table shared by all the
+     * probes.
+     *
+     * @return an operator returning the union of the joins of each probe input with build
+     */
+    public static DbIterator parallel(JoinPredicate p, DbIterator[] probes, DbIterator build) {
+        int field = p.getField2();
+        JoinHashTable table = new JoinHashTable(field, build.getTupleDesc().getFieldType(field));
+        DbIterator[] joins = new DbIterator[probes.length];
+        for (int i = 0; i < probes.length; i++) {
+            joins[i] = new HashJoin(p, probes[i], build, table);
+        }
+        return new Exchange(joins);
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return this.jp;
+    }
+
+    @Override
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        if (!shared) {
+            int field = jp.getField2();
+            table = new JoinHashTable(field, child2.getTupleDesc().getFieldType(field));
+        }
+        table.buildOnce(child2);
+        if (child1 instanceof RuntimeFilterTarget && table.numKeys() <= MAX_RUNTIME_FILTER_KEYS) {
+            runtimeFilter = table.bloomFilter();
+            ((RuntimeFilterTarget) child1).addRuntimeFilter(jp.getField1(), runtimeFilter);
+        }
+        child1.open();
+        probe = null;
+        match = JoinHashTable.END;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (table == null) {
+            return false;
+        }
+        while (match == JoinHashTable.END) {
+            if (!child1.hasNext()) {
+                return false;
+            }
+            probe = child1.next();
+            match = table.first(probe, jp.getField1());
+        }
+        return true;
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        Tuple t = JoinHashTable.concat(getTupleDesc(), probe, table.get(match));
+        match = table.next(match);
+        return t;
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        probe = null;
+        match = JoinHashTable.END;
+    }
+
+    @Override
+    public void close() {
+        child1.close();
+        if (runtimeFilter != null) {
+            ((RuntimeFilterTarget) child1).removeRuntimeFilter(runtimeFilter);
+            runtimeFilter = null;
+        }
+        if (!shared) {
+            table = null;
+        }
+        probe = null;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{child1, child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (children.length != 2) {
+            throw new DbException("Expected two children");
+        }
+        child1 = children[0];
+        child2 = children[1];
+    }
+}
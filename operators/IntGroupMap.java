@@ -0,0 +1,142 @@
+package colgatedb.operators;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * An open-addressing hash map from int keys to dense group numbers 0, 1, 2, ...
+ * in order of first appearance.  Keys and group numbers are kept in parallel
+ * primitive arrays (linear probing), so looking up or adding a key does not
+ * allocate.
+ */
+final class IntGroupMap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] keys;         // hash slot -> key
+    private int[] groups;       // hash slot -> group number, or EMPTY
+    private int[] groupKeys;    // group number -> key
+    private int mask;
+    private int size;
+
+    IntGroupMap() {
+        clear();
+    }
+
+    /**
+     * @return the group number of key, adding the key as a new group if it has
+     * not been seen before.
+     */
+    int getOrAdd(int key) {
+        int slot = hash(key) & mask;
+        while (groups[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return groups[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int group = size++;
+        keys[slot] = key;
+        groups[slot] = group;
+        if (group == groupKeys.length) {
+            groupKeys = Arrays.copyOf(groupKeys, group * 2);
+        }
+        groupKeys[group] = key;
+        if (size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return group;
+    }
+
+    /**
+     * @return a new group number that no key maps to (e.g., for a group of NULL
+     * values); its key is undefined.
+     */
+    int addUnkeyed() {
+        int group = size++;
+        if (group == groupKeys.length) {
+            groupKeys = Arrays.copyOf(groupKeys, group * 2);
+        }
+        return group;
+    }
+
+    /**
+     * @return the group number of key, or -1 if the key has not been seen.
+     */
+    int get(int key) {
+        int slot = hash(key) & mask;
+        while (groups[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return groups[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the key of the given group number
+     */
+    int keyOf(int group) {
+        return groupKeys[group];
+    }
+
+    /**
+     * @return the number of groups: the number of distinct keys plus the number of
+     * unkeyed groups
+     */
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        keys = new int[INITIAL_CAPACITY];
+        groups = new int[INITIAL_CAPACITY];
+        Arrays.fill(groups, EMPTY);
+        groupKeys = new int[INITIAL_CAPACITY / 2];
+        mask = INITIAL_CAPACITY - 1;
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldGroups = groups;
+        keys = new int[capacity];
+        groups = new int[capacity];
+        Arrays.fill(groups, EMPTY);
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldGroups[i] != EMPTY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (groups[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                groups[slot] = oldGroups[i];
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        // spread the bits so that sequential keys do not form long probe runs
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
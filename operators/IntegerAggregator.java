@@ -1,10 +1,9 @@
 package colgatedb.operators;
 
+import colgatedb.DbException;
 import colgatedb.tuple.*;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
 
 /**
  * ColgateDB
@@ -19,9 +18,33 @@ import java.util.LinkedList;
  */
 
 /**
- * Knows how to compute some aggregate over a set of IntFields.
+ * Knows how to compute some aggregate over a set of IntFields, or over fields of
+ * the other numeric types: LongFields, DateFields and DecimalFields (whose values
+ * are accumulated as longs) and DoubleFields (accumulated as doubles).
+ * <p>
+ * COUNT produces an INT; MIN, MAX, SUM and AVG produce a value of the aggregate
+ * field's type.  AVG of INT, LONG, DATE and DECIMAL values is truncated to that
+ * type's precision.  DATE fields cannot be summed.  Values are accumulated as
+ * longs, so an INT result (a COUNT, or a SUM of INT values) that does not fit in
+ * an INT is an error rather than being truncated; SUM over a LONG_TYPE field
+ * instead.
+ * <p>
+ * As in SQL, NULL values are skipped: COUNT counts the values that are not NULL,
+ * and MIN, MAX, SUM and AVG of a group with no such values are NULL (as is the sum
+ * of a SUM_COUNT).  Without grouping there is exactly one result, even when there
+ * is no input: a COUNT of 0, or NULL.
  */
-public class IntegerAggregator implements Aggregator {
+public class IntegerAggregator implements PartialAggregator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int afield;
+    private final Type valueType;
+    private final boolean floating;
+    private final Op what;
+    private final GroupTable groups;
+    private final GroupAccumulators acc;
+    private long[] nullMask = new long[(TupleBatch.DEFAULT_SIZE + 63) >>> 6];
 
     /**
      * Aggregate constructor
@@ -35,44 +58,362 @@ public class IntegerAggregator implements Aggregator {
      */
 
     public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        throw new UnsupportedOperationException("implement me!");
+        this(gbfield, gbfieldtype, afield, Type.INT_TYPE, what);
+    }
+
+    /**
+     * @param afieldtype the type of the aggregate field; any type but STRING_TYPE
+     * @see #IntegerAggregator(int, Type, int, Op)
+     */
+    public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Type afieldtype, Op what) {
+        if (afieldtype == Type.STRING_TYPE) {
+            throw new IllegalArgumentException("use a StringAggregator for STRING_TYPE");
+        }
+        if (afieldtype == Type.DATE_TYPE
+                && (what == Op.SUM || what == Op.SUM_COUNT || what == Op.SC_AVG)) {
+            throw new IllegalArgumentException("dates cannot be summed");
+        }
+        this.afield = afield;
+        this.valueType = afieldtype;
+        this.floating = afieldtype == Type.DOUBLE_TYPE;
+        this.what = what;
+        this.groups = new GroupTable(gbfield, gbfieldtype);
+        this.acc = new GroupAccumulators(floating);
     }
 
     /**
      * Merge a new tuple into the aggregate, grouping as indicated in the
      * constructor
+     * <p>
+     * For SC_AVG, the tuple is expected to hold a sum in the aggregate field and
+     * the matching count in the field right after it (i.e., the output of a
+     * SUM_COUNT aggregate).
      *
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        throw new UnsupportedOperationException("implement me!");
+        if (tup.isNull(afield)) {
+            acc.ensureGroup(groups.groupOf(tup));
+        } else {
+            mergeValue(tup);
+        }
+    }
+
+    /**
+     * Merges the selected rows of a batch.  The rows whose aggregate field is NULL
+     * are found with one pass over the batch ({@link TupleBatch#nullMask}); when
+     * there are none, as is usual, the values are merged without checking each row,
+     * and an ungrouped COUNT simply adds the number of rows that are not NULL.
+     */
+    @Override
+    public void mergeBatch(TupleBatch batch) {
+        int n = batch.size();
+        if (n == 0) {
+            return;
+        }
+        if (nullMask.length << 6 < n) {
+            nullMask = new long[(n + 63) >>> 6];
+        }
+        int nulls = batch.nullMask(afield, nullMask);
+        if (what == Op.COUNT && !groups.isGrouped()) {
+            int group = groups.groupOf(batch.get(0));
+            acc.ensureGroup(group);
+            acc.addSumCount(group, 0L, n - nulls);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            Tuple t = batch.get(i);
+            if (nulls != 0 && (nullMask[i >>> 6] & (1L << i)) != 0) {
+                acc.ensureGroup(groups.groupOf(t));
+            } else {
+                mergeValue(t);
+            }
+        }
+    }
+
+    /**
+     * Merges a tuple whose aggregate field is not NULL.
+     */
+    private void mergeValue(Tuple tup) {
+        int group = groups.groupOf(tup);
+        acc.ensureGroup(group);
+        if (floating) {
+            double value = tup.getDouble(afield);
+            if (what == Op.SC_AVG) {
+                acc.addSumCount(group, value, tup.getInt(afield + 1));
+            } else {
+                acc.add(group, value);
+            }
+            return;
+        }
+        long value = tup.getLong(afield);
+        if (what == Op.SC_AVG) {
+            acc.addSumCount(group, value, tup.getInt(afield + 1));
+        } else {
+            acc.add(group, value);
+        }
     }
 
     /**
      * Create a DbIterator over group aggregate results.
      *
      * @return a DbIterator whose tuples are the pair (groupVal, aggregateVal)
-     * if using group, or a single (aggregateVal) if no grouping. The
+     * if using group, or a single (aggregateVal) if no grouping, even if no
+     * tuples were merged. The
      * aggregateVal is determined by the type of aggregate specified in
-     * the constructor.
+     * the constructor.  For SUM_COUNT, aggregateVal is two fields: the sum
+     * followed by the count.
+     */
+    public TupleIterator iterator() {
+        TupleDesc td = resultTupleDesc(groups.isGrouped() ? groups.groupFieldType() : null,
+                valueType, what);
+        return results(td, what == Op.SUM_COUNT);
+    }
+
+    /**
+     * Merge a partial aggregate, as produced by {@link #partialIterator()} of an
+     * aggregator with the same operator, into the aggregate.  The group by value
+     * (if any) is the first field of the partial tuple.  Partial (sum, count)
+     * pairs are combined the same way SC_AVG combines SUM_COUNT tuples.
+     *
+     * @param partial the partial tuple
+     */
+    public void mergePartialIntoGroup(Tuple partial) {
+        int i = groups.isGrouped() ? 1 : 0;
+        int group = groups.groupOf(partial, 0);
+        acc.ensureGroup(group);
+        if (partial.isNull(i)) {
+            return;     // the group has no values that are not NULL
+        }
+        switch (what) {
+            case MIN:
+            case MAX:
+            case SUM:
+                if (floating) {
+                    acc.add(group, partial.getDouble(i));
+                } else {
+                    acc.add(group, partial.getLong(i));
+                }
+                break;
+            case COUNT:
+                acc.addSumCount(group, 0, partial.getInt(i));
+                break;
+            default:
+                if (floating) {
+                    acc.addSumCount(group, partial.getDouble(i), partial.getInt(i + 1));
+                } else {
+                    acc.addSumCount(group, partial.getLong(i), partial.getInt(i + 1));
+                }
+        }
+    }
+
+    public int numGroups() {
+        return groups.size();
+    }
+
+    public TupleIterator partialIterator() {
+        TupleDesc td = partialTupleDesc(groups.isGrouped() ? groups.groupFieldType() : null,
+                valueType, what);
+        return results(td, td.numFields() - (groups.isGrouped() ? 1 : 0) == 2);
+    }
+
+    /**
+     * @param sumCount true to produce the (sum, count) of each group rather than
+     *                 its final value
+     */
+    private TupleIterator results(TupleDesc td, boolean sumCount) {
+        int numGroups = groups.isGrouped() ? groups.size() : 1;
+        acc.ensureGroup(numGroups - 1);     // the one group of an ungrouped aggregate may be empty
+        ArrayList<Tuple> results = new ArrayList<Tuple>(numGroups);
+        for (int g = 0; g < numGroups; g++) {
+            Tuple t = new Tuple(td);
+            int i = 0;
+            if (groups.isGrouped()) {
+                t.setField(i++, groups.keyOf(g));
+            }
+            if (sumCount) {
+                Type sumType = td.getFieldType(i);
+                if (acc.count[g] == 0) {
+                    t.setNull(i++);
+                } else {
+                    t.setField(i++, floating ? new DoubleField(acc.dsum[g]) : makeField(sumType, acc.sum[g]));
+                }
+                t.setField(i, intField(acc.count[g]));
+            } else if (what == Op.COUNT) {
+                t.setField(i, intField(acc.count[g]));
+            } else if (acc.count[g] == 0) {
+                t.setNull(i);
+            } else if (floating) {
+                t.setField(i, new DoubleField(doubleValueOf(g)));
+            } else {
+                t.setField(i, makeField(td.getFieldType(i), valueOf(g)));
+            }
+            results.add(t);
+        }
+        return new TupleIterator(td, results);
+    }
+
+    public void clear() {
+        groups.clear();
+        acc.clear();
+    }
+
+    /**
+     * @return the final value of the aggregate for group g
      */
-    public DbIterator iterator() {
-        throw new UnsupportedOperationException("implement me!");
+    private long valueOf(int g) {
+        switch (what) {
+            case MIN:
+                return acc.min[g];
+            case MAX:
+                return acc.max[g];
+            case SUM:
+                return acc.sum[g];
+            case COUNT:
+                return acc.count[g];
+            case AVG:
+            case SC_AVG:
+                return acc.count[g] == 0 ? 0 : acc.sum[g] / acc.count[g];
+            default:
+                throw new IllegalStateException("unexpected op " + what);
+        }
+    }
+
+    /**
+     * @return the final value of the aggregate for group g of a DOUBLE_TYPE field
+     */
+    private double doubleValueOf(int g) {
+        switch (what) {
+            case MIN:
+                return acc.dmin[g];
+            case MAX:
+                return acc.dmax[g];
+            case SUM:
+                return acc.dsum[g];
+            case AVG:
+            case SC_AVG:
+                return acc.count[g] == 0 ? 0 : acc.dsum[g] / acc.count[g];
+            default:
+                throw new IllegalStateException("unexpected op " + what);
+        }
+    }
+
+    /**
+     * @return a field of the given type, other than DOUBLE_TYPE or STRING_TYPE,
+     * holding value
+     */
+    private static Field makeField(Type type, long value) {
+        switch (type) {
+            case LONG_TYPE:
+                return new LongField(value);
+            case DATE_TYPE:
+                return new DateField(value);
+            case DECIMAL_TYPE:
+                return new DecimalField(value);
+            default:
+                return intField(value);
+        }
+    }
+
+    /**
+     * @return an IntField holding value
+     * @throws DbException if value does not fit in an INT
+     */
+    static IntField intField(long value) {
+        if (value != (int) value) {
+            throw new DbException("aggregate value " + value + " overflows INT_TYPE");
+        }
+        return new IntField((int) value);
+    }
+
+    /**
+     * @param afieldtype the type of an aggregate field
+     * @return the type an aggregator accumulates for fields of that type: the type
+     * itself, or INT_TYPE for STRING_TYPE (which only supports COUNT)
+     */
+    static Type valueType(Type afieldtype) {
+        return afieldtype == Type.STRING_TYPE ? Type.INT_TYPE : afieldtype;
     }
 
     /**
-     * A helper struct to store accumulated aggregate values.
+     * @return the type of a running sum of values of the given type
      */
-    private class AggregateFields {
-        public String groupVal;
-        public int min, max, sum, count, sumCount;
+    private static Type sumType(Type valueType) {
+        return valueType == Type.DATE_TYPE ? Type.LONG_TYPE : valueType;
+    }
 
-        public AggregateFields(String groupVal) {
-            this.groupVal = groupVal;
-            min = Integer.MAX_VALUE;
-            max = Integer.MIN_VALUE;
-            sum = count = sumCount = 0;
+    /**
+     * @return the type of a partial sum of values of the given type: a LONG for INT
+     * values, whose partial sums may not fit in an INT even when the final SUM or
+     * AVG does, and the type of a running sum otherwise
+     */
+    private static Type partialSumType(Type valueType) {
+        return valueType == Type.INT_TYPE ? Type.LONG_TYPE : sumType(valueType);
+    }
+
+    /**
+     * @param gbfieldtype the type of the group by field, or null if there is no grouping
+     * @param what        the aggregation operator
+     * @return the schema of the tuples produced by an aggregator: the group by
+     * field (if any) followed by the aggregate value, which is two INT fields
+     * (sum, count) for SUM_COUNT and one INT field otherwise.
+     */
+    static TupleDesc resultTupleDesc(Type gbfieldtype, Op what) {
+        return resultTupleDesc(gbfieldtype, Type.INT_TYPE, what);
+    }
+
+    /**
+     * @param valueType the type of the aggregate field (see {@link #valueType})
+     * @return the schema of the tuples produced by an aggregator over values of
+     * the given type: the group by field (if any) followed by the aggregate value,
+     * which is the sum and an INT count for SUM_COUNT, an INT for COUNT and of
+     * type valueType otherwise.
+     */
+    static TupleDesc resultTupleDesc(Type gbfieldtype, Type valueType, Op what) {
+        if (what == Op.SUM_COUNT) {
+            return tupleDesc(gbfieldtype, sumType(valueType), Type.INT_TYPE);
+        }
+        return tupleDesc(gbfieldtype, what == Op.COUNT ? Type.INT_TYPE : valueType);
+    }
+
+    /**
+     * @param gbfieldtype the type of the group by field, or null if there is no grouping
+     * @param what        the aggregation operator
+     * @return the schema of partial aggregates: the group by field (if any)
+     * followed by a LONG sum and an INT count for AVG, SUM_COUNT and SC_AVG, a
+     * LONG sum for SUM and one INT field otherwise.
+     * @see PartialAggregator
+     */
+    static TupleDesc partialTupleDesc(Type gbfieldtype, Op what) {
+        return partialTupleDesc(gbfieldtype, Type.INT_TYPE, what);
+    }
+
+    /**
+     * @param valueType the type of the aggregate field (see {@link #valueType})
+     * @return the schema of partial aggregates over values of the given type: the
+     * group by field (if any) followed by the sum (see {@link #partialSumType}) and
+     * an INT count for AVG, SUM_COUNT and SC_AVG, the sum for SUM, an INT for COUNT
+     * and one field of type valueType otherwise.
+     */
+    static TupleDesc partialTupleDesc(Type gbfieldtype, Type valueType, Op what) {
+        if (what == Op.AVG || what == Op.SUM_COUNT || what == Op.SC_AVG) {
+            return tupleDesc(gbfieldtype, partialSumType(valueType), Type.INT_TYPE);
+        }
+        if (what == Op.SUM) {
+            return tupleDesc(gbfieldtype, partialSumType(valueType));
+        }
+        return tupleDesc(gbfieldtype, what == Op.COUNT ? Type.INT_TYPE : valueType);
+    }
+
+    private static TupleDesc tupleDesc(Type gbfieldtype, Type... valueTypes) {
+        ArrayList<Type> types = new ArrayList<Type>();
+        if (gbfieldtype != null) {
+            types.add(gbfieldtype);
+        }
+        for (Type t : valueTypes) {
+            types.add(t);
         }
+        return new TupleDesc(types.toArray(new Type[types.size()]));
     }
 
 }
@@ -29,6 +29,7 @@ public class Join extends Operator {
     private boolean opened = false;
     private boolean alreadyHasNexted = false;
     private JoinPredicate jp;
+    private final PredicateCompiler.JoinTest test;
     private DbIterator child1;
     private DbIterator child2;
     private Tuple curTuple;
@@ -47,6 +48,7 @@ public class Join extends Operator {
         TupleDesc td1 = child1.getTupleDesc();
         this.child2 = child2;
         TupleDesc td2 = child2.getTupleDesc();
+        this.test = PredicateCompiler.compile(p, td1, td2);
         this.setTupleDesc(TupleDesc.merge(td1, td2));
         this.child1Tuple = null;
     }
@@ -107,7 +109,7 @@ public class Join extends Operator {
                 while (child2.hasNext()) {
                     //System.out.println("Child2.hasNext()");
                     Tuple child2Tuple = child2.next();
-                    if (jp.filter(child1Tuple, child2Tuple)) {
+                    if (test.test(child1Tuple, child2Tuple)) {
                         curTuple = concatTuples(child1Tuple, child2Tuple);
                         alreadyHasNexted = true;
                         return true;
@@ -154,17 +156,7 @@ public class Join extends Operator {
     }
 
     public Tuple concatTuples(Tuple t1, Tuple t2) throws TransactionAbortedException{
-        TupleDesc td1 = t1.getTupleDesc();
-        TupleDesc td2 = t2.getTupleDesc();
-        TupleDesc td = TupleDesc.merge(td1, td2);
-        Tuple newTuple = new Tuple(td);
-        for (int i = 0; i < td1.numFields(); i++) {
-            newTuple.setField(i, t1.getField(i));
-        }
-        for (int i = 0; i < td2.numFields(); i++) {
-            newTuple.setField(i, t2.getField(i));
-        }
-        return newTuple;
+        return JoinHashTable.concat(getTupleDesc(), t1, t2);
     }
 
     @Override
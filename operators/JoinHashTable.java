@@ -0,0 +1,160 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+
+/**
+ * The build side of a hash equi-join.  Each distinct join key is mapped to a
+ * group number with a {@link GroupTable} (an open-addressing int map for INT_TYPE
+ * keys), and the tuples of a group are chained through primitive int arrays, so
+ * building and probing do not allocate per tuple.
+ * <p>
+ * Once built the table is only read, so several probes (e.g., one per partition of
+ * a parallel scan) can share it; {@link #buildOnce} lets whichever probe is opened
+ * first build it.
+ * <p>
+ * A NULL join key matches nothing, so build tuples with a NULL key are not added
+ * and probes with a NULL key find no rows.
+ */
+final class JoinHashTable {
+
+    /**
+     * Marks the end of a chain of matching rows.
+     */
+    static final int END = -1;
+
+    private final int field;
+    private final GroupTable groups;
+    private final ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    private int[] head = new int[64];   // group -> first row, or END
+    private int[] next = new int[64];   // row -> next row of the same group, or END
+    private boolean built;
+    private BloomFilter bloomFilter;
+
+    /**
+     * @param field the join field of the build tuples
+     * @param type  the type of the join field
+     */
+    JoinHashTable(int field, Type type) {
+        this.field = field;
+        this.groups = new GroupTable(field, type);
+        Arrays.fill(head, END);
+    }
+
+    void add(Tuple t) {
+        if (t.isNull(field)) {
+            return;
+        }
+        int row = tuples.size();
+        int group = groups.groupOf(t, field);
+        if (group == head.length) {
+            head = Arrays.copyOf(head, head.length * 2);
+            Arrays.fill(head, group, head.length, END);
+        }
+        if (row == next.length) {
+            next = Arrays.copyOf(next, row * 2);
+        }
+        next[row] = head[group];
+        head[group] = row;
+        tuples.add(t);
+    }
+
+    /**
+     * Adds all tuples of child unless the table has already been built.
+     */
+    synchronized void buildOnce(DbIterator child) throws DbException, TransactionAbortedException {
+        if (built) {
+            return;
+        }
+        child.open();
+        try {
+            while (child.hasNext()) {
+                add(child.next());
+            }
+        } finally {
+            child.close();
+        }
+        built = true;
+    }
+
+    /**
+     * @return a Bloom filter over the distinct keys in the table
+     */
+    synchronized BloomFilter bloomFilter() {
+        if (bloomFilter == null) {
+            bloomFilter = new BloomFilter(groups.size());
+            for (int g = 0; g < groups.size(); g++) {
+                bloomFilter.add(groups.keyOf(g));
+            }
+        }
+        return bloomFilter;
+    }
+
+    /**
+     * @return the number of distinct keys in the table
+     */
+    int numKeys() {
+        return groups.size();
+    }
+
+    /**
+     * @return the first row whose join field equals the given field of probe, or
+     * END if there is none
+     */
+    int first(Tuple probe, int probeField) {
+        if (probe.isNull(probeField)) {
+            return END;
+        }
+        int group = groups.find(probe, probeField);
+        return group < 0 ? END : head[group];
+    }
+
+    /**
+     * @return the next row with the same join key as row, or END
+     */
+    int next(int row) {
+        return next[row];
+    }
+
+    Tuple get(int row) {
+        return tuples.get(row);
+    }
+
+    /**
+     * @return a tuple with schema td holding the fields of t1 followed by those of t2
+     */
+    static Tuple concat(TupleDesc td, Tuple t1, Tuple t2) {
+        Tuple t = new Tuple(td);
+        int n1 = t1.getTupleDesc().numFields();
+        for (int i = 0; i < n1; i++) {
+            t.setField(i, t1.getField(i));
+        }
+        int n2 = t2.getTupleDesc().numFields();
+        for (int i = 0; i < n2; i++) {
+            t.setField(n1 + i, t2.getField(i));
+        }
+        return t;
+    }
+}
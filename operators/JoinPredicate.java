@@ -47,10 +47,17 @@ public class JoinPredicate implements Serializable {
     /**
      * Apply the predicate to the two specified tuples. The comparison can be
      * made through Field's compare method.
+     * <p>
+     * As with {@link Predicate#filter}, a comparison involving a NULL field is
+     * UNKNOWN, so tuples whose join field is NULL join with nothing.
      *
-     * @return true if the tuples satisfy the predicate.
+     * @return true if the tuples satisfy the predicate; false if they do not or
+     * the result is UNKNOWN.
      */
     public boolean filter(Tuple t1, Tuple t2) {
+        if (t1.isNull(getField1()) || t2.isNull(getField2())) {
+            return false;
+        }
         return t1.getField(getField1()).compare(op, t2.getField(getField2()));
     }
 
@@ -59,7 +66,7 @@ public class JoinPredicate implements Serializable {
     }
 
     public int getField2() {
-        return this.field1;
+        return this.field2;
     }
 
     public Op getOperator() {
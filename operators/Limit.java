@@ -0,0 +1,109 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Limit is an operator that implements a relational LIMIT: it returns at most
+ * the first k tuples produced by its child.  Once k tuples have been returned,
+ * the child is not asked for any more tuples.
+ * <p>
+ * For ORDER BY ... LIMIT k, use {@link TopN}, which avoids sorting the full input.
+ */
+public class Limit extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private DbIterator child;
+    private final int limit;
+    private int count;
+    private boolean open;
+
+    /**
+     * Creates a new Limit node over the tuples from the iterator.
+     *
+     * @param limit the maximum number of tuples to return.  Must be non-negative.
+     * @param child the tuples to limit.
+     */
+    public Limit(int limit, DbIterator child) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must be non-negative");
+        }
+        this.limit = limit;
+        this.child = child;
+        open = false;
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        count = 0;
+        open = true;
+    }
+
+    public void close() {
+        child.close();
+        open = false;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        count = 0;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        // check the count first so that we never pull more than limit tuples from the child
+        return open && count < limit && child.hasNext();
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        count++;
+        return child.next();
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (children.length != 1) {
+            throw new DbException("Expected only one child!");
+        }
+        this.child = children[0];
+    }
+
+}
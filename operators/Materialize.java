@@ -0,0 +1,263 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.dbfile.DbFile;
+import colgatedb.dbfile.HeapFile;
+import colgatedb.page.SlottedPage;
+import colgatedb.page.SlottedPageFormatter;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.CompactTuple;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.RecordId;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Materialize implements late materialization: the plan below it reads only the
+ * narrow columns it needs (e.g. join keys and filtered fields) plus the position of
+ * each row, and Materialize fetches the remaining, typically wide, columns of a
+ * table only for the rows that reach it.
+ * <p>
+ * The position of a row is either an INT field holding its row position, as
+ * returned by a scan with the {@link SeqScan#POSITION} column, or, if no position
+ * field is given, the RecordId of the child's tuples (which must then come from the
+ * table directly, e.g. a SeqScan with a projection).  Positions are gathered a batch
+ * at a time and sorted so that each page is pinned once per batch, in page order;
+ * the requested columns are returned as {@link CompactTuple} views of the page's
+ * bytes.  Output tuples
+ * are the child tuple followed by the fetched columns and are returned in the
+ * child's order.  Rows deleted since the child read them are skipped.
+ */
+public class Materialize extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of child tuples whose columns are fetched together.
+     */
+    public static final int BATCH_SIZE = 4096;
+
+    private final TransactionId tid;
+    private DbIterator child;
+    private final int positionField;
+    private final HeapFile hf;
+    private final int[] columns;
+    private final int[] fetchedOffsets;    // the offsets of the fetched columns in a row
+    private final int[] fetchedNullBits;   // the positions of their NULL flags in a row
+    private final int slotsPerPage;
+    private final TupleDesc fetchedTd;     // the schema of the fetched columns alone
+
+    private final Tuple[] batch = new Tuple[BATCH_SIZE];
+    private final Tuple[] fetched = new Tuple[BATCH_SIZE];
+    private final int[] pageNos = new int[BATCH_SIZE];
+    private final int[] slots = new int[BATCH_SIZE];
+    private final Integer[] order = new Integer[BATCH_SIZE];
+    private int size;
+    private int pos;
+    private boolean open;
+
+    /**
+     * @param tid           the transaction the fetches are a part of
+     * @param child         the operator whose tuples identify the rows to fetch
+     * @param positionField the INT field of child holding the row position, or -1 to
+     *                      use the RecordId of the child's tuples
+     * @param tableid       the table to fetch from, which must be a HeapFile
+     * @param tableAlias    the alias of the table; fetched fields are named
+     *                      tableAlias.fieldName
+     * @param columns       the fields of the table to fetch, in order
+     */
+    public Materialize(TransactionId tid, DbIterator child, int positionField, int tableid,
+                       String tableAlias, List<Integer> columns) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (!(file instanceof HeapFile)) {
+            throw new DbException("late materialization requires a HeapFile");
+        }
+        if (positionField >= 0 && child.getTupleDesc().getFieldType(positionField) != Type.INT_TYPE) {
+            throw new DbException("position field must be of type INT_TYPE");
+        }
+        this.tid = tid;
+        this.child = child;
+        this.positionField = positionField;
+        this.hf = (HeapFile) file;
+        this.slotsPerPage = hf.slotsPerPage();
+        TupleDesc fileTd = hf.getTupleDesc();
+        int[] fieldOffsets = SlottedPageFormatter.fieldOffsets(fileTd);
+        int[] nullBits = SlottedPageFormatter.nullBits(fileTd);
+        this.columns = new int[columns.size()];
+        this.fetchedOffsets = new int[this.columns.length];
+        this.fetchedNullBits = new int[this.columns.length];
+        Type[] types = new Type[this.columns.length];
+        String[] names = new String[this.columns.length];
+        for (int i = 0; i < this.columns.length; i++) {
+            int c = columns.get(i);
+            this.columns[i] = c;
+            this.fetchedOffsets[i] = fieldOffsets[c];
+            this.fetchedNullBits[i] = nullBits[c];
+            types[i] = fileTd.getFieldType(c);
+            names[i] = tableAlias + "." + fileTd.getFieldName(c);
+        }
+        this.fetchedTd = new TupleDesc(types);
+        setTupleDesc(TupleDesc.merge(child.getTupleDesc(), new TupleDesc(types, names)));
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        size = 0;
+        pos = 0;
+        open = true;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (!open) {
+            return false;
+        }
+        while (true) {
+            while (pos < size) {
+                if (fetched[pos] != null) {
+                    return true;
+                }
+                pos++;
+            }
+            if (!fetchBatch()) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        Tuple t = batch[pos];
+        Tuple f = fetched[pos];
+        pos++;
+        Tuple out = new Tuple(getTupleDesc());
+        int n = t.getTupleDesc().numFields();
+        for (int i = 0; i < n; i++) {
+            out.setField(i, t.getField(i));
+        }
+        for (int i = 0; i < columns.length; i++) {
+            out.setField(n + i, f.getField(i));
+        }
+        out.setRecordId(t.getRecordId());
+        return out;
+    }
+
+    /**
+     * Reads the next batch of child tuples and fetches their columns, visiting the
+     * pages they are on in page order.
+     *
+     * @return false if the child has no more tuples
+     */
+    private boolean fetchBatch() throws DbException, TransactionAbortedException {
+        size = 0;
+        pos = 0;
+        while (size < BATCH_SIZE && child.hasNext()) {
+            Tuple t = child.next();
+            batch[size] = t;
+            if (positionField >= 0) {
+                int position = ((IntField) t.getField(positionField)).getValue();
+                pageNos[size] = position / slotsPerPage;
+                slots[size] = position % slotsPerPage;
+            } else {
+                RecordId rid = t.getRecordId();
+                if (rid == null || rid.getPageId().getTableId() != hf.getId()) {
+                    throw new DbException("child tuple does not identify a row of the table");
+                }
+                pageNos[size] = rid.getPageId().pageNumber();
+                slots[size] = rid.tupleno();
+            }
+            order[size] = size;
+            size++;
+        }
+        if (size == 0) {
+            return false;
+        }
+        Arrays.sort(order, 0, size, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                if (pageNos[a] != pageNos[b]) {
+                    return Integer.compare(pageNos[a], pageNos[b]);
+                }
+                return Integer.compare(slots[a], slots[b]);
+            }
+        });
+        int i = 0;
+        while (i < size) {
+            int pageNo = pageNos[order[i]];
+            SlottedPage page = hf.pinPage(tid, pageNo);
+            try {
+                byte[] data = page.getPageData();
+                for (; i < size && pageNos[order[i]] == pageNo; i++) {
+                    int j = order[i];
+                    if (!page.isSlotUsed(slots[j])) {
+                        fetched[j] = null;
+                        continue;
+                    }
+                    int offset = page.tupleOffset(slots[j]);
+                    fetched[j] = new CompactTuple(fetchedTd, data, offset, fetchedOffsets,
+                            fetchedNullBits);
+                }
+            } finally {
+                hf.unpinPage(tid, page);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        size = 0;
+        pos = 0;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+        open = false;
+        Arrays.fill(batch, null);
+        Arrays.fill(fetched, null);
+        size = 0;
+        pos = 0;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (children.length != 1) {
+            throw new DbException("Expected only one child!");
+        }
+        this.child = children[0];
+    }
+}
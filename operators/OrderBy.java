@@ -2,8 +2,6 @@ package colgatedb.operators;
 
 import colgatedb.DbException;
 import colgatedb.transactions.TransactionAbortedException;
-import colgatedb.tuple.Field;
-import colgatedb.tuple.Op;
 import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
 
@@ -113,25 +111,3 @@ public class OrderBy extends Operator {
     }
 
 }
-
-class TupleComparator implements Comparator<Tuple> {
-    int field;
-    boolean asc;
-
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
-    }
-
-    public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
-    }
-
-}
@@ -0,0 +1,115 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Computes the same result as {@link Aggregate} over the union of several inputs
+ * (typically the partitions returned by {@link SeqScan#partition}, possibly with
+ * Filters or Projects on top), in two phases: a {@link PartialAggregate} over each
+ * input runs in parallel below a gather {@link Exchange}, and this operator merges
+ * the partial aggregates of each group.
+ */
+public class ParallelAggregate extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private DbIterator child;
+    private final Type gtype;
+    private final Type vtype;
+    private final Aggregator.Op aop;
+    private DbIterator aggIt;
+
+    /**
+     * @param inputs The DbIterators feeding us tuples; they must have the same schema.
+     * @param afield The column over which we are computing an aggregate.
+     * @param gfield The column over which we are grouping the result, or -1 if
+     *               there is no grouping
+     * @param aop    The aggregation operator to use
+     */
+    public ParallelAggregate(DbIterator[] inputs, int afield, int gfield, Aggregator.Op aop) {
+        TupleDesc inputTd = inputs[0].getTupleDesc();
+        DbIterator[] partials = new DbIterator[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            partials[i] = new PartialAggregate(inputs[i], afield, gfield, aop);
+        }
+        this.child = new Exchange(partials);
+        this.gtype = gfield == Aggregator.NO_GROUPING ? null : inputTd.getFieldType(gfield);
+        this.vtype = IntegerAggregator.valueType(inputTd.getFieldType(afield));
+        this.aop = aop;
+        setTupleDesc(Aggregate.makeTupleDesc(inputTd, afield, gfield, aop));
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        IntegerAggregator merger = gtype == null
+                ? new IntegerAggregator(Aggregator.NO_GROUPING, null, 0, vtype, aop)
+                : new IntegerAggregator(0, gtype, 1, vtype, aop);
+        while (child.hasNext()) {
+            merger.mergePartialIntoGroup(child.next());
+        }
+        aggIt = merger.iterator();
+        aggIt.open();
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        return aggIt != null && aggIt.hasNext();
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        return aggIt.next();
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        aggIt.rewind();
+    }
+
+    @Override
+    public void close() {
+        child.close();
+        if (aggIt != null) {
+            aggIt.close();
+        }
+        aggIt = null;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (children.length != 1) {
+            throw new DbException("Expected only one child!");
+        }
+        this.child = children[0];
+    }
+}
@@ -0,0 +1,119 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.Type;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * The first phase of a parallel aggregate: computes the partial aggregate of each
+ * group over its child's tuples, e.g., the sum and count for AVG.  The partial
+ * aggregates of several PartialAggregates are combined by {@link ParallelAggregate}.
+ * <p>
+ * The output has the group-by value (if there is grouping) followed by one field,
+ * or two (sum and count) for AVG, SUM_COUNT and SC_AVG.  Sums of INT values are
+ * LONGs, so that a partition's sum may exceed an INT as long as the merged result
+ * does not (see {@link IntegerAggregator#partialTupleDesc}).
+ */
+public class PartialAggregate extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private DbIterator child;
+    private final int afield;
+    private final int gfield;
+    private final Aggregator.Op aop;
+    private DbIterator aggIt;
+
+    /**
+     * @param child  The DbIterator that is feeding us tuples.
+     * @param afield The column over which we are computing an aggregate.
+     * @param gfield The column over which we are grouping the result, or -1 if
+     *               there is no grouping
+     * @param aop    The aggregation operator to use
+     */
+    public PartialAggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop) {
+        this.child = child;
+        this.afield = afield;
+        this.gfield = gfield;
+        this.aop = aop;
+        Type gtype = gfield == Aggregator.NO_GROUPING ? null : child.getTupleDesc().getFieldType(gfield);
+        Type vtype = IntegerAggregator.valueType(child.getTupleDesc().getFieldType(afield));
+        setTupleDesc(IntegerAggregator.partialTupleDesc(gtype, vtype, aop));
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        PartialAggregator aggregator;
+        Type gtype = gfield == Aggregator.NO_GROUPING ? null : child.getTupleDesc().getFieldType(gfield);
+        Type atype = child.getTupleDesc().getFieldType(afield);
+        if (atype == Type.STRING_TYPE) {
+            aggregator = new StringAggregator(gfield, gtype, afield, aop);
+        } else {
+            aggregator = new IntegerAggregator(gfield, gtype, afield, atype, aop);
+        }
+        while (child.hasNext()) {
+            aggregator.mergeTupleIntoGroup(child.next());
+        }
+        aggIt = aggregator.partialIterator();
+        aggIt.open();
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        return aggIt != null && aggIt.hasNext();
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        return aggIt.next();
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        aggIt.rewind();
+    }
+
+    @Override
+    public void close() {
+        child.close();
+        if (aggIt != null) {
+            aggIt.close();
+        }
+        aggIt = null;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (children.length != 1) {
+            throw new DbException("Expected only one child!");
+        }
+        this.child = children[0];
+    }
+}
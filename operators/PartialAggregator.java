@@ -0,0 +1,52 @@
+package colgatedb.operators;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * An in-memory Aggregator whose state can be emitted as partial aggregates and
+ * then discarded.  Partial aggregates of the same group can later be combined
+ * with {@link IntegerAggregator#mergePartialIntoGroup}.
+ * <p>
+ * A partial tuple holds the group by value (if any) followed by:
+ * <ul>
+ *     <li>the running min, max or sum for MIN, MAX and SUM (NULL if the group has
+ *     no values that are not NULL),</li>
+ *     <li>the running count for COUNT,</li>
+ *     <li>the running sum and count (i.e., a SUM_COUNT tuple) for AVG,
+ *     SUM_COUNT and SC_AVG.</li>
+ * </ul>
+ * Sums of INT values are LONGs, as the sum over part of a group may not fit in an
+ * INT even when the final result does.
+ *
+ * @see IntegerAggregator#partialTupleDesc
+ */
+interface PartialAggregator extends Aggregator {
+
+    /**
+     * @return the number of groups currently held in memory
+     */
+    int numGroups();
+
+    /**
+     * @return a DbIterator over one partial tuple per group
+     */
+    TupleIterator partialIterator();
+
+    /**
+     * Discards all groups.
+     */
+    void clear();
+}
@@ -0,0 +1,296 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.dbfile.DbFile;
+import colgatedb.dbfile.HeapFile;
+import colgatedb.page.PageId;
+import colgatedb.page.SlottedPage;
+import colgatedb.page.SlottedPageFormatter;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.CompactTuple;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A push-based pipeline: a source followed by a chain of {@link TupleConsumer}s
+ * that ends in a pipeline breaker such as an {@link AggregateSink} or
+ * {@link HashBuildSink}.  Running the pipeline drives the source's loop, which
+ * pushes each tuple through all the stages; no tuple is buffered between stages
+ * and each stage is a small final class the JIT can inline into the loop.
+ * <p>
+ * For example, the join of R and S on R.a = S.b followed by a grouped count could
+ * be written as two pipelines:
+ * <pre>
+ *   HashBuildSink s = Pipeline.scan(tid, sId).filter(p).buildHashTable(b);
+ *   AggregateSink agg = Pipeline.scan(tid, rId).probe(a, s).aggregate(0, 1, Op.COUNT);
+ *   DbIterator result = agg.iterator();
+ * </pre>
+ * Existing operators work with pipelines through adapters: any DbIterator can be
+ * a source ({@link #from}), and {@link #iterator} runs a pipeline for a pulling
+ * parent.
+ */
+public final class Pipeline {
+
+    /**
+     * Wraps a consumer in a pipeline stage.
+     */
+    private interface Stage {
+        TupleConsumer wrap(TupleConsumer downstream);
+    }
+
+    /**
+     * Pushes tuples into the first stage.
+     */
+    private interface Source {
+        void run(TupleConsumer consumer) throws DbException, TransactionAbortedException;
+    }
+
+    private final Source source;
+    private final List<Stage> stages;
+    private final TupleDesc td;
+
+    private Pipeline(Source source, List<Stage> stages, TupleDesc td) {
+        this.source = source;
+        this.stages = stages;
+        this.td = td;
+    }
+
+    /**
+     * @return a pipeline whose source reads the tuples of the specified table (a
+     * HeapFile) straight off its pages.  The source pushes a single
+     * {@link CompactTuple} repositioned over each row, whose RecordId is only
+     * created if a stage asks for it, so scanning allocates nothing per row.  Each
+     * page is latched only while its rows are found, not while they are pushed.
+     */
+    public static Pipeline scan(final TransactionId tid, int tableid) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (!(file instanceof HeapFile)) {
+            throw new DbException("pipeline scans require a HeapFile");
+        }
+        final HeapFile hf = (HeapFile) file;
+        final TupleDesc td = hf.getTupleDesc();
+        return new Pipeline(consumer -> {
+            CompactTuple t = new CompactTuple(td, null, 0, SlottedPageFormatter.fieldOffsets(td),
+                    SlottedPageFormatter.nullBits(td));
+            int[] slots = new int[0];
+            int[] offsets = new int[0];
+            for (int pageNo = 0; pageNo < hf.numPages(); pageNo++) {
+                // find the rows under the latch, but push them after releasing it: the
+                // page's bytes never change once read (see SlottedPage#getPageData)
+                SlottedPage page = hf.pinPage(tid, pageNo);
+                PageId pid = page.getId();
+                byte[] data;
+                int numRows = 0;
+                try {
+                    data = page.getPageData();
+                    int numSlots = page.getNumSlots();
+                    if (slots.length < numSlots) {
+                        slots = new int[numSlots];
+                        offsets = new int[numSlots];
+                    }
+                    for (int slot = 0; slot < numSlots; slot++) {
+                        if (page.isSlotUsed(slot)) {
+                            slots[numRows] = slot;
+                            offsets[numRows++] = page.tupleOffset(slot);
+                        }
+                    }
+                } finally {
+                    hf.unpinPage(tid, page);
+                }
+                for (int i = 0; i < numRows; i++) {
+                    t.reset(data, offsets[i], pid, slots[i]);
+                    consumer.consume(t);
+                }
+            }
+        }, new ArrayList<Stage>(), td);
+    }
+
+    /**
+     * @return a pipeline whose source is the tuples of the (pull-based) child,
+     * e.g. an existing operator or the {@link AggregateSink#iterator} of an earlier
+     * pipeline
+     */
+    public static Pipeline from(final DbIterator child) {
+        return new Pipeline(consumer -> {
+            child.open();
+            try {
+                while (child.hasNext()) {
+                    consumer.consume(child.next());
+                }
+            } finally {
+                child.close();
+            }
+        }, new ArrayList<Stage>(), child.getTupleDesc());
+    }
+
+    private Pipeline then(Stage stage, TupleDesc newTd) {
+        List<Stage> newStages = new ArrayList<Stage>(stages);
+        newStages.add(stage);
+        return new Pipeline(source, newStages, newTd);
+    }
+
+    /**
+     * @return the schema of the tuples leaving the last stage
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return this pipeline followed by a {@link PushFilter}
+     */
+    public Pipeline filter(final Predicate p) {
+        return then(downstream -> new PushFilter(p, downstream), td);
+    }
+
+    /**
+     * @return this pipeline followed by a {@link PushProject} of the given fields
+     */
+    public Pipeline project(List<Integer> fieldList) {
+        final int[] ids = new int[fieldList.size()];
+        Type[] types = new Type[ids.length];
+        String[] names = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = fieldList.get(i);
+            types[i] = td.getFieldType(ids[i]);
+            names[i] = td.getFieldName(ids[i]);
+        }
+        final TupleDesc newTd = new TupleDesc(types, names);
+        return then(downstream -> new PushProject(ids, newTd, downstream), newTd);
+    }
+
+    /**
+     * @param probeField the join field of this pipeline's tuples
+     * @param build      a hash table built by an earlier pipeline
+     * @return this pipeline followed by a {@link PushHashProbe} into build
+     */
+    public Pipeline probe(final int probeField, final HashBuildSink build) {
+        final TupleDesc newTd = TupleDesc.merge(td, build.getTupleDesc());
+        return then(downstream -> new PushHashProbe(build, probeField, newTd, downstream), newTd);
+    }
+
+    /**
+     * Runs the pipeline, pushing every tuple through the stages into sink.
+     */
+    public void into(TupleConsumer sink) throws DbException, TransactionAbortedException {
+        TupleConsumer head = sink;
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            head = stages.get(i).wrap(head);
+        }
+        source.run(head);
+        head.finish();
+    }
+
+    /**
+     * Runs the pipeline into an {@link AggregateSink}.
+     *
+     * @return the finished sink
+     */
+    public AggregateSink aggregate(int afield, int gfield, Aggregator.Op aop)
+            throws DbException, TransactionAbortedException {
+        AggregateSink sink = new AggregateSink(td, afield, gfield, aop);
+        into(sink);
+        return sink;
+    }
+
+    /**
+     * Runs the pipeline into a {@link HashBuildSink} on the given join field.
+     *
+     * @return the finished sink
+     */
+    public HashBuildSink buildHashTable(int field) throws DbException, TransactionAbortedException {
+        HashBuildSink sink = new HashBuildSink(td, field);
+        into(sink);
+        return sink;
+    }
+
+    /**
+     * @return an iterator that, when opened, runs the pipeline and returns the
+     * tuples leaving its last stage
+     */
+    public DbIterator iterator() {
+        return new PipelineIterator();
+    }
+
+    /**
+     * Adapter that lets a pulling parent consume a pipeline; the pipeline's output
+     * is collected when the iterator is opened.
+     */
+    private class PipelineIterator extends Operator {
+
+        private static final long serialVersionUID = 1L;
+        private ArrayList<Tuple> tuples;
+        private TupleIterator it;
+
+        PipelineIterator() {
+            setTupleDesc(td);
+        }
+
+        @Override
+        public void open() throws DbException, TransactionAbortedException {
+            tuples = new ArrayList<Tuple>();
+            into(new TupleConsumer() {
+                public void consume(Tuple t) {
+                    tuples.add(t instanceof CompactTuple ? ((CompactTuple) t).copy() : t);
+                }
+
+                public void finish() {
+                }
+            });
+            it = new TupleIterator(td, tuples);
+            it.open();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return it != null && it.hasNext();
+        }
+
+        @Override
+        public Tuple next() {
+            return it.next();
+        }
+
+        @Override
+        public void rewind() {
+            it.rewind();
+        }
+
+        @Override
+        public void close() {
+            it = null;
+            tuples = null;
+        }
+
+        @Override
+        public DbIterator[] getChildren() {
+            return new DbIterator[0];
+        }
+
+        @Override
+        public void setChildren(DbIterator[] children) {
+            throw new DbException("a pipeline has no children");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.dbfile.HeapFile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Rewrites a plan so that Filters and Projects directly above a {@link SeqScan} are
+ * evaluated inside the scan, on the bytes of each page (see
+ * {@link SeqScan#SeqScan(colgatedb.transactions.TransactionId, int, String, int, int, List, List)}).
+ * Chains such as Project(Filter(Filter(SeqScan))) collapse into a single scan.
+ * Scans of files other than HeapFiles are left alone.
+ */
+public final class PlanRewriter {
+
+    private PlanRewriter() {
+    }
+
+    /**
+     * Rewrites plan bottom up, replacing child operators in place.
+     *
+     * @return the root of the rewritten plan, which is plan unless plan itself was
+     * pushed into a scan
+     */
+    public static DbIterator pushDown(DbIterator plan) {
+        if (!(plan instanceof Operator)) {
+            return plan;
+        }
+        Operator op = (Operator) plan;
+        DbIterator[] children = op.getChildren();
+        boolean changed = false;
+        for (int i = 0; i < children.length; i++) {
+            DbIterator child = pushDown(children[i]);
+            changed |= child != children[i];
+            children[i] = child;
+        }
+        if (changed) {
+            op.setChildren(children);
+        }
+        if (children.length != 1 || !canPushInto(children[0])) {
+            return op;
+        }
+        SeqScan scan = (SeqScan) children[0];
+        if (op instanceof Filter) {
+            Predicate p = ((Filter) op).getPredicate();
+            if (scan.tableField(p.getField()) == SeqScan.POSITION) {
+                return op;
+            }
+            List<Predicate> predicates = new ArrayList<Predicate>(scan.pushedPredicates);
+            predicates.add(new Predicate(scan.tableField(p.getField()), p.getOp(), p.getOperand()));
+            return new SeqScan(scan.tid, scan.tableid, scan.tableAlias, scan.startPage, scan.endPage,
+                    predicates, columns(scan));
+        }
+        if (op instanceof Project) {
+            List<Integer> columns = new ArrayList<Integer>();
+            for (int field : ((Project) op).getFieldList()) {
+                columns.add(scan.tableField(field));
+            }
+            return new SeqScan(scan.tid, scan.tableid, scan.tableAlias, scan.startPage, scan.endPage,
+                    scan.pushedPredicates, columns);
+        }
+        return op;
+    }
+
+    private static boolean canPushInto(DbIterator child) {
+        return child instanceof SeqScan
+                && Database.getCatalog().getDatabaseFile(((SeqScan) child).tableid) instanceof HeapFile;
+    }
+
+    /**
+     * @return the scan's projection, or null if it returns every field
+     */
+    private static List<Integer> columns(SeqScan scan) {
+        if (scan.columns == null) {
+            return null;
+        }
+        List<Integer> columns = new ArrayList<Integer>();
+        for (int c : scan.columns) {
+            columns.add(c);
+        }
+        return columns;
+    }
+}
@@ -27,6 +27,7 @@ public class Predicate implements Serializable {
     private final int field;
     private final Op op;
     private final Field operand;
+    private transient PredicateCompiler.TupleTest test;
 
     /**
      * Constructor.
@@ -65,15 +66,23 @@ public class Predicate implements Serializable {
     /**
      * Compares the field number of t specified in the constructor to the
      * operand field specified in the constructor using the operator specific in
-     * the constructor. The comparison can be made through Field's compare
+     * the constructor. The comparison is made by a test compiled (once) by
+     * {@link PredicateCompiler}, which has the same result as Field's compare
      * method.
+     * <p>
+     * Following SQL's three-valued logic, comparing a NULL field with anything is
+     * neither true nor false but UNKNOWN, and only tuples for which the predicate is
+     * true pass the filter: if the field of t is NULL, the result is false for every
+     * operator, including NOT_EQUALS.
      *
      * @param t The tuple to compare against
-     * @return true if the comparison is true, false otherwise.
+     * @return true if the comparison is true, false if it is false or UNKNOWN.
      */
     public boolean filter(Tuple t) {
-        Field tField = t.getField(field);
-        return tField.compare(op, operand);
+        if (test == null) {
+            test = PredicateCompiler.compile(this);
+        }
+        return test.test(t);
     }
 
     /**
@@ -0,0 +1,424 @@
+package colgatedb.operators;
+
+import colgatedb.page.SlottedPageFormatter;
+import colgatedb.tuple.DateField;
+import colgatedb.tuple.DecimalField;
+import colgatedb.tuple.DoubleField;
+import colgatedb.tuple.Field;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.LongField;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.StringField;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+
+/**
+ * Turns {@link Predicate}s and {@link JoinPredicate}s into code specialized for
+ * their operator and field types.  {@link Field#compare} switches on the operator
+ * and casts its argument on every call; a compiled test instead picks a lambda for
+ * the operator once and, for INT_TYPE fields, compares primitive ints directly.
+ * <p>
+ * Three kinds of tests are produced:
+ * <ul>
+ * <li>{@link TupleTest}s evaluate a predicate on a Tuple;</li>
+ * <li>{@link JoinTest}s evaluate a join predicate on a pair of Tuples;</li>
+ * <li>{@link RawTest}s evaluate a predicate on a tuple still in its serialized
+ * form (e.g., in a page's data), reading the int or string bytes at the field's
+ * offset without creating any Field objects.</li>
+ * </ul>
+ * Conjunctions and disjunctions of predicates compile into a chain of tests that
+ * short-circuits like && and ||.
+ * <p>
+ * A comparison involving a NULL field is UNKNOWN under SQL's three-valued logic, and
+ * compiled tests return false for it.  Since there is no negation, this gives the
+ * same result as evaluating conjunctions and disjunctions in three-valued logic and
+ * keeping only the tuples for which they are TRUE.
+ */
+public final class PredicateCompiler {
+
+    private PredicateCompiler() {
+    }
+
+    /**
+     * A compiled predicate over a tuple.
+     */
+    public interface TupleTest {
+        boolean test(Tuple t);
+    }
+
+    /**
+     * A compiled join predicate over a pair of tuples.
+     */
+    public interface JoinTest {
+        boolean test(Tuple t1, Tuple t2);
+    }
+
+    /**
+     * A compiled predicate over a serialized tuple.
+     */
+    public interface RawTest {
+        /**
+         * @param data   bytes holding a tuple serialized in the page format, i.e. its
+         *               fields followed by its null bitmap (see {@link SlottedPageFormatter})
+         * @param offset the position of the tuple's first byte in data
+         */
+        boolean test(byte[] data, int offset);
+    }
+
+    /**
+     * @return a test equivalent to {@link Predicate#filter}
+     */
+    public static TupleTest compile(Predicate p) {
+        final int f = p.getField();
+        final TupleTest test = compileNotNull(p);
+        return t -> !t.isNull(f) && test.test(t);
+    }
+
+    /**
+     * @return a test equivalent to {@link Predicate#filter} for tuples whose field
+     * is not NULL
+     */
+    private static TupleTest compileNotNull(Predicate p) {
+        final int f = p.getField();
+        if (p.getOperand() instanceof IntField) {
+            final int c = ((IntField) p.getOperand()).getValue();
+            switch (p.getOp()) {
+                case EQUALS:
+                case LIKE:
+                    return t -> t.getInt(f) == c;
+                case NOT_EQUALS:
+                    return t -> t.getInt(f) != c;
+                case GREATER_THAN:
+                    return t -> t.getInt(f) > c;
+                case GREATER_THAN_OR_EQ:
+                    return t -> t.getInt(f) >= c;
+                case LESS_THAN:
+                    return t -> t.getInt(f) < c;
+                case LESS_THAN_OR_EQ:
+                    return t -> t.getInt(f) <= c;
+            }
+        } else if (isLong(p.getOperand())) {
+            final long c = longValue(p.getOperand());
+            switch (p.getOp()) {
+                case EQUALS:
+                case LIKE:
+                    return t -> t.getLong(f) == c;
+                case NOT_EQUALS:
+                    return t -> t.getLong(f) != c;
+                case GREATER_THAN:
+                    return t -> t.getLong(f) > c;
+                case GREATER_THAN_OR_EQ:
+                    return t -> t.getLong(f) >= c;
+                case LESS_THAN:
+                    return t -> t.getLong(f) < c;
+                case LESS_THAN_OR_EQ:
+                    return t -> t.getLong(f) <= c;
+            }
+        } else if (p.getOperand() instanceof DoubleField) {
+            final double c = ((DoubleField) p.getOperand()).getValue();
+            switch (p.getOp()) {
+                case EQUALS:
+                case LIKE:
+                    return t -> t.getDouble(f) == c;
+                case NOT_EQUALS:
+                    return t -> t.getDouble(f) != c;
+                case GREATER_THAN:
+                    return t -> t.getDouble(f) > c;
+                case GREATER_THAN_OR_EQ:
+                    return t -> t.getDouble(f) >= c;
+                case LESS_THAN:
+                    return t -> t.getDouble(f) < c;
+                case LESS_THAN_OR_EQ:
+                    return t -> t.getDouble(f) <= c;
+            }
+        } else if (p.getOperand() instanceof StringField) {
+            final StringField c = (StringField) p.getOperand();
+            switch (p.getOp()) {
+                case EQUALS:
+                    return t -> stringAt(t, f).equals(c);
+                case NOT_EQUALS:
+                    return t -> !stringAt(t, f).equals(c);
+                case GREATER_THAN:
+                    return t -> stringAt(t, f).compareTo(c) > 0;
+                case GREATER_THAN_OR_EQ:
+                    return t -> stringAt(t, f).compareTo(c) >= 0;
+                case LESS_THAN:
+                    return t -> stringAt(t, f).compareTo(c) < 0;
+                case LESS_THAN_OR_EQ:
+                    return t -> stringAt(t, f).compareTo(c) <= 0;
+                case LIKE:
+                    return t -> stringAt(t, f).contains(c);
+            }
+        }
+        final Op op = p.getOp();
+        final Field operand = p.getOperand();
+        return t -> t.getField(f).compare(op, operand);
+    }
+
+    /**
+     * @return a test that is true when all of the predicates are
+     */
+    public static TupleTest compileAnd(List<Predicate> ps) {
+        TupleTest test = compile(ps.get(0));
+        for (int i = 1; i < ps.size(); i++) {
+            test = and(test, compile(ps.get(i)));
+        }
+        return test;
+    }
+
+    /**
+     * @return a test that is true when any of the predicates is
+     */
+    public static TupleTest compileOr(List<Predicate> ps) {
+        TupleTest test = compile(ps.get(0));
+        for (int i = 1; i < ps.size(); i++) {
+            test = or(test, compile(ps.get(i)));
+        }
+        return test;
+    }
+
+    public static TupleTest and(final TupleTest a, final TupleTest b) {
+        return t -> a.test(t) && b.test(t);
+    }
+
+    public static TupleTest or(final TupleTest a, final TupleTest b) {
+        return t -> a.test(t) || b.test(t);
+    }
+
+    /**
+     * @param td1 the schema of the first (left) tuples
+     * @param td2 the schema of the second (right) tuples
+     * @return a test equivalent to {@link JoinPredicate#filter}
+     */
+    public static JoinTest compile(final JoinPredicate jp, TupleDesc td1, TupleDesc td2) {
+        final int f1 = jp.getField1();
+        final int f2 = jp.getField2();
+        final JoinTest test = compileNotNull(jp, td1, td2);
+        if (test == null) {
+            return jp::filter;
+        }
+        return (t1, t2) -> !t1.isNull(f1) && !t2.isNull(f2) && test.test(t1, t2);
+    }
+
+    /**
+     * @return a test equivalent to {@link JoinPredicate#filter} for tuples whose
+     * fields are not NULL, or null if there is no specialized test for the fields'
+     * types
+     */
+    private static JoinTest compileNotNull(final JoinPredicate jp, TupleDesc td1, TupleDesc td2) {
+        final int f1 = jp.getField1();
+        final int f2 = jp.getField2();
+        Type type1 = td1.getFieldType(f1);
+        Type type2 = td2.getFieldType(f2);
+        if (type1 == Type.INT_TYPE && type2 == Type.INT_TYPE) {
+            switch (jp.getOperator()) {
+                case EQUALS:
+                case LIKE:
+                    return (t1, t2) -> intAt(t1, f1) == intAt(t2, f2);
+                case NOT_EQUALS:
+                    return (t1, t2) -> intAt(t1, f1) != intAt(t2, f2);
+                case GREATER_THAN:
+                    return (t1, t2) -> intAt(t1, f1) > intAt(t2, f2);
+                case GREATER_THAN_OR_EQ:
+                    return (t1, t2) -> intAt(t1, f1) >= intAt(t2, f2);
+                case LESS_THAN:
+                    return (t1, t2) -> intAt(t1, f1) < intAt(t2, f2);
+                case LESS_THAN_OR_EQ:
+                    return (t1, t2) -> intAt(t1, f1) <= intAt(t2, f2);
+            }
+        }
+        if (type1 == Type.STRING_TYPE && type2 == Type.STRING_TYPE
+                && jp.getOperator() == Op.EQUALS) {
+            return (t1, t2) -> stringAt(t1, f1).equals(stringAt(t2, f2));
+        }
+        return null;
+    }
+
+    private static int intAt(Tuple t, int f) {
+        return t.getInt(f);
+    }
+
+    private static StringField stringAt(Tuple t, int f) {
+        return (StringField) t.getField(f);
+    }
+
+    /**
+     * @return true if f is a LONG, DATE or DECIMAL field, whose value is a long
+     */
+    private static boolean isLong(Field f) {
+        return f instanceof LongField || f instanceof DateField || f instanceof DecimalField;
+    }
+
+    private static long longValue(Field f) {
+        if (f instanceof LongField) {
+            return ((LongField) f).getValue();
+        } else if (f instanceof DateField) {
+            return ((DateField) f).getValue();
+        }
+        return ((DecimalField) f).getUnscaledValue();
+    }
+
+    /**
+     * @param td the schema of the serialized tuples
+     * @return a test equivalent to {@link Predicate#filter} that reads the tuple's
+     * serialized bytes
+     */
+    public static RawTest compileRaw(Predicate p, TupleDesc td) {
+        final int bit = SlottedPageFormatter.nullBits(td)[p.getField()];
+        final int nullByte = bit >>> 3;
+        final int nullMask = 1 << (bit & 7);
+        final RawTest test = compileRawNotNull(p, td);
+        return (d, o) -> (d[o + nullByte] & nullMask) == 0 && test.test(d, o);
+    }
+
+    /**
+     * @return a test equivalent to {@link #compileRaw} for tuples whose field is not
+     * NULL
+     */
+    private static RawTest compileRawNotNull(Predicate p, TupleDesc td) {
+        int f = p.getField();
+        final int off = td.getFieldOffset(f);
+        final Type type = td.getFieldType(f);
+        if (type == Type.INT_TYPE) {
+            final int c = ((IntField) p.getOperand()).getValue();
+            switch (p.getOp()) {
+                case EQUALS:
+                case LIKE:
+                    return (d, o) -> readInt(d, o + off) == c;
+                case NOT_EQUALS:
+                    return (d, o) -> readInt(d, o + off) != c;
+                case GREATER_THAN:
+                    return (d, o) -> readInt(d, o + off) > c;
+                case GREATER_THAN_OR_EQ:
+                    return (d, o) -> readInt(d, o + off) >= c;
+                case LESS_THAN:
+                    return (d, o) -> readInt(d, o + off) < c;
+                case LESS_THAN_OR_EQ:
+                    return (d, o) -> readInt(d, o + off) <= c;
+            }
+        } else if (isLong(p.getOperand())) {
+            final long c = longValue(p.getOperand());
+            switch (p.getOp()) {
+                case EQUALS:
+                case LIKE:
+                    return (d, o) -> Type.readLong(d, o + off) == c;
+                case NOT_EQUALS:
+                    return (d, o) -> Type.readLong(d, o + off) != c;
+                case GREATER_THAN:
+                    return (d, o) -> Type.readLong(d, o + off) > c;
+                case GREATER_THAN_OR_EQ:
+                    return (d, o) -> Type.readLong(d, o + off) >= c;
+                case LESS_THAN:
+                    return (d, o) -> Type.readLong(d, o + off) < c;
+                case LESS_THAN_OR_EQ:
+                    return (d, o) -> Type.readLong(d, o + off) <= c;
+            }
+        } else if (type == Type.DOUBLE_TYPE) {
+            final double c = ((DoubleField) p.getOperand()).getValue();
+            switch (p.getOp()) {
+                case EQUALS:
+                case LIKE:
+                    return (d, o) -> readDouble(d, o + off) == c;
+                case NOT_EQUALS:
+                    return (d, o) -> readDouble(d, o + off) != c;
+                case GREATER_THAN:
+                    return (d, o) -> readDouble(d, o + off) > c;
+                case GREATER_THAN_OR_EQ:
+                    return (d, o) -> readDouble(d, o + off) >= c;
+                case LESS_THAN:
+                    return (d, o) -> readDouble(d, o + off) < c;
+                case LESS_THAN_OR_EQ:
+                    return (d, o) -> readDouble(d, o + off) <= c;
+            }
+        }
+        if (type != Type.STRING_TYPE) {
+            final Op op = p.getOp();
+            final Field operand = p.getOperand();
+            return (d, o) -> type.parse(d, o + off).compare(op, operand);
+        }
+        final byte[] c = ((StringField) p.getOperand()).getBytes();
+        switch (p.getOp()) {
+            case EQUALS:
+                return (d, o) -> compareBytes(d, o + off, c) == 0;
+            case NOT_EQUALS:
+                return (d, o) -> compareBytes(d, o + off, c) != 0;
+            case GREATER_THAN:
+                return (d, o) -> compareBytes(d, o + off, c) > 0;
+            case GREATER_THAN_OR_EQ:
+                return (d, o) -> compareBytes(d, o + off, c) >= 0;
+            case LESS_THAN:
+                return (d, o) -> compareBytes(d, o + off, c) < 0;
+            case LESS_THAN_OR_EQ:
+                return (d, o) -> compareBytes(d, o + off, c) <= 0;
+            default:
+                return (d, o) -> containsBytes(d, o + off, c);
+        }
+    }
+
+    public static RawTest and(final RawTest a, final RawTest b) {
+        return (d, o) -> a.test(d, o) && b.test(d, o);
+    }
+
+    public static RawTest or(final RawTest a, final RawTest b) {
+        return (d, o) -> a.test(d, o) || b.test(d, o);
+    }
+
+    /**
+     * Reads a big-endian int, as written by IntField.serialize.
+     */
+    static int readInt(byte[] d, int pos) {
+        return (d[pos] << 24) | ((d[pos + 1] & 0xff) << 16) | ((d[pos + 2] & 0xff) << 8) | (d[pos + 3] & 0xff);
+    }
+
+    /**
+     * Reads a double, as written by DoubleField.serialize.
+     */
+    static double readDouble(byte[] d, int pos) {
+        return Double.longBitsToDouble(Type.readLong(d, pos));
+    }
+
+    /**
+     * Compares the serialized string at pos (a length followed by the bytes) to c,
+     * with the same result as {@link StringField#compareTo}.
+     */
+    static int compareBytes(byte[] d, int pos, byte[] c) {
+        int len = readInt(d, pos);
+        return Arrays.compareUnsigned(d, pos + 4, pos + 4 + len, c, 0, c.length);
+    }
+
+    /**
+     * @return true if the serialized string at pos contains c
+     */
+    static boolean containsBytes(byte[] d, int pos, byte[] c) {
+        int end = pos + 4 + readInt(d, pos);
+        if (c.length == 0) {
+            return true;
+        }
+        for (int i = pos + 4; i + c.length <= end; i++) {
+            if (d[i] == c[0] && Arrays.mismatch(d, i, i + c.length, c, 0, c.length) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -2,11 +2,14 @@ package colgatedb.operators;
 
 import colgatedb.DbException;
 import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.CompactTuple;
 import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
 import colgatedb.tuple.Type;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -34,6 +37,7 @@ public class Project extends Operator {
     private DbIterator child;
     private TupleDesc td;
     private ArrayList<Integer> outFieldIds;
+    private final int[] outFields;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -59,6 +63,10 @@ public class Project extends Operator {
             fieldAr[i] = childtd.getFieldName(fieldList.get(i));
         }
         td = new TupleDesc(types, fieldAr);
+        outFields = new int[fieldAr.length];
+        for (int i = 0; i < outFields.length; i++) {
+            outFields[i] = fieldList.get(i);
+        }
         open = false;
     }
 
@@ -66,6 +74,13 @@ public class Project extends Operator {
         return td;
     }
 
+    /**
+     * @return the ids of the fields of the child's tupleDesc that are projected out
+     */
+    public List<Integer> getFieldList() {
+        return Collections.unmodifiableList(outFieldIds);
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
@@ -91,11 +106,17 @@ public class Project extends Operator {
             throw new NoSuchElementException("no more tuples!");
         }
         Tuple t = child.next();
-        Tuple newTuple = new Tuple(td);
-        newTuple.setRecordId(t.getRecordId());
-        for (int i = 0; i < td.numFields(); i++) {
-            newTuple.setField(i, t.getField(outFieldIds.get(i)));
+        Tuple newTuple;
+        if (t instanceof CompactTuple) {
+            // a view of the child's bytes; no field is decoded
+            newTuple = ((CompactTuple) t).project(outFields, td);
+        } else {
+            newTuple = new Tuple(td);
+            for (int i = 0; i < outFields.length; i++) {
+                newTuple.setField(i, t.getField(outFields[i]));
+            }
         }
+        newTuple.setRecordId(t.getRecordId());
         return newTuple;
     }
 
@@ -0,0 +1,48 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Push version of {@link Filter}: passes on the tuples that satisfy the predicate.
+ */
+public final class PushFilter implements TupleConsumer {
+
+    private final PredicateCompiler.TupleTest test;
+    private final TupleConsumer downstream;
+
+    /**
+     * @param p          The predicate to filter tuples with
+     * @param downstream The consumer of the tuples that pass
+     */
+    public PushFilter(Predicate p, TupleConsumer downstream) {
+        this.test = PredicateCompiler.compile(p);
+        this.downstream = downstream;
+    }
+
+    public void consume(Tuple t) throws DbException, TransactionAbortedException {
+        if (test.test(t)) {
+            downstream.consume(t);
+        }
+    }
+
+    public void finish() throws DbException, TransactionAbortedException {
+        downstream.finish();
+    }
+}
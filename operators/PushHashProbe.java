@@ -0,0 +1,57 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Push version of the probe side of {@link HashJoin}: each pushed tuple is looked
+ * up in a table built by a {@link HashBuildSink}, and the concatenation of the
+ * tuple with each match is passed on.
+ */
+public final class PushHashProbe implements TupleConsumer {
+
+    private final JoinHashTable table;
+    private final int probeField;
+    private final TupleDesc td;
+    private final TupleConsumer downstream;
+
+    /**
+     * @param build      the built hash table
+     * @param probeField the join field of the pushed tuples
+     * @param td         the schema of the joined tuples
+     * @param downstream the consumer of the joined tuples
+     */
+    public PushHashProbe(HashBuildSink build, int probeField, TupleDesc td, TupleConsumer downstream) {
+        this.table = build.table();
+        this.probeField = probeField;
+        this.td = td;
+        this.downstream = downstream;
+    }
+
+    public void consume(Tuple t) throws DbException, TransactionAbortedException {
+        for (int row = table.first(t, probeField); row != JoinHashTable.END; row = table.next(row)) {
+            downstream.consume(JoinHashTable.concat(td, t, table.get(row)));
+        }
+    }
+
+    public void finish() throws DbException, TransactionAbortedException {
+        downstream.finish();
+    }
+}
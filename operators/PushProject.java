@@ -0,0 +1,62 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.CompactTuple;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Push version of {@link Project}.
+ */
+public final class PushProject implements TupleConsumer {
+
+    private final int[] outFieldIds;
+    private final TupleDesc td;
+    private final TupleConsumer downstream;
+
+    /**
+     * @param outFieldIds the ids of the fields of the input to pass on
+     * @param td          the schema of the projected tuples
+     * @param downstream  the consumer of the projected tuples
+     */
+    public PushProject(int[] outFieldIds, TupleDesc td, TupleConsumer downstream) {
+        this.outFieldIds = outFieldIds.clone();
+        this.td = td;
+        this.downstream = downstream;
+    }
+
+    public void consume(Tuple t) throws DbException, TransactionAbortedException {
+        if (t instanceof CompactTuple) {
+            CompactTuple view = ((CompactTuple) t).project(outFieldIds, td);
+            view.setRecordId(t.getRecordId());
+            downstream.consume(view);
+            return;
+        }
+        Tuple newTuple = new Tuple(td);
+        newTuple.setRecordId(t.getRecordId());
+        for (int i = 0; i < outFieldIds.length; i++) {
+            newTuple.setField(i, t.getField(outFieldIds[i]));
+        }
+        downstream.consume(newTuple);
+    }
+
+    public void finish() throws DbException, TransactionAbortedException {
+        downstream.finish();
+    }
+}
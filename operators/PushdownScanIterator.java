@@ -0,0 +1,184 @@
+package colgatedb.operators;
+
+import colgatedb.dbfile.DbFileIterator;
+import colgatedb.dbfile.HeapFile;
+import colgatedb.page.SlottedPage;
+import colgatedb.page.SlottedPageFormatter;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.CompactTuple;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.RecordId;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Iterates over the tuples of a range of pages of a HeapFile that satisfy a list
+ * of predicates, returning only some of their fields.  The predicates are compiled
+ * into a {@link PredicateCompiler.RawTest} and evaluated on the page's bytes, and
+ * matching tuples are returned as {@link CompactTuple} views of the requested
+ * fields, so nothing is decoded until a parent asks for a field.  Each returned tuple
+ * carries the RecordId of the tuple it was read from, and the requested columns may
+ * include the row's position ({@link SeqScan#POSITION}).
+ */
+class PushdownScanIterator implements DbFileIterator {
+
+    private final TransactionId tid;
+    private final HeapFile hf;
+    private final int startPage;
+    private final int endPage;
+    private final PredicateCompiler.RawTest test;
+    private final int[] columns;
+    private final int[] fieldOffsets;
+    private final int[] nullBits;
+    private final int[] outOffsets;     // offsets of the returned fields, or null if one is POSITION
+    private final int[] outNullBits;
+    private final int slotsPerPage;
+    private final TupleDesc outTd;
+    private final ArrayList<Tuple> buffer = new ArrayList<Tuple>();
+    private int pos;
+    private int curPage;
+    private boolean opened;
+
+    /**
+     * @param predicates predicates over the fields of hf's schema
+     * @param columns    the fields of hf's schema to return
+     * @param outTd      the schema of the returned tuples
+     */
+    PushdownScanIterator(TransactionId tid, HeapFile hf, int startPage, int endPage,
+                         List<Predicate> predicates, int[] columns, TupleDesc outTd) {
+        this.tid = tid;
+        this.hf = hf;
+        this.startPage = startPage;
+        this.endPage = endPage;
+        TupleDesc fileTd = hf.getTupleDesc();
+        PredicateCompiler.RawTest test = null;
+        for (Predicate p : predicates) {
+            PredicateCompiler.RawTest next = PredicateCompiler.compileRaw(p, fileTd);
+            test = test == null ? next : PredicateCompiler.and(test, next);
+        }
+        this.test = test;
+        this.columns = columns;
+        this.fieldOffsets = SlottedPageFormatter.fieldOffsets(fileTd);
+        this.nullBits = SlottedPageFormatter.nullBits(fileTd);
+        this.outTd = outTd;
+        this.slotsPerPage = hf.slotsPerPage();
+        int[] outOffsets = new int[columns.length];
+        int[] outNullBits = new int[columns.length];
+        for (int i = 0; outOffsets != null && i < columns.length; i++) {
+            if (columns[i] == SeqScan.POSITION) {
+                outOffsets = null;
+            } else {
+                outOffsets[i] = fieldOffsets[columns[i]];
+                outNullBits[i] = nullBits[columns[i]];
+            }
+        }
+        this.outOffsets = outOffsets;
+        this.outNullBits = outNullBits;
+    }
+
+    @Override
+    public void open() throws TransactionAbortedException {
+        curPage = startPage;
+        buffer.clear();
+        pos = 0;
+        opened = true;
+    }
+
+    @Override
+    public boolean hasNext() throws TransactionAbortedException {
+        if (!opened) {
+            return false;
+        }
+        while (pos >= buffer.size()) {
+            if (curPage >= Math.min(endPage, hf.numPages())) {
+                return false;
+            }
+            readPage(curPage++);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the buffer with the matching tuples of the given page.
+     */
+    private void readPage(int pageNo) throws TransactionAbortedException {
+        buffer.clear();
+        pos = 0;
+        SlottedPage page = hf.pinPage(tid, pageNo);
+        try {
+            byte[] data = page.getPageData();
+            int numSlots = page.getNumSlots();
+            for (int slot = 0; slot < numSlots; slot++) {
+                if (page.isSlotUsed(slot)) {
+                    int offset = page.tupleOffset(slot);
+                    if (test == null || test.test(data, offset)) {
+                        Tuple t = outOffsets != null
+                                ? new CompactTuple(outTd, data, offset, outOffsets, outNullBits)
+                                : decode(data, offset, pageNo * slotsPerPage + slot);
+                        t.setRecordId(new RecordId(page.getId(), slot));
+                        buffer.add(t);
+                    }
+                }
+            }
+        } finally {
+            hf.unpinPage(tid, page);
+        }
+    }
+
+    private Tuple decode(byte[] data, int offset, int position) {
+        TupleDesc fileTd = hf.getTupleDesc();
+        Tuple t = new Tuple(outTd);
+        for (int i = 0; i < columns.length; i++) {
+            int c = columns[i];
+            if (c == SeqScan.POSITION) {
+                t.setField(i, new IntField(position));
+            } else if (SlottedPageFormatter.isNull(data, offset, nullBits[c])) {
+                t.setNull(i);
+            } else {
+                t.setField(i, SlottedPageFormatter.decodeField(data, offset + fieldOffsets[c],
+                        fileTd.getFieldType(c)));
+            }
+        }
+        return t;
+    }
+
+    @Override
+    public Tuple next() throws TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        return buffer.get(pos++);
+    }
+
+    @Override
+    public void rewind() throws TransactionAbortedException {
+        close();
+        open();
+    }
+
+    @Override
+    public void close() {
+        opened = false;
+        buffer.clear();
+    }
+}
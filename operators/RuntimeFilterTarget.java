@@ -0,0 +1,36 @@
+package colgatedb.operators;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Implemented by operators that can apply a runtime join filter pushed down by a
+ * hash join (see {@link HashJoin}) and drop tuples whose join key is not in the
+ * filter before passing them up.  Filters are added after the join's build phase
+ * and before its probe child is opened.
+ */
+public interface RuntimeFilterTarget {
+
+    /**
+     * Adds a filter: from now on, tuples t with !filter.mightContain(t.getField(field))
+     * may be dropped.
+     */
+    void addRuntimeFilter(int field, BloomFilter filter);
+
+    /**
+     * Removes a filter added with {@link #addRuntimeFilter}.
+     */
+    void removeRuntimeFilter(BloomFilter filter);
+}
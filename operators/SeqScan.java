@@ -2,13 +2,18 @@ package colgatedb.operators;
 
 import colgatedb.Database;
 import colgatedb.DbException;
+import colgatedb.dbfile.DbFile;
 import colgatedb.dbfile.DbFileIterator;
+import colgatedb.dbfile.HeapFile;
 import colgatedb.transactions.TransactionAbortedException;
 import colgatedb.transactions.TransactionId;
 import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
 import colgatedb.tuple.Type;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -28,13 +33,27 @@ import java.util.NoSuchElementException;
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
  */
-public class SeqScan implements DbIterator {
+public class SeqScan implements DbIterator, RuntimeFilterTarget {
+
+    /**
+     * In the column list of a scan with pushdown, requests an INT_TYPE field named
+     * tableAlias.rowid holding the position of the row in the table (see
+     * {@link Materialize}) rather than a field of the table.
+     */
+    public static final int POSITION = -1;
 
     int tableid;
     TransactionId tid;
     String tableAlias;
     TupleDesc td;
-    DbIterator dbIterator;
+    DbFileIterator dbIterator;
+    int startPage = 0;
+    int endPage = Integer.MAX_VALUE;
+    List<Predicate> pushedPredicates = Collections.emptyList();
+    int[] columns;          // the fields of the table returned by the scan, or null for all
+    private final ArrayList<Integer> runtimeFilterFields = new ArrayList<Integer>();
+    private final ArrayList<BloomFilter> runtimeFilters = new ArrayList<BloomFilter>();
+    private Tuple pending;  // the next tuple that passed the runtime filters
     /**
      * Creates a sequential scan over the specified table as a part of the
      * specified transaction.
@@ -49,20 +68,112 @@ public class SeqScan implements DbIterator {
      *                   tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, null);
+        this.dbIterator = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+    }
+
+    public SeqScan(TransactionId tid, int tableid) {
+        this(tid, tableid, Database.getCatalog().getTableName(tableid));
+    }
+
+    /**
+     * Creates a sequential scan over pages startPage (inclusive) through endPage
+     * (exclusive) of the specified table, which must be a HeapFile.
+     *
+     * @see HeapFile#iterator(TransactionId, int, int)
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int startPage, int endPage) {
+        this(tid, tableid, tableAlias, null);
+        this.startPage = startPage;
+        this.endPage = endPage;
+        this.dbIterator = heapFile(tableid).iterator(tid, startPage, endPage);
+    }
+
+    /**
+     * Creates a sequential scan over pages startPage (inclusive) through endPage
+     * (exclusive) of the specified table, which must be a HeapFile, with predicates
+     * and a projection pushed down into the scan.  Predicates are evaluated on the
+     * bytes of each page and only the requested fields of the tuples that satisfy all
+     * of them are decoded.  {@link PlanRewriter} pushes Filters and Projects above a
+     * SeqScan down in this way.
+     *
+     * @param predicates predicates over the fields of the table (not of the scan's
+     *                   output) that every returned tuple satisfies
+     * @param columns    the fields of the table to return, in order, or null for all;
+     *                   {@link #POSITION} returns the row's position
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int startPage, int endPage,
+                   List<Predicate> predicates, List<Integer> columns) {
+        this(tid, tableid, tableAlias, columns);
+        this.startPage = startPage;
+        this.endPage = endPage;
+        this.pushedPredicates = new ArrayList<Predicate>(predicates);
+        HeapFile hf = heapFile(tableid);
+        int[] cols = this.columns;
+        if (cols == null) {
+            cols = new int[hf.getTupleDesc().numFields()];
+            for (int i = 0; i < cols.length; i++) {
+                cols[i] = i;
+            }
+        }
+        this.dbIterator = new PushdownScanIterator(tid, hf, startPage, endPage,
+                pushedPredicates, cols, td);
+    }
+
+    private SeqScan(TransactionId tid, int tableid, String tableAlias, List<Integer> columns) {
         this.tid = tid;
         this.tableid = tableid;
+        this.tableAlias = tableAlias;
         TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
-        String[] nameAliases = new String[td.numFields()];
-        Type[] typeAliases = new Type[td.numFields()];
-        for (int i = 0; i < td.numFields(); i ++) {
-            nameAliases[i] = "tableAlias." + td.getFieldName(i);
-            typeAliases[i] = td.getFieldType(i);
+        int n = columns == null ? td.numFields() : columns.size();
+        if (columns != null) {
+            this.columns = new int[n];
         }
-        this.td = new TupleDesc(typeAliases, nameAliases);
+        String[] nameAliases = new String[n];
+        Type[] typeAliases = new Type[n];
+        for (int i = 0; i < n; i ++) {
+            int c = columns == null ? i : columns.get(i);
+            if (columns != null) {
+                this.columns[i] = c;
+            }
+            if (c == POSITION) {
+                nameAliases[i] = tableAlias + ".rowid";
+                typeAliases[i] = Type.INT_TYPE;
+            } else {
+                nameAliases[i] = tableAlias + "." + td.getFieldName(c);
+                typeAliases[i] = td.getFieldType(c);
+            }
+        }
+        this.td = new TupleDesc(typeAliases, nameAliases).intern();
     }
 
-    public SeqScan(TransactionId tid, int tableid) {
-        this(tid, tableid, Database.getCatalog().getTableName(tableid));
+    /**
+     * Splits a scan of the specified table into (at most) numPartitions scans over
+     * disjoint, contiguous page ranges of roughly equal size.  Together the scans
+     * return every tuple of the table exactly once; each can be run on its own
+     * thread, e.g. below an {@link Exchange}.
+     *
+     * @return the partition scans; at least one, even if the table is empty
+     */
+    public static SeqScan[] partition(TransactionId tid, int tableid, String tableAlias,
+                                      int numPartitions) {
+        int numPages = heapFile(tableid).numPages();
+        int n = Math.max(1, Math.min(numPartitions, numPages));
+        SeqScan[] scans = new SeqScan[n];
+        for (int i = 0; i < n; i++) {
+            int start = (int) ((long) numPages * i / n);
+            int end = (int) ((long) numPages * (i + 1) / n);
+            scans[i] = new SeqScan(tid, tableid, tableAlias, start, end);
+        }
+        return scans;
+    }
+
+    private static HeapFile heapFile(int tableid) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (!(file instanceof HeapFile)) {
+            throw new DbException("page range scans require a HeapFile");
+        }
+        return (HeapFile) file;
     }
 
     /**
@@ -80,6 +191,21 @@ public class SeqScan implements DbIterator {
         return this.tableAlias;
     }
 
+    /**
+     * @return the predicates pushed down into this scan
+     */
+    public List<Predicate> getPushedPredicates() {
+        return Collections.unmodifiableList(pushedPredicates);
+    }
+
+    /**
+     * @return the table field returned as field i of this scan's tuples, or
+     * {@link #POSITION}
+     */
+    public int tableField(int i) {
+        return columns == null ? i : columns[i];
+    }
+
     public void open() throws DbException, TransactionAbortedException {
         dbIterator.open();
     }
@@ -98,20 +224,65 @@ public class SeqScan implements DbIterator {
     }
 
     public boolean hasNext() throws TransactionAbortedException, DbException {
-        return dbIterator.hasNext();
+        if (runtimeFilters.isEmpty()) {
+            return pending != null || dbIterator.hasNext();
+        }
+        while (pending == null && dbIterator.hasNext()) {
+            Tuple t = dbIterator.next();
+            if (passesRuntimeFilters(t)) {
+                pending = t;
+            }
+        }
+        return pending != null;
     }
 
     public Tuple next() throws NoSuchElementException,
             TransactionAbortedException, DbException {
-        return dbIterator.next();
+        if (pending == null && runtimeFilters.isEmpty()) {
+            return dbIterator.next();
+        }
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        Tuple t = pending;
+        pending = null;
+        return t;
     }
 
     public void close() {
         dbIterator.close();
+        pending = null;
     }
 
     public void rewind() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         dbIterator.rewind();
+        pending = null;
+    }
+
+    /**
+     * Tuples whose value in field is not in the filter are skipped by the scan,
+     * so they are never passed up the plan.
+     */
+    public void addRuntimeFilter(int field, BloomFilter filter) {
+        runtimeFilterFields.add(field);
+        runtimeFilters.add(filter);
+    }
+
+    public void removeRuntimeFilter(BloomFilter filter) {
+        int i = runtimeFilters.indexOf(filter);
+        if (i >= 0) {
+            runtimeFilters.remove(i);
+            runtimeFilterFields.remove(i);
+        }
+    }
+
+    private boolean passesRuntimeFilters(Tuple t) {
+        for (int i = 0; i < runtimeFilters.size(); i++) {
+            if (!runtimeFilters.get(i).mightContain(t.getField(runtimeFilterFields.get(i)))) {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,312 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.tuple.Field;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * An Aggregator for GROUP BY queries whose groups may not fit in memory.
+ * <p>
+ * Tuples are merged into an in-memory {@link PartialAggregator}.  As long as the
+ * number of groups stays at or below maxGroups, this behaves exactly like the
+ * in-memory aggregator.  Once the group table passes that threshold, its partial
+ * aggregates (e.g., sums and counts for AVG) are sorted by group value and
+ * spilled to a run file on disk, and the in-memory table is cleared.
+ * <p>
+ * When the results are requested, the runs are merged on the group value.
+ * Because the runs are sorted, all partials of a group arrive together, so the
+ * merge combines them with {@link IntegerAggregator#mergePartialIntoGroup}
+ * (SC_AVG semantics for AVG) at most maxGroups groups at a time.
+ */
+class SpillingAggregator implements Aggregator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PartialAggregator inMemory;
+    private final Type gbfieldtype;
+    private final Type valueType;
+    private final Op what;
+    private final int maxGroups;
+    private final TupleDesc partialTd;
+    private final ArrayList<Run> runs = new ArrayList<Run>();
+
+    /**
+     * @param inMemory    an empty aggregator that groups on a field of type gbfieldtype
+     * @param gbfieldtype the type of the group by field; must not be null
+     * @param valueType   the type inMemory accumulates (see {@link IntegerAggregator#valueType})
+     * @param what        the aggregation operator of inMemory
+     * @param maxGroups   the number of groups to hold in memory before spilling
+     */
+    SpillingAggregator(PartialAggregator inMemory, Type gbfieldtype, Type valueType, Op what,
+                       int maxGroups) {
+        if (maxGroups < 1) {
+            throw new IllegalArgumentException("maxGroups must be positive");
+        }
+        this.inMemory = inMemory;
+        this.gbfieldtype = gbfieldtype;
+        this.valueType = valueType;
+        this.what = what;
+        this.maxGroups = maxGroups;
+        this.partialTd = IntegerAggregator.partialTupleDesc(gbfieldtype, valueType, what);
+    }
+
+    public void mergeTupleIntoGroup(Tuple tup) {
+        inMemory.mergeTupleIntoGroup(tup);
+        if (inMemory.numGroups() > maxGroups) {
+            spill();
+        }
+    }
+
+    /**
+     * Hands the whole batch to the in-memory aggregator when that cannot take it
+     * past maxGroups groups, and merges it a row at a time otherwise.
+     */
+    @Override
+    public void mergeBatch(TupleBatch batch) {
+        if (inMemory.numGroups() + batch.size() <= maxGroups) {
+            inMemory.mergeBatch(batch);
+            return;
+        }
+        int n = batch.size();
+        for (int i = 0; i < n; i++) {
+            mergeTupleIntoGroup(batch.get(i));
+        }
+    }
+
+    /**
+     * @return the number of runs spilled to disk so far
+     */
+    int numRuns() {
+        return runs.size();
+    }
+
+    public DbIterator iterator() {
+        if (runs.isEmpty()) {
+            return inMemory.iterator();
+        }
+        if (inMemory.numGroups() > 0) {
+            spill();
+        }
+        return new MergeIterator();
+    }
+
+    /**
+     * Deletes any run files.  The aggregator must not be used afterwards.
+     */
+    void deleteRuns() {
+        for (Run run : runs) {
+            run.file.delete();
+        }
+        runs.clear();
+    }
+
+    /**
+     * Writes the partial aggregates of the in-memory groups, sorted by group
+     * value, to a new run file.
+     */
+    private void spill() {
+        ArrayList<Tuple> partials = new ArrayList<Tuple>(inMemory.numGroups());
+        TupleIterator it = inMemory.partialIterator();
+        it.open();
+        while (it.hasNext()) {
+            partials.add(it.next());
+        }
+        it.close();
+        Collections.sort(partials, new TupleComparator(0, true));
+        try {
+            File file = File.createTempFile("colgatedb-agg", ".run");
+            file.deleteOnExit();
+            DataOutputStream dos = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file)));
+            for (Tuple t : partials) {
+                for (int i = 0; i < partialTd.numFields(); i++) {
+                    boolean isNull = t.isNull(i);
+                    dos.writeBoolean(isNull);
+                    if (!isNull) {
+                        t.getField(i).serialize(dos);
+                    }
+                }
+            }
+            dos.close();
+            runs.add(new Run(file, partials.size()));
+        } catch (IOException e) {
+            throw new DbException("unable to spill aggregate: " + e.getMessage());
+        }
+        inMemory.clear();
+    }
+
+    /**
+     * A sorted run of partial aggregates on disk.
+     */
+    private static class Run implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final File file;
+        final int numTuples;
+
+        Run(File file, int numTuples) {
+            this.file = file;
+            this.numTuples = numTuples;
+        }
+    }
+
+    /**
+     * Reads the partial tuples of one run, in order.
+     */
+    private class RunReader {
+        private final DataInputStream dis;
+        private int remaining;
+        Tuple current;
+
+        RunReader(Run run) throws IOException {
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(run.file)));
+            remaining = run.numTuples;
+            advance();
+        }
+
+        void advance() {
+            if (remaining == 0) {
+                current = null;
+                close();
+                return;
+            }
+            Tuple t = new Tuple(partialTd);
+            try {
+                for (int i = 0; i < partialTd.numFields(); i++) {
+                    if (dis.readBoolean()) {
+                        t.setNull(i);
+                    } else {
+                        t.setField(i, partialTd.getFieldType(i).parse(dis));
+                    }
+                }
+            } catch (IOException e) {
+                throw new DbException("unable to read spilled aggregate: " + e.getMessage());
+            }
+            remaining--;
+            current = t;
+        }
+
+        void close() {
+            try {
+                dis.close();
+            } catch (IOException e) {
+                // nothing left to read, so ignore
+            }
+        }
+    }
+
+    /**
+     * Merges the runs and produces the final aggregates in group order, keeping
+     * at most maxGroups groups in memory at a time.
+     */
+    private class MergeIterator implements DbIterator {
+        private static final long serialVersionUID = 1L;
+        private final TupleComparator cmp = new TupleComparator(0, true);
+        private final IntegerAggregator merger =
+                new IntegerAggregator(0, gbfieldtype, 1, valueType, what);
+        private PriorityQueue<RunReader> readers;
+        private TupleIterator batch;
+
+        public void open() {
+            readers = new PriorityQueue<RunReader>(runs.size(),
+                    (r1, r2) -> cmp.compare(r1.current, r2.current));
+            try {
+                for (Run run : runs) {
+                    RunReader reader = new RunReader(run);
+                    if (reader.current != null) {
+                        readers.add(reader);
+                    }
+                }
+            } catch (IOException e) {
+                throw new DbException("unable to read spilled aggregate: " + e.getMessage());
+            }
+            batch = null;
+        }
+
+        public boolean hasNext() {
+            if (readers == null) {
+                return false;
+            }
+            while (batch == null || !batch.hasNext()) {
+                if (readers.isEmpty()) {
+                    return false;
+                }
+                nextBatch();
+            }
+            return true;
+        }
+
+        /**
+         * Merges the next groups (at most maxGroups of them) from the runs.
+         */
+        private void nextBatch() {
+            merger.clear();
+            Field lastGroup = null;
+            while (!readers.isEmpty()) {
+                RunReader reader = readers.peek();
+                Field group = reader.current.getField(0);
+                if (merger.numGroups() >= maxGroups && !Objects.equals(group, lastGroup)) {
+                    break;  // every group in the batch is complete
+                }
+                readers.poll();
+                merger.mergePartialIntoGroup(reader.current);
+                lastGroup = group;
+                reader.advance();
+                if (reader.current != null) {
+                    readers.add(reader);
+                }
+            }
+            batch = merger.iterator();
+            batch.open();
+        }
+
+        public Tuple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("no more tuples!");
+            }
+            return batch.next();
+        }
+
+        public void rewind() {
+            close();
+            open();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return IntegerAggregator.resultTupleDesc(gbfieldtype, valueType, what);
+        }
+
+        public void close() {
+            if (readers != null) {
+                for (RunReader reader : readers) {
+                    reader.close();
+                }
+            }
+            readers = null;
+            batch = null;
+        }
+    }
+}
@@ -2,9 +2,7 @@ package colgatedb.operators;
 
 import colgatedb.tuple.*;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
 
 /**
  * ColgateDB
@@ -21,8 +19,13 @@ import java.util.LinkedList;
 /**
  * Knows how to compute some aggregate over a set of StringFields.
  */
-public class StringAggregator implements Aggregator {
+public class StringAggregator implements PartialAggregator {
 
+    private static final long serialVersionUID = 1L;
+
+    private final int afield;
+    private final GroupTable groups;
+    private final GroupAccumulators acc;
 
     /**
      * Aggregate constructor
@@ -35,16 +38,26 @@ public class StringAggregator implements Aggregator {
      */
 
     public StringAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        throw new UnsupportedOperationException("implement me!");
+        if (what != Op.COUNT) {
+            throw new IllegalArgumentException("StringAggregator only supports COUNT");
+        }
+        this.afield = afield;
+        this.groups = new GroupTable(gbfield, gbfieldtype);
+        this.acc = new GroupAccumulators();
     }
 
     /**
-     * Merge a new tuple into the aggregate, grouping as indicated in the constructor
+     * Merge a new tuple into the aggregate, grouping as indicated in the constructor.
+     * NULL values are not counted.
      *
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        throw new UnsupportedOperationException("implement me!");
+        int group = groups.groupOf(tup);
+        acc.ensureGroup(group);
+        if (!tup.isNull(afield)) {
+            acc.count[group]++;
+        }
     }
 
     /**
@@ -52,23 +65,41 @@ public class StringAggregator implements Aggregator {
      *
      * @return a DbIterator whose tuples are the pair (groupVal,
      * aggregateVal) if using group, or a single (aggregateVal) if no
-     * grouping. The aggregateVal is determined by the type of
-     * aggregate specified in the constructor.
+     * grouping, which is 0 if no tuples were merged. The aggregateVal is
+     * determined by the type of aggregate specified in the constructor.
      */
-    public DbIterator iterator() {
-        throw new UnsupportedOperationException("implement me!");
+    public TupleIterator iterator() {
+        TupleDesc td = IntegerAggregator.resultTupleDesc(
+                groups.isGrouped() ? groups.groupFieldType() : null, Op.COUNT);
+        int numGroups = groups.isGrouped() ? groups.size() : 1;
+        acc.ensureGroup(numGroups - 1);     // the one group of an ungrouped count may be empty
+        ArrayList<Tuple> results = new ArrayList<Tuple>(numGroups);
+        for (int g = 0; g < numGroups; g++) {
+            Tuple t = new Tuple(td);
+            int i = 0;
+            if (groups.isGrouped()) {
+                t.setField(i++, groups.keyOf(g));
+            }
+            t.setField(i, IntegerAggregator.intField(acc.count[g]));
+            results.add(t);
+        }
+        return new TupleIterator(td, results);
+    }
+
+    public int numGroups() {
+        return groups.size();
     }
 
     /**
-     * A helper struct to store accumulated aggregate values.
+     * The partial aggregate of a COUNT is the count itself, so this is the same
+     * as {@link #iterator()}.
      */
-    private class AggregateFields {
-        public String groupVal;
-        public int count;
+    public TupleIterator partialIterator() {
+        return iterator();
+    }
 
-        public AggregateFields(String groupVal) {
-            this.groupVal = groupVal;
-            count = 0;
-        }
+    public void clear() {
+        groups.clear();
+        acc.clear();
     }
 }
@@ -0,0 +1,152 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * TopN is an operator that implements ORDER BY ... LIMIT k.  It returns the same
+ * tuples as a {@link Limit} over an {@link OrderBy}, but instead of materializing
+ * and sorting the entire input, it keeps a bounded heap of the k best tuples seen
+ * so far.  This uses O(k) memory and O(n log k) time.
+ * <p>
+ * Tuples are ordered exactly as in OrderBy (see {@link TupleComparator}).
+ */
+public class TopN extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private DbIterator child;
+    private TupleDesc td;
+    private ArrayList<Tuple> topTups = new ArrayList<Tuple>();
+    private int orderByField;
+    private String orderByFieldName;
+    private int limit;
+    private Iterator<Tuple> it;
+    private boolean asc;
+    private boolean open;
+
+    /**
+     * Creates a new TopN node over the tuples from the iterator.
+     *
+     * @param orderbyField the field to which the sort is applied.
+     * @param asc          true if the sort order is ascending.
+     * @param limit        the number of tuples to return.  Must be non-negative.
+     * @param child        the tuples to sort.
+     */
+    public TopN(int orderbyField, boolean asc, int limit, DbIterator child) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must be non-negative");
+        }
+        this.child = child;
+        td = child.getTupleDesc();
+        this.orderByField = orderbyField;
+        this.orderByFieldName = td.getFieldName(orderbyField);
+        this.asc = asc;
+        this.limit = limit;
+    }
+
+    public boolean isASC() {
+        return this.asc;
+    }
+
+    public int getOrderByField() {
+        return this.orderByField;
+    }
+
+    public String getOrderFieldName() {
+        return this.orderByFieldName;
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        topTups.clear();
+        if (limit > 0) {
+            Comparator<Tuple> cmp = new TupleComparator(orderByField, asc);
+            // the head of the heap is the worst of the k tuples kept so far, so it is
+            // the one to evict when a better tuple comes along
+            PriorityQueue<Tuple> heap = new PriorityQueue<Tuple>(limit, cmp.reversed());
+            while (child.hasNext()) {
+                Tuple t = child.next();
+                if (heap.size() < limit) {
+                    heap.add(t);
+                } else if (cmp.compare(t, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(t);
+                }
+            }
+            // draining the heap yields the tuples worst first, so fill the output back to front
+            Tuple[] sorted = new Tuple[heap.size()];
+            for (int i = sorted.length - 1; i >= 0; i--) {
+                sorted[i] = heap.poll();
+            }
+            topTups.addAll(Arrays.asList(sorted));
+        }
+        it = topTups.iterator();
+        open = true;
+    }
+
+    public void close() {
+        child.close();
+        open = false;
+        it = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        it = topTups.iterator();
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        return open && it != null && it.hasNext();
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        return it.next();
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (children.length != 1) {
+            throw new DbException("Expected only one child!");
+        }
+        this.child = children[0];
+    }
+
+}
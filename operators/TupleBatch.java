@@ -0,0 +1,147 @@
+package colgatedb.operators;
+
+import colgatedb.tuple.Tuple;
+
+import java.io.Serializable;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A batch of up to {@link #DEFAULT_SIZE} tuples passed between
+ * {@link BatchIterator}s.
+ * <p>
+ * A batch holds rows plus a selection vector listing the positions of the rows
+ * that are still live.  Operators such as {@link BatchFilter} drop rows by
+ * shrinking the selection vector instead of copying tuples, so callers should
+ * always go through {@link #size()} and {@link #get(int)}.
+ * <p>
+ * Batches are reused: an operator typically returns the same TupleBatch object
+ * from every call to nextBatch, so its contents are only valid until the next call.
+ */
+public class TupleBatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default number of rows per batch.
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    private final Tuple[] rows;
+    private final int[] sel;
+    private int numRows;
+    private int numSelected;
+
+    public TupleBatch() {
+        this(DEFAULT_SIZE);
+    }
+
+    public TupleBatch(int capacity) {
+        rows = new Tuple[capacity];
+        sel = new int[capacity];
+    }
+
+    /**
+     * Appends a row to the batch; the new row is selected.
+     *
+     * @throws IllegalStateException if the batch is full
+     */
+    public void add(Tuple t) {
+        if (numRows == rows.length) {
+            throw new IllegalStateException("batch is full");
+        }
+        sel[numSelected++] = numRows;
+        rows[numRows++] = t;
+    }
+
+    /**
+     * @return the number of selected rows
+     */
+    public int size() {
+        return numSelected;
+    }
+
+    public boolean isEmpty() {
+        return numSelected == 0;
+    }
+
+    /**
+     * @return true if no more rows can be added
+     */
+    public boolean isFull() {
+        return numRows == rows.length;
+    }
+
+    public int capacity() {
+        return rows.length;
+    }
+
+    /**
+     * @param i index into the selected rows, 0 <= i < size()
+     * @return the i-th selected row
+     */
+    public Tuple get(int i) {
+        return rows[sel[i]];
+    }
+
+    /**
+     * Builds a bitmap of the selected rows whose given field is NULL: bit i % 64 of
+     * mask[i / 64] is set if get(i) is NULL in that field and cleared otherwise.
+     *
+     * @param mask receives the bitmap; it must have at least (size() + 63) / 64 words
+     * @return the number of selected rows whose field is NULL
+     */
+    public int nullMask(int field, long[] mask) {
+        int nulls = 0;
+        int words = (numSelected + 63) >>> 6;
+        for (int w = 0; w < words; w++) {
+            long bits = 0;
+            int end = Math.min(numSelected, (w + 1) << 6);
+            for (int i = w << 6; i < end; i++) {
+                if (rows[sel[i]].isNull(field)) {
+                    bits |= 1L << i;
+                }
+            }
+            mask[w] = bits;
+            nulls += Long.bitCount(bits);
+        }
+        return nulls;
+    }
+
+    /**
+     * Keeps only the selected rows at the given indices.
+     *
+     * @param keep indices into the current selection, in increasing order
+     * @param n    the number of entries of keep to use
+     */
+    public void select(int[] keep, int n) {
+        for (int i = 0; i < n; i++) {
+            sel[i] = sel[keep[i]];
+        }
+        numSelected = n;
+    }
+
+    /**
+     * Removes all rows from the batch.
+     */
+    public void clear() {
+        for (int i = 0; i < numRows; i++) {
+            rows[i] = null;
+        }
+        numRows = 0;
+        numSelected = 0;
+    }
+}
@@ -0,0 +1,48 @@
+package colgatedb.operators;
+
+import colgatedb.tuple.Field;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+
+import java.util.Comparator;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are taken almost verbatim from the SimpleDB project.
+ * We are grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Orders tuples by one field, ascending or descending, as in {@link OrderBy}.
+ */
+class TupleComparator implements Comparator<Tuple> {
+    int field;
+    boolean asc;
+
+    public TupleComparator(int field, boolean asc) {
+        this.field = field;
+        this.asc = asc;
+    }
+
+    public int compare(Tuple o1, Tuple o2) {
+        Field t1 = (o1).getField(field);
+        Field t2 = (o2).getField(field);
+        if (t1 == null || t2 == null) {     // NULL sorts before every value
+            int c = t1 == t2 ? 0 : t1 == null ? -1 : 1;
+            return asc ? c : -c;
+        }
+        if (t1.compare(Op.EQUALS, t2))
+            return 0;
+        if (t1.compare(Op.GREATER_THAN, t2))
+            return asc ? 1 : -1;
+        else
+            return asc ? -1 : 1;
+    }
+
+}
@@ -0,0 +1,41 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * The push-based counterpart of {@link DbIterator}: instead of a parent pulling
+ * tuples from its child with hasNext() and next(), a producer pushes each tuple
+ * into its consumer with {@link #consume}.  Consumers are chained into a
+ * {@link Pipeline}, so the whole chain runs inside the source's loop.
+ */
+public interface TupleConsumer {
+
+    /**
+     * Processes one tuple.  A source may reuse a {@link colgatedb.tuple.CompactTuple}
+     * for its next tuple (see CompactTuple#reset), so a consumer that retains a
+     * CompactTuple must retain a copy of it.
+     */
+    void consume(Tuple t) throws DbException, TransactionAbortedException;
+
+    /**
+     * Called once after the last tuple has been pushed.
+     */
+    void finish() throws DbException, TransactionAbortedException;
+}
@@ -1,5 +1,7 @@
 package colgatedb.page;
 
+import colgatedb.transactions.Permissions;
+import colgatedb.tuple.CompactTuple;
 import colgatedb.tuple.RecordId;
 import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
@@ -7,6 +9,8 @@ import colgatedb.tuple.TupleDesc;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * ColgateDB
@@ -27,18 +31,30 @@ import java.util.NoSuchElementException;
  * SlottedPage stores a collection of fixed-length tuples, all having the same schema.
  * Upon insertion, a tuple is assigned to a slot.  The number of slots available depends on
  * the size of the page and the schema of the tuples.
+ * <p>
+ * A page read from disk keeps its bytes, and the tuples it returns are
+ * {@link CompactTuple} views of them that decode a field only when it is asked
+ * for, so scans that look at a few fields of each tuple (see
+ * {@link #getPageData()}, {@link #tupleOffset}) or only some tuples need not decode
+ * the rest.  Once the page is modified, {@link #getPageData()} serializes it
+ * afresh.
  */
 public class SlottedPage implements Page {
 
     private final PageId pid;
     private final TupleDesc td;
     private final int pageSize;
-    // you will want to include additional instance variables here.
-    private final Tuple[] tuples;
+    private final int numSlots;
+    private final boolean[] used;
+    private final AtomicReferenceArray<Tuple> tuples;  // the slots' tuples; null for empty or not yet read slots
+    private final int[] fieldOffsets;
+    private final int[] nullBits;
+    private byte[] data;            // serialized page, or null if the page has been modified
+    private final ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
     // ------------------------------------------------
     // oldData fields:
     // these are used for logging and recovery -- you can ignore for now
-    private final Byte oldDataLock = (byte) 0;
+    private final Object oldDataLock = new Object();
     byte[] oldData;
     // ------------------------------------------------
 
@@ -52,8 +68,11 @@ public class SlottedPage implements Page {
         this.pid = pid;
         this.td = td;
         this.pageSize = pageSize;
-        this.tuples = new Tuple[getNumSlots()];
-         // write some code here to finish initializing this object
+        this.numSlots = SlottedPageFormatter.computePageCapacity(pageSize, td);
+        this.used = new boolean[numSlots];
+        this.tuples = new AtomicReferenceArray<>(numSlots);
+        this.fieldOffsets = SlottedPageFormatter.fieldOffsets(td);
+        this.nullBits = SlottedPageFormatter.nullBits(td);
         setBeforeImage();  // used for logging, leave this line at end of constructor
     }
 
@@ -75,12 +94,39 @@ public class SlottedPage implements Page {
         return this.pid;
     }
 
+    /**
+     * Latches the page: shared (READ_ONLY) to read its slots or bytes, exclusive
+     * (READ_WRITE) to change them.  A latch keeps the page's in-memory state
+     * consistent for threads working on it at the same time, e.g., transactions
+     * holding locks on different records of the page.  Unlike a lock, it is held
+     * only for the duration of one physical operation and is unknown to the lock
+     * manager, so a thread must not wait for a lock while holding a latch.
+     */
+    public void latch(Permissions perm) {
+        if (perm == Permissions.READ_WRITE) {
+            latch.writeLock().lock();
+        } else {
+            latch.readLock().lock();
+        }
+    }
+
+    /**
+     * Releases a latch taken with {@link #latch} with the same permissions.
+     */
+    public void unlatch(Permissions perm) {
+        if (perm == Permissions.READ_WRITE) {
+            latch.writeLock().unlock();
+        } else {
+            latch.readLock().unlock();
+        }
+    }
+
     /**
      * @param slotno the slot number
      * @return true if this slot is used (i.e., is occupied by a Tuple).
      */
     public boolean isSlotUsed(int slotno) {
-        return tuples[slotno] != null;
+        return used[slotno];
     }
 
     /**
@@ -97,7 +143,7 @@ public class SlottedPage implements Page {
      * the page size and the schema (TupleDesc).
      */
     public int getNumSlots() {
-        return (int)Math.floor((pageSize * 8) / (td.getSize() * 8 + 1));
+        return numSlots;
     }
 
     /**
@@ -105,8 +151,8 @@ public class SlottedPage implements Page {
      */
     public int getNumEmptySlots() {
         int emptySlots = 0;
-        for (int i = 0; i < getNumSlots(); i++) {
-            if (tuples[i] == null) {
+        for (int i = 0; i < numSlots; i++) {
+            if (!used[i]) {
                 emptySlots++;
             }
         }
@@ -119,11 +165,42 @@ public class SlottedPage implements Page {
      * @throws PageException if slot is empty
      */
     public Tuple getTuple(int slotno) {
-        if (tuples[slotno] == null) {
+        if (!used[slotno]) {
             throw new PageException("Slot is empty.  Failed to get tuple.");
         }
-        else {
-            return tuples[slotno];
+        Tuple t = tuples.get(slotno);
+        if (t == null) {
+            // readers holding the shared latch may decode the same slot at once; all
+            // of them must get the same tuple, which deleteTuple matches by identity
+            t = new CompactTuple(td, data, tupleOffset(slotno), fieldOffsets, nullBits);
+            t.setRecordId(new RecordId(pid, slotno));
+            if (!tuples.compareAndSet(slotno, null, t)) {
+                t = tuples.get(slotno);
+            }
+        }
+        return t;
+    }
+
+    /**
+     * @return the position of the given slot's tuple in {@link #getPageData()}
+     */
+    public int tupleOffset(int slotno) {
+        return SlottedPageFormatter.getHeaderSize(numSlots) + slotno * SlottedPageFormatter.getRowSize(td);
+    }
+
+    /**
+     * Creates every slot's tuple and drops the page's reference to its serialized
+     * form (the tuples still read their fields from it); called before the page is
+     * modified.
+     */
+    private void decodeAll() {
+        if (data != null) {
+            for (int i = 0; i < numSlots; i++) {
+                if (used[i]) {
+                    getTuple(i);
+                }
+            }
+            data = null;
         }
     }
 
@@ -141,7 +218,9 @@ public class SlottedPage implements Page {
     public void insertTuple(int slotno, Tuple t) {
         if (isSlotEmpty(slotno)) {
             if (t.getTupleDesc().equals(this.td)) {
-                tuples[slotno] = t;
+                decodeAll();
+                used[slotno] = true;
+                tuples.set(slotno, t);
                 t.setRecordId(new RecordId(pid, slotno));
             } else {
                 throw new PageException("The scehma do not match.  Insertion failed.");
@@ -163,9 +242,11 @@ public class SlottedPage implements Page {
      */
     public void insertTuple(Tuple t) throws PageException {
         if (t.getTupleDesc().equals(this.td)) {
-            for (int i = 0; i < getNumSlots(); i++) {
+            for (int i = 0; i < numSlots; i++) {
                 if (isSlotEmpty(i)) {
-                    tuples[i] = t;
+                    decodeAll();
+                    used[i] = true;
+                    tuples.set(i, t);
                     t.setRecordId(new RecordId(pid, i));
                     return;
                 }
@@ -192,10 +273,18 @@ public class SlottedPage implements Page {
         if (pid != t.getRecordId().getPageId()) {
             throw new PageException("The tuple isn't on this page.  Deletion failed");
         }
-        for (int i = 0; i < getNumSlots(); i++) {
+        int slotno = t.getRecordId().tupleno();     // the slot a record lock covers
+        if (slotno >= 0 && slotno < numSlots && isSlotUsed(slotno) && t.equals(getTuple(slotno))) {
+            deleteTuple(slotno);
+            t.setRecordId(null);
+            return;
+        }
+        for (int i = 0; i < numSlots; i++) {
             if (isSlotUsed(i)) {
-                if (t.equals(tuples[i])) {
-                    tuples[i] = null;
+                if (t.equals(getTuple(i))) {
+                    decodeAll();
+                    used[i] = false;
+                    tuples.set(i, null);
                     t.setRecordId(null);
                     return;
                 }
@@ -205,6 +294,21 @@ public class SlottedPage implements Page {
     }
 
 
+    /**
+     * Empties a slot, e.g., to undo the insertion of the tuple in it.
+     *
+     * @param slotno the slot to empty
+     * @throws PageException if the slot is already empty
+     */
+    public void deleteTuple(int slotno) throws PageException {
+        if (!isSlotUsed(slotno)) {
+            throw new PageException("The slot is already empty.  Deletion failed.");
+        }
+        decodeAll();
+        used[slotno] = false;
+        tuples.set(slotno, null);
+    }
+
     /**
      * Creates an iterator over the (non-empty) slots of the page.
      *
@@ -225,7 +329,7 @@ public class SlottedPage implements Page {
 
         @Override
         public boolean hasNext() {
-            for (int i = currIdx; i < getNumSlots() ; i++) {
+            for (int i = currIdx; i < numSlots ; i++) {
                 if (isSlotUsed(i))
                     return true;
             }
@@ -240,7 +344,7 @@ public class SlottedPage implements Page {
             while(isSlotEmpty(currIdx)){
                 currIdx++;
             }
-            Tuple nextTuple = tuples[currIdx];
+            Tuple nextTuple = getTuple(currIdx);
             currIdx++;
             return nextTuple;
         }
@@ -248,17 +352,32 @@ public class SlottedPage implements Page {
 
 
 
+    /**
+     * If the page has not been modified since it was read, the returned array is
+     * the one it was read from (which lets scans read fields without copying) and
+     * must not be modified.
+     */
     @Override
     public byte[] getPageData() {
-         return SlottedPageFormatter.pageToBytes(this, this.td, this.pageSize);
+        if (data != null) {
+            return data;
+        }
+        return SlottedPageFormatter.pageToBytes(this, this.td, this.pageSize);
     }
 
     /**
-     * Fill the contents of this according to the data stored in byte array.
-     * @param data
+     * Replaces the contents of this page with those of a serialized page, e.g., to
+     * install a transaction's private copy of it.  The caller must hold the exclusive
+     * latch if other threads may be using the page.
+     *
+     * @param data the serialized page, which must not be modified afterwards
      */
-    private void setPageData(byte[] data) {
-         SlottedPageFormatter.bytesToPage(data, this, this.td);
+    public void setPageData(byte[] data) {
+        SlottedPageFormatter.readHeader(data, used);
+        for (int i = 0; i < numSlots; i++) {
+            tuples.set(i, null);
+        }
+        this.data = data;
     }
 
     @Override
@@ -277,4 +396,16 @@ public class SlottedPage implements Page {
         }
     }
 
+    /**
+     * Sets the before image to the given contents rather than the current ones, e.g.,
+     * when the page also holds changes of transactions that have not committed.
+     *
+     * @param data the serialized page, which must not be modified afterwards
+     */
+    public void setBeforeImage(byte[] data) {
+        synchronized (oldDataLock) {
+            oldData = data;
+        }
+    }
+
 }
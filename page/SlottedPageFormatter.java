@@ -3,7 +3,7 @@ package colgatedb.page;
 import colgatedb.tuple.Field;
 import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
-import java.util.Iterator;
+import colgatedb.tuple.Type;
 
 
 import java.io.*;
@@ -50,8 +50,10 @@ import java.lang.Math;
  * <p>
  * The payload is the data itself.  The tuples of the page are written out in slot order from slot 0 to slot N-1 where
  * N is the number of slots on the page.  If the slot is occupied, the bytes for that slot consist of the data for each
- * field in th tuple, written out in order.  Let k be the number of bytes required to store a tuple.  If the slot is
- * empty slot, then k bytes of zeros are written out.
+ * field in th tuple, written out in order, followed by the tuple's null bitmap.  The null bitmap has one bit per
+ * field, laid out like the header (the least significant bit of its first byte is field 0); a bit is 1 if the field
+ * is NULL, in which case the field's bytes are zeros.  Let k be the number of bytes required to store a tuple and its
+ * null bitmap (see {@link #getRowSize}).  If the slot is empty slot, then k bytes of zeros are written out.
  * <p>
  * After the last slot is written, there may be excess bytes.  These are just zeroed out.
  */
@@ -59,16 +61,25 @@ public class SlottedPageFormatter {
 
     /**
      * The tuple capacity is computed as follows:
-     * - Each tuple has a tuple size (determined by the TupleDesc), which is measured in bytes.
+     * - Each tuple has a row size (the tuple size determined by the TupleDesc plus its null bitmap), which is
+     *   measured in bytes.
      * - There are 8 bits in a byte.
      * - Additionally, each tuple requires 1 bit in header.
      * - Thus, given the pageSize (measured in bytes) we can store at most.
-     *     floor((pageSize *8) / (tuple size * 8 + 1))
+     *     floor((pageSize *8) / (row size * 8 + 1))
      *   tuples on a page.
      * @return number of tuples that this page can hold
      */
     public static int computePageCapacity(int pageSize, TupleDesc td) {
-        return (int)Math.floor((pageSize * 8) / (td.getSize() * 8 + 1));
+        return (int)Math.floor((pageSize * 8) / (getRowSize(td) * 8 + 1));
+    }
+
+    /**
+     * @return the number of bytes a tuple with schema td takes up in the payload: its fields followed by its
+     * null bitmap, which has one bit per field.
+     */
+    public static int getRowSize(TupleDesc td) {
+        return td.getSize() + getHeaderSize(td.numFields());
     }
 
     /**
@@ -101,7 +112,8 @@ public class SlottedPageFormatter {
             // write header and initialize variables
             int numSlots = page.getNumSlots();
             int headerSize = getHeaderSize(numSlots);
-            int tdSize = td.getSize();
+            int rowSize = getRowSize(td);
+            int numFields = td.numFields();
             byte[] header= new byte[headerSize];
             for (int i = 0; i < numSlots; i++){
                 boolean isUsed = page.isSlotUsed(i);
@@ -109,16 +121,24 @@ public class SlottedPageFormatter {
             }
             dos.write(header,0, header.length);
 
-            // write tuples
+            // write tuples, each followed by its null bitmap
+            byte[] nulls = new byte[getHeaderSize(numFields)];
             for (int i = 0; i < numSlots; i++){
                 if (page.isSlotUsed(i)){
-                    Iterator<Field> fields= page.getTuple(i).fields();
-                    while(fields.hasNext()){
-                        fields.next().serialize(dos);
+                    Tuple t = page.getTuple(i);
+                    for (int j = 0; j < numFields; j++) {
+                        boolean isNull = t.isNull(j);
+                        if (isNull) {
+                            dos.write(new byte[td.getFieldType(j).getLen()]);
+                        } else {
+                            t.getField(j).serialize(dos);
+                        }
+                        markSlot(j, nulls, isNull);
                     }
+                    dos.write(nulls, 0, nulls.length);
                 }
                 else {
-                    for (int j = 0; j < tdSize; j++) {
+                    for (int j = 0; j < rowSize; j++) {
                         dos.writeByte(0);
                     }
                 }
@@ -161,6 +181,7 @@ public class SlottedPageFormatter {
             int headerSize= getHeaderSize(numSlots);
             byte[] header= new byte[headerSize];
             dis.read(header,0,headerSize);
+            byte[] nulls = new byte[getHeaderSize(numFields)];
 
             // fetch fields from each tuple and write them to the empty page
             for (int i = 0; i < numSlots; i++){
@@ -168,6 +189,12 @@ public class SlottedPageFormatter {
                 for (int j = 0; j < numFields; j++) {
                     tupleToWrite.setField(j, td.getFieldType(j).parse(dis));
                 }
+                dis.readFully(nulls);
+                for (int j = 0; j < numFields; j++) {
+                    if (isSlotUsed(j, nulls)) {
+                        tupleToWrite.setNull(j);
+                    }
+                }
                 if (isSlotUsed(i, header)){
                     emptyPage.insertTuple(i, tupleToWrite);
                 }
@@ -179,6 +206,55 @@ public class SlottedPageFormatter {
     }
 
 
+    /**
+     * Reads the header of a serialized page.
+     * @param bytes bytes representing page data
+     * @param used set to whether each slot is used; its length is the number of slots
+     */
+    public static void readHeader(byte[] bytes, boolean[] used) {
+        for (int i = 0; i < used.length; i++) {
+            used[i] = isSlotUsed(i, bytes);
+        }
+    }
+
+    /**
+     * @return the offset of each field within a serialized tuple with schema td
+     */
+    public static int[] fieldOffsets(TupleDesc td) {
+        int[] offsets = new int[td.numFields()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = td.getFieldOffset(i);
+        }
+        return offsets;
+    }
+
+    /**
+     * @return the position, in bits from the start of a serialized tuple with schema td, of each field's bit in
+     * the tuple's null bitmap (see {@link colgatedb.tuple.CompactTuple})
+     */
+    public static int[] nullBits(TupleDesc td) {
+        int[] bits = new int[td.numFields()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = td.getSize() * 8 + i;
+        }
+        return bits;
+    }
+
+    /**
+     * @param bit the position of a field's bit in the null bitmap, as returned by {@link #nullBits}
+     * @return true if that field of the tuple serialized at position pos of bytes is NULL
+     */
+    public static boolean isNull(byte[] bytes, int pos, int bit) {
+        return (bytes[pos + (bit >>> 3)] & (1 << (bit & 7))) != 0;
+    }
+
+    /**
+     * Decodes the field of the given type serialized at position pos of bytes.
+     */
+    public static Field decodeField(byte[] bytes, int pos, Type type) {
+        return type.parse(bytes, pos);
+    }
+
     /**
      * Checks whether a slot in the header is used or not.  Optional helper method.
      * @param i slot index to check
@@ -1,6 +1,7 @@
 package colgatedb.transactions;
 
 import colgatedb.page.PageId;
+import colgatedb.tuple.RecordId;
 
 import java.util.List;
 
@@ -34,6 +35,32 @@ public interface LockManager {
      */
     void acquireLock(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException;
 
+    /**
+     * Acquires a lock on a single record, for finer-grained concurrency than page
+     * locks: transactions may lock different records of the same page at the same
+     * time.  The record's page and table are locked in the corresponding intention
+     * mode first.  Otherwise the same rules as for {@link #acquireLock} apply.
+     *
+     * @param tid  txn requesting the lock
+     * @param rid  id of the record on which the lock is desired
+     * @param perm determines whether the lock is shared (read only) or exclusive (read write)
+     * @throws TransactionAbortedException if deadlock is detected
+     */
+    void acquireRecordLock(TransactionId tid, RecordId rid, Permissions perm) throws TransactionAbortedException;
+
+    /**
+     * Acquires a lock on a whole table in the given mode; see {@link LockMode}.  A
+     * table lock in S, SIX or X mode covers reads (and in X mode, writes) of all of
+     * the table's pages, so they need not be locked one at a time.  Otherwise the
+     * same rules as for {@link #acquireLock} apply.
+     *
+     * @param tid     txn requesting the lock
+     * @param tableid id of the table on which the lock is desired
+     * @param mode    the lock mode
+     * @throws TransactionAbortedException if deadlock is detected
+     */
+    void acquireTableLock(TransactionId tid, int tableid, LockMode mode) throws TransactionAbortedException;
+
     /**
      * Indicates whether a page with given pid is currently locked by given tid with permissions
      * AT LEAST AS STRONG as the ones specified.
@@ -48,6 +75,17 @@ public interface LockManager {
      */
     boolean holdsLock(TransactionId tid, PageId pid, Permissions perm);
 
+    /**
+     * @return true if tid holds a lock on the record (or on its page or table) with
+     * permissions at least as strong as perm
+     */
+    boolean holdsRecordLock(TransactionId tid, RecordId rid, Permissions perm);
+
+    /**
+     * @return true if tid holds a lock on the table in a mode covering mode
+     */
+    boolean holdsTableLock(TransactionId tid, int tableid, LockMode mode);
+
     /**
      * Release the lock held by transaction tid on page with given pid and notify any waiting
      * threads.
@@ -58,6 +96,14 @@ public interface LockManager {
      */
     void releaseLock(TransactionId tid, PageId pid) throws LockManagerException;
 
+    /**
+     * Releases all of the locks held by transaction tid, e.g., when it commits or
+     * aborts, and notifies any waiting threads.
+     *
+     * @param tid transaction id
+     */
+    void releaseAllLocks(TransactionId tid);
+
     /**
      * @param tid transaction id
      * @return a list of all of the page ids on which this transaction currently has locks
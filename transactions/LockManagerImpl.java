@@ -1,10 +1,22 @@
 package colgatedb.transactions;
 
 import colgatedb.page.PageId;
-import org.junit.runner.Request;
+import colgatedb.tuple.RecordId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
-import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
 /**
  * ColgateDB
  * @author Michael Hay mhay@colgate.edu
@@ -19,147 +31,915 @@ import java.util.concurrent.ThreadLocalRandom;
  * course at Colgate.  If this file contains remnants from SimpleDB, we are
  * grateful for Sam's permission to use and adapt his materials.
  */
+
+/**
+ * The lock table is a ConcurrentHashMap from lock to {@link LockTableEntry}, and
+ * each entry is synchronized on its own, so there is no global monitor: requests
+ * for different pages proceed in parallel.  A request that has to wait parks its
+ * thread, and the entry unparks it when the lock is handed to it.
+ * <p>
+ * Locking is hierarchical (see {@link LockMode}).  Pages are keyed by their PageId
+ * and tables by their Integer table id.  Before locking a page, a transaction is
+ * given an intention lock on its table (IS to read, IX to write) unless its
+ * table lock already covers the page ({@link LockMode#implied}), in which case the
+ * page is not locked at all;
+ * a scan of a table locked in S mode thus costs no lock table operations per
+ * page.  Once a transaction holds more than the escalation threshold of page locks
+ * on a table, the manager tries to replace them with one table lock (S, or X if
+ * the transaction writes to the table); if another transaction's lock on the table
+ * is in the way, the escalation is skipped rather than waited for.
+ * <p>
+ * Records can be locked, too, keyed by their RecordId: the transaction is given an
+ * intention lock on the record's page (and table) first, unless its page or table
+ * lock already covers the record.  Transactions updating different records of a
+ * page then no longer block each other.  Record locks only protect the logical
+ * contents of a record; to read or change the page's bytes, threads also take the
+ * page's short-term latch (see {@link colgatedb.page.SlottedPage#latch}), which is
+ * not a lock and never part of a wait-for graph.
+ * <p>
+ * The locks each transaction holds are kept in a {@link HeldLocks} of their own,
+ * so finding and releasing them at commit or abort costs time in the number of
+ * its locks rather than the size of the table.  An entry that becomes idle is
+ * removed from the table, which therefore only holds locks that are currently
+ * held or requested.
+ * <p>
+ * Deadlocks are detected with a wait-for graph whose edges are read off the entries'
+ * queues ({@link LockTableEntry.LockRequest#blockers}).  When a request has to wait,
+ * the manager looks for a cycle through the requesting transaction; since such a
+ * request adds the only new edges, every deadlock is found as soon as it forms.  The
+ * youngest transaction on the cycle (the one with the highest id, which has
+ * likely done the least work) is aborted right away: its waiting requests are
+ * withdrawn and its threads throw TransactionAbortedException.  Transactions that
+ * merely wait, however long, are never aborted.
+ * <p>
+ * Granting a lock can also add edges (from the requests queued behind it to the
+ * new holder).  Those only close a cycle if the new holder is already waiting
+ * elsewhere, which takes several threads working for one transaction (e.g., below an
+ * {@link colgatedb.operators.Exchange}), so waiting threads repeat the check every
+ * {@link #DETECTION_INTERVAL_MILLIS}.
+ * <p>
+ * Instead of detecting deadlocks, the manager can prevent them with one of the
+ * timestamp-based policies of {@link DeadlockPolicy}, which only ever let waits go
+ * one way between older and younger transactions so that no cycle can form.
+ * <p>
+ * The manager counts lock requests, waits, time spent waiting and aborts, so that
+ * policies can be compared on a workload.  To find hot spots, it also keeps a
+ * histogram of wait times, aborts by {@link AbortReason}, and waits and aborts per
+ * page and per table ({@link Contention}); these are only updated by requests that
+ * have to wait, so an uncontended request costs no more than before.
+ * {@link #getWaitsFor} shows who is waiting for whom right now.
+ */
 public class LockManagerImpl implements LockManager {
 
-    private HashMap<PageId,LockTableEntry> lockTable;
+    /**
+     * How the lock manager keeps transactions from waiting for each other forever.
+     * Transactions are ordered by {@link TransactionId#getId()}: a lower id is older.
+     */
+    public enum DeadlockPolicy {
+        /**
+         * Requests wait; the youngest transaction on a cycle of the wait-for graph
+         * is aborted.
+         */
+        DETECT,
+        /**
+         * An older transaction waits for a younger one; a younger transaction
+         * requesting a lock held (or requested first) by an older one is aborted
+         * ("dies").
+         */
+        WAIT_DIE,
+        /**
+         * A younger transaction waits for an older one; an older transaction
+         * requesting a lock held (or requested first) by a younger one aborts
+         * ("wounds") it.  A wounded transaction that is waiting is aborted right
+         * away, otherwise when it next requests a lock.
+         */
+        WOUND_WAIT
+    }
+
+    /**
+     * Why a transaction was aborted by the lock manager (see
+     * {@link #getAbortCount(AbortReason)}).  There are no timeouts: a transaction
+     * that merely waits is never aborted.
+     */
+    public enum AbortReason {
+        /**
+         * The youngest transaction on a cycle of the wait-for graph
+         * ({@link DeadlockPolicy#DETECT}).
+         */
+        DEADLOCK,
+        /**
+         * As DEADLOCK, but the victim was waiting to upgrade a lock it held, e.g.,
+         * one of two readers of a page that both try to write it.  Many of these
+         * suggest taking the stronger lock up front.
+         */
+        UPGRADE_DEADLOCK,
+        /**
+         * A younger transaction that requested a lock held by an older one
+         * ({@link DeadlockPolicy#WAIT_DIE}).
+         */
+        DIED,
+        /**
+         * A transaction wounded by an older one ({@link DeadlockPolicy#WOUND_WAIT}).
+         */
+        WOUNDED
+    }
+
+    /**
+     * The number of buckets of the wait time histogram (see {@link #getWaitHistogram}).
+     */
+    public static final int HISTOGRAM_BUCKETS = 40;
+
+    /**
+     * How often a waiting request checks again for a deadlock.
+     */
+    static final long DETECTION_INTERVAL_MILLIS = 100;
+
+    /**
+     * The default number of page locks a transaction may hold on a table before the
+     * manager tries to escalate to a table lock.
+     */
+    public static final int DEFAULT_ESCALATION_THRESHOLD = 1000;
 
+    private final DeadlockPolicy policy;
+    private final int escalationThreshold;
+
+    private final ConcurrentHashMap<Object, LockTableEntry> lockTable;     // PageId or Integer table id -> entry
+    private final ConcurrentHashMap<TransactionId, HeldLocks> locksByTid;
+    /**
+     * The waiting requests of each transaction that is waiting for a lock; a
+     * transaction has more than one if several threads work for it.
+     */
+    private final ConcurrentHashMap<TransactionId, Set<LockTableEntry.LockRequest>> waiting;
+    /**
+     * Serializes deadlock detection so that two threads finding the same cycle
+     * abort only one transaction.
+     */
+    private final Object detector = new Object();
+    /**
+     * Transactions wounded under {@link DeadlockPolicy#WOUND_WAIT} that have not
+     * yet noticed.
+     */
+    private final Set<TransactionId> wounded = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder waitCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder abortCount = new LongAdder();
+    private final LongAdder escalationCount = new LongAdder();
+    private final LongAdder[] abortsByReason = newAdders(AbortReason.values().length);
+    private final LongAdder[] waitHistogram = newAdders(HISTOGRAM_BUCKETS);
+    /**
+     * Contention per page and per table, recorded only when a request has to wait,
+     * so that uncontended requests cost nothing extra.  Waits for record locks count
+     * toward their page.
+     */
+    private final ConcurrentHashMap<PageId, Contention> pageContention =
+            new ConcurrentHashMap<PageId, Contention>();
+    private final ConcurrentHashMap<Integer, Contention> tableContention =
+            new ConcurrentHashMap<Integer, Contention>();
 
     public LockManagerImpl() {
-        this.lockTable = new HashMap<PageId, LockTableEntry>();
+        this(DeadlockPolicy.DETECT);
+    }
+
+    public LockManagerImpl(DeadlockPolicy policy) {
+        this(policy, DEFAULT_ESCALATION_THRESHOLD);
+    }
+
+    /**
+     * @param escalationThreshold the number of page locks a transaction may hold on
+     *                            a table before the manager tries to escalate
+     */
+    public LockManagerImpl(DeadlockPolicy policy, int escalationThreshold) {
+        if (escalationThreshold < 1) {
+            throw new IllegalArgumentException("escalation threshold must be positive");
+        }
+        this.policy = policy;
+        this.escalationThreshold = escalationThreshold;
+        this.lockTable = new ConcurrentHashMap<Object, LockTableEntry>();
+        this.locksByTid = new ConcurrentHashMap<TransactionId, HeldLocks>();
+        this.waiting = new ConcurrentHashMap<TransactionId, Set<LockTableEntry.LockRequest>>();
+    }
+
+    public DeadlockPolicy getPolicy() {
+        return policy;
     }
 
     @Override
     public void acquireLock(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException {
-        // If PID isn't already in lockTable, add it
-        synchronized (lockTable){
-            if (!lockTable.containsKey(pid)){
-                lockTable.put(pid,  new LockTableEntry());
-            }
-        }
-
-        // Add TID to list of requests - Front if exclusive, End if otherwise
-        LockTableEntry pageLock = lockTable.get(pid);
-        pageLock.addNewRequest(perm ,tid);
-
-        // initiate locking mechanism
-        long sleepTime = ThreadLocalRandom.current().nextInt(100, 200 + 1);
-        long timeWaited = 0;
-        long startTime = System.currentTimeMillis();
-
-        boolean waiting = true;
-        while (waiting) {
-            synchronized (this) {
-                // CAN ONLY ACQUIRE LOCK IF FIRST IN QUEUE
-                if (pageLock.getFirstTid() == tid || pageLock.getFirstPerm() == 0 || pageLock.upgradeGranted(tid)) {
-                    // IF LOCK ISN'T HELD, ACQUIRE LOCK
-                    if (pageLock.getLockType() == null) {
-                        pageLock.addNewLock(perm, tid);
-                        pageLock.clearFirstRequest(tid, perm);
-                        lockTable.replace(pid, pageLock);
-                        waiting = false;
+        requestCount.increment();
+        checkWounded(tid);
+        HeldLocks held = locksByTid.computeIfAbsent(tid, t -> new HeldLocks());
+        lockPage(tid, held, pid, LockMode.of(perm));
+    }
+
+    @Override
+    public void acquireRecordLock(TransactionId tid, RecordId rid, Permissions perm)
+            throws TransactionAbortedException {
+        requestCount.increment();
+        checkWounded(tid);
+        HeldLocks held = locksByTid.computeIfAbsent(tid, t -> new HeldLocks());
+        LockMode mode = LockMode.of(perm);
+        PageId pid = rid.getPageId();
+        if (implies(held.tableMode(pid.getTableId()), mode) || implies(held.pageMode(pid), mode)) {
+            return;
+        }
+        lockPage(tid, held, pid, mode.intention());
+        if (implies(held.tableMode(pid.getTableId()), mode)) {
+            return;     // escalated
+        }
+        try {
+            lock(tid, rid, mode);
+        } catch (TransactionAbortedException e) {
+            releaseUnusedIntention(tid, pid, held);
+            throw e;
+        }
+        held.addRecord(rid);
+    }
+
+    /**
+     * @return true if a lock in mode held on a table (or page) covers a lock in mode
+     * on one of its pages (or records)
+     */
+    private static boolean implies(LockMode held, LockMode mode) {
+        return held != null && held.implied() != null && held.implied().covers(mode);
+    }
+
+    /**
+     * Locks a page, after locking its table in the corresponding intention mode, and
+     * escalates if tid now holds too many page locks on the table.
+     */
+    private void lockPage(TransactionId tid, HeldLocks held, PageId pid, LockMode mode)
+            throws TransactionAbortedException {
+        int tableid = pid.getTableId();
+        LockMode tableMode = held.tableMode(tableid);
+        LockMode pageMode = held.pageMode(pid);
+        if (implies(tableMode, mode) || (pageMode != null && pageMode.covers(mode))) {
+            return;
+        }
+        try {
+            if (tableMode == null || !tableMode.covers(mode.intention())) {
+                lock(tid, tableid, mode.intention());
+                held.addTable(tableid, mode.intention());
+            }
+            lock(tid, pid, mode);
+        } catch (TransactionAbortedException e) {
+            releaseUnusedIntention(tid, tableid, held);
+            throw e;
+        }
+        int n = held.addPage(pid, mode);
+        if (pageMode == null && n > escalationThreshold && (n - 1) % escalationThreshold == 0) {
+            escalate(tid, tableid, held);
+        }
+    }
+
+    @Override
+    public void acquireTableLock(TransactionId tid, int tableid, LockMode mode) throws TransactionAbortedException {
+        requestCount.increment();
+        checkWounded(tid);
+        HeldLocks held = locksByTid.computeIfAbsent(tid, t -> new HeldLocks());
+        LockMode tableMode = held.tableMode(tableid);
+        if (tableMode != null && tableMode.covers(mode)) {
+            return;
+        }
+        lock(tid, tableid, mode);
+        held.addTable(tableid, mode);
+    }
+
+    /**
+     * Tries to replace tid's page locks on the table with a table lock, without
+     * waiting.  Tries again after every escalationThreshold more page locks.
+     */
+    private void escalate(TransactionId tid, int tableid, HeldLocks held) {
+        LockMode target = held.tableMode(tableid) == LockMode.IS ? LockMode.S : LockMode.X;
+        LockTableEntry entry = lockTable.get(tableid);
+        if (entry == null || !entry.tryRequest(tid, target)) {
+            return;
+        }
+        held.addTable(tableid, target);
+        escalationCount.increment();
+        for (Object key : held.removeTable(tableid, false)) {
+            release(tid, key);
+        }
+    }
+
+    private void checkWounded(TransactionId tid) throws TransactionAbortedException {
+        if (!wounded.isEmpty() && wounded.remove(tid)) {
+            throw aborted(AbortReason.WOUNDED);
+        }
+    }
+
+    /**
+     * Acquires the lock identified by key (a RecordId, PageId or Integer table id) in the
+     * given mode, waiting if necessary.
+     */
+    private void lock(TransactionId tid, Object key, LockMode mode) throws TransactionAbortedException {
+        LockTableEntry entry;
+        LockTableEntry.LockRequest request;
+        do {
+            entry = lockTable.computeIfAbsent(key, k -> new LockTableEntry());
+            request = entry.request(tid, mode);
+        } while (request == LockTableEntry.RETIRED);
+        if (request != null) {
+            await(tid, key, entry, request);
+        }
+    }
+
+    /**
+     * Waits until request is granted.
+     *
+     * @throws TransactionAbortedException if the request is aborted to break (or
+     * prevent) a deadlock
+     */
+    private void await(TransactionId tid, Object key, LockTableEntry entry,
+                       LockTableEntry.LockRequest request) throws TransactionAbortedException {
+        waitCount.increment();
+        long start = System.nanoTime();
+        boolean upgrade = entry.getLockMode(tid) != null;
+        waiting.computeIfAbsent(tid, t -> ConcurrentHashMap.newKeySet()).add(request);
+        try {
+            long interval = TimeUnit.MILLISECONDS.toNanos(DETECTION_INTERVAL_MILLIS);
+            while (!request.granted) {
+                avoidDeadlock(tid, request);
+                if (request.aborted) {
+                    wounded.remove(tid);
+                    throw aborted(reason(request, upgrade));
+                }
+                LockSupport.parkNanos(entry, interval);
+                if (request.aborted) {
+                    wounded.remove(tid);
+                    throw aborted(reason(request, upgrade));
+                }
+            }
+        } finally {
+            waiting.computeIfPresent(tid, (t, requests) -> {
+                requests.remove(request);
+                return requests.isEmpty() ? null : requests;
+            });
+            recordWait(key, System.nanoTime() - start, request.aborted);
+            if (request.aborted) {
+                retireIfIdle(key);
+            }
+        }
+    }
+
+    private static AbortReason reason(LockTableEntry.LockRequest request, boolean upgrade) {
+        AbortReason reason = request.reason == null ? AbortReason.DEADLOCK : request.reason;
+        return reason == AbortReason.DEADLOCK && upgrade ? AbortReason.UPGRADE_DEADLOCK : reason;
+    }
+
+    private TransactionAbortedException aborted(AbortReason reason) {
+        abortCount.increment();
+        abortsByReason[reason.ordinal()].increment();
+        return new TransactionAbortedException();
+    }
+
+    /**
+     * Adds a wait for the lock identified by key to the statistics.
+     */
+    private void recordWait(Object key, long nanos, boolean aborted) {
+        waitNanos.add(nanos);
+        int bucket = 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+        waitHistogram[Math.min(bucket, HISTOGRAM_BUCKETS - 1)].increment();
+        PageId pid = key instanceof RecordId ? ((RecordId) key).getPageId()
+                : key instanceof PageId ? (PageId) key : null;
+        int tableid = pid != null ? pid.getTableId() : (Integer) key;
+        if (pid != null) {
+            pageContention.computeIfAbsent(pid, k -> new Contention()).add(nanos, aborted);
+        }
+        tableContention.computeIfAbsent(tableid, k -> new Contention()).add(nanos, aborted);
+    }
+
+    /**
+     * Applies the deadlock policy to a waiting request, which may abort it or other
+     * transactions.
+     */
+    private void avoidDeadlock(TransactionId tid, LockTableEntry.LockRequest request) {
+        switch (policy) {
+            case DETECT:
+                detectDeadlock(tid);
+                break;
+            case WAIT_DIE:
+                for (TransactionId blocker : request.blockers()) {
+                    if (blocker.getId() < tid.getId()) {
+                        request.abort(AbortReason.DIED);
+                        return;
+                    }
+                }
+                break;
+            case WOUND_WAIT:
+                for (TransactionId blocker : request.blockers()) {
+                    if (blocker.getId() > tid.getId()) {
+                        wound(blocker);
                     }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Aborts the waiting requests of tid and makes its next request fail.
+     */
+    private void wound(TransactionId tid) {
+        wounded.add(tid);
+        Set<LockTableEntry.LockRequest> requests = waiting.get(tid);
+        if (requests != null) {
+            for (LockTableEntry.LockRequest r : requests) {
+                r.abort(AbortReason.WOUNDED);
+            }
+        }
+    }
 
-                    int curLockType = pageLock.getLockType().permLevel;
-                    int requestingLockType = perm.permLevel;
-
-                    // REQUESTS SHARED LOCK
-                    if (requestingLockType == 0) {
-                        // NO CURRENT REQUESTS AND LOCK ISN'T EXCLUSIVE - ACQUIRE
-                        if (pageLock.isFirstRequest(tid) && curLockType != 1) {
-                            pageLock.addNewLock(perm, tid);
-                            pageLock.removeFirstRequest();
-                            waiting = false;
-                            this.notifyAll();
-                        }
+    /**
+     * Aborts the youngest transaction on each cycle of the wait-for graph through
+     * tid until there is none left (or tid itself is aborted).
+     */
+    private void detectDeadlock(TransactionId tid) {
+        synchronized (detector) {
+            List<TransactionId> cycle;
+            while (waiting.containsKey(tid) && (cycle = findCycle(tid)) != null) {
+                TransactionId victim = cycle.get(0);
+                for (TransactionId t : cycle) {
+                    if (t.getId() > victim.getId()) {
+                        victim = t;
                     }
-                    // REQUESTS EXCLUSIVE LOCK
-                    if (requestingLockType == 1) {
-                        // FIRST REQUEST AND LOCK ISN'T HELD - ACQUIRE
-                        if (pageLock.isFirstRequest(tid) && pageLock.getLockType() == null) {
-                            pageLock.addNewLock(perm, tid);
-                            pageLock.removeFirstRequest();
-                            lockTable.replace(pid, pageLock);
-                            waiting = false;
-                        }
-                        // UPGRADE FROM SHARED TO EXCLUSIVE - ACQUIRE
-                        else if (curLockType == 0 && pageLock.getLockHolders().contains(tid)) {
-                            pageLock.setPermission(perm);
-                            pageLock.clearFirstRequest(tid, perm);
-                            waiting = false;
-                        }
+                }
+                Set<LockTableEntry.LockRequest> requests = waiting.remove(victim);
+                if (requests != null) {
+                    for (LockTableEntry.LockRequest r : requests) {
+                        r.abort(AbortReason.DEADLOCK);
                     }
-                    // WAIT IF UNABLE TO ACQUIRE LOCK
-                    if (waiting) {
-                        try {
-                            this.wait(sleepTime);
-                            long currentTime = System.currentTimeMillis();
-                            timeWaited = currentTime - startTime; // Total amount of time transaction has been waiting for lock
-                            if (timeWaited >= 1000) {
-                                if (pageLock.getLockType() == null) {
-                                    // do nothing
-                                }
-                                else { // ABORT TRANSACTION
-                                    pageLock.clearFirstRequest(tid, perm);
-                                    throw new TransactionAbortedException();
-                                }
-                            }
-                        } catch (InterruptedException e) {};
+                }
+                if (victim.equals(tid)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the transactions on a cycle of the wait-for graph from tid back to
+     * itself, or null if there is none
+     */
+    private List<TransactionId> findCycle(TransactionId tid) {
+        List<TransactionId> path = new ArrayList<TransactionId>();
+        path.add(tid);
+        return findCycle(tid, path, new HashSet<TransactionId>()) ? path : null;
+    }
+
+    /**
+     * Depth-first search from the last transaction on path; on success path holds
+     * the cycle.
+     */
+    private boolean findCycle(TransactionId start, List<TransactionId> path, Set<TransactionId> visited) {
+        Set<LockTableEntry.LockRequest> requests = waiting.get(path.get(path.size() - 1));
+        if (requests == null) {
+            return false;
+        }
+        for (LockTableEntry.LockRequest r : requests) {
+            for (TransactionId blocker : r.blockers()) {
+                if (blocker.equals(start)) {
+                    return true;
+                }
+                if (visited.add(blocker)) {
+                    path.add(blocker);
+                    if (findCycle(start, path, visited)) {
+                        return true;
                     }
+                    path.remove(path.size() - 1);
                 }
             }
         }
+        return false;
+    }
+
+    /**
+     * @return the number of calls to acquireLock so far
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * @return the number of lock requests so far that could not be granted right away
+     */
+    public long getWaitCount() {
+        return waitCount.sum();
+    }
+
+    /**
+     * @return the total time in nanoseconds that lock requests have waited so far
+     */
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    /**
+     * @return the number of lock requests so far that threw TransactionAbortedException
+     */
+    public long getAbortCount() {
+        return abortCount.sum();
+    }
+
+    /**
+     * @return the number of lock requests so far that threw TransactionAbortedException
+     * for the given reason
+     */
+    public long getAbortCount(AbortReason reason) {
+        return abortsByReason[reason.ordinal()].sum();
+    }
+
+    /**
+     * @return the number of times so far that page locks were escalated to a table lock
+     */
+    public long getEscalationCount() {
+        return escalationCount.sum();
+    }
+
+    /**
+     * Returns a histogram of the time lock requests have waited so far: element i is
+     * the number of waits that took at least 2^i and less than 2^(i+1) nanoseconds
+     * (the last element counts all longer waits, the first all shorter ones).
+     */
+    public long[] getWaitHistogram() {
+        long[] histogram = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram[i] = waitHistogram[i].sum();
+        }
+        return histogram;
     }
 
+    /**
+     * @return the contention for each page for which a lock request (on the page or
+     * one of its records) has had to wait so far
+     */
+    public Map<PageId, Contention> getPageContention() {
+        return Collections.unmodifiableMap(pageContention);
+    }
 
+    /**
+     * @return the contention for each table for which a lock request (on the table or
+     * one of its pages or records) has had to wait so far
+     */
+    public Map<Integer, Contention> getTableContention() {
+        return Collections.unmodifiableMap(tableContention);
+    }
+
+    /**
+     * @return the n pages with the longest total wait time so far, longest first
+     */
+    public List<PageId> getHottestPages(int n) {
+        List<Map.Entry<PageId, Contention>> entries =
+                new ArrayList<Map.Entry<PageId, Contention>>(pageContention.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().getWaitNanos(), a.getValue().getWaitNanos()));
+        List<PageId> hottest = new ArrayList<PageId>();
+        for (int i = 0; i < n && i < entries.size(); i++) {
+            hottest.add(entries.get(i).getKey());
+        }
+        return hottest;
+    }
 
-    public synchronized boolean holdsLock(TransactionId tid, PageId pid, Permissions perm) {
-        if (lockTable.containsKey(pid)){
-            LockTableEntry pageLock = lockTable.get(pid);
-            if (pageLock.getLockHolders().contains(tid)) {
-                return pageLock.getLockType().permLevel >= perm.permLevel;
+    /**
+     * Returns the current wait-for graph: for each waiting transaction, the
+     * transactions it waits for.  The graph is read one transaction at a time while
+     * others keep going, so it need not be consistent as a whole.
+     */
+    public Map<TransactionId, Set<TransactionId>> getWaitsFor() {
+        Map<TransactionId, Set<TransactionId>> graph = new HashMap<TransactionId, Set<TransactionId>>();
+        for (Map.Entry<TransactionId, Set<LockTableEntry.LockRequest>> e : waiting.entrySet()) {
+            Set<TransactionId> blockers = new HashSet<TransactionId>();
+            for (LockTableEntry.LockRequest r : e.getValue()) {
+                blockers.addAll(r.blockers());
             }
-            else {
-                return false;
+            if (!blockers.isEmpty()) {
+                graph.put(e.getKey(), blockers);
             }
         }
-        return false;
+        return graph;
+    }
+
+    /**
+     * Resets all statistics to zero, e.g., to profile a new phase of a workload.
+     */
+    public void resetStatistics() {
+        for (LongAdder adder : new LongAdder[]{requestCount, waitCount, waitNanos, abortCount, escalationCount}) {
+            adder.reset();
+        }
+        for (LongAdder adder : abortsByReason) {
+            adder.reset();
+        }
+        for (LongAdder adder : waitHistogram) {
+            adder.reset();
+        }
+        pageContention.clear();
+        tableContention.clear();
+    }
+
+    private static LongAdder[] newAdders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    @Override
+    public boolean holdsLock(TransactionId tid, PageId pid, Permissions perm) {
+        LockMode mode = LockMode.of(perm);
+        return implies(lockMode(tid, pid.getTableId()), mode) || covers(lockMode(tid, pid), mode);
+    }
+
+    @Override
+    public boolean holdsRecordLock(TransactionId tid, RecordId rid, Permissions perm) {
+        LockMode mode = LockMode.of(perm);
+        PageId pid = rid.getPageId();
+        return implies(lockMode(tid, pid.getTableId()), mode) || implies(lockMode(tid, pid), mode)
+                || covers(lockMode(tid, rid), mode);
+    }
+
+    @Override
+    public boolean holdsTableLock(TransactionId tid, int tableid, LockMode mode) {
+        return covers(lockMode(tid, tableid), mode);
+    }
+
+    private static boolean covers(LockMode held, LockMode mode) {
+        return held != null && held.covers(mode);
+    }
+
+    /**
+     * @return the mode in which tid holds the lock identified by key, or null
+     */
+    private LockMode lockMode(TransactionId tid, Object key) {
+        LockTableEntry entry = lockTable.get(key);
+        return entry == null ? null : entry.getLockMode(tid);
     }
 
+    /**
+     * Releases tid's lock on the page, and its locks on records of the page.  A page
+     * that is only locked through tid's lock on its table stays locked until the
+     * table lock is released.  Releasing tid's last page lock on a table also
+     * releases its intention lock (IS or IX) on the table, which only served to
+     * protect the page locks.
+     */
     @Override
-    public synchronized void releaseLock(TransactionId tid, PageId pid) {
-        LockTableEntry pageLock = lockTable.get(pid);
-        if (pageLock == null) {
+    public void releaseLock(TransactionId tid, PageId pid) {
+        LockTableEntry entry = lockTable.get(pid);
+        HeldLocks held = locksByTid.get(tid);
+        if (entry == null || !entry.txHoldsLock(tid)) {
+            if (held != null && implies(held.tableMode(pid.getTableId()), LockMode.S)) {
+                return;
+            }
             throw new LockManagerException("This transaction does not hold a lock on this page");
         }
-        if (pageLock.getLockType() == null) {
-            throw new LockManagerException("This transaction does not hold a lock on this page");
+        if (held != null) {
+            for (RecordId rid : held.removeRecords(pid)) {
+                release(tid, rid);
+            }
         }
-        if (pageLock.getLockHolders().contains(tid)) {
-            pageLock.releaseLockForTid(tid);
-            this.notifyAll();
+        entry.release(tid);
+        retireIfIdle(pid);
+        if (held != null && held.removePage(pid) == 0) {
+            releaseUnusedIntention(tid, pid.getTableId(), held);
         }
-        else {
-            throw new LockManagerException("This transaction does not hold a lock on this page");
+    }
+
+    /**
+     * Releases tid's intention lock (IS or IX) on the page if it no longer protects
+     * any record locks, and then its intention lock on the table likewise.
+     */
+    private void releaseUnusedIntention(TransactionId tid, PageId pid, HeldLocks held) {
+        LockMode pageMode = held.pageMode(pid);
+        if ((pageMode == LockMode.IS || pageMode == LockMode.IX) && held.recordCount(pid) == 0) {
+            release(tid, pid);
+            if (held.removePage(pid) == 0) {
+                releaseUnusedIntention(tid, pid.getTableId(), held);
+            }
+        }
+    }
+
+    /**
+     * Releases tid's intention lock (IS or IX) on the table if it no longer
+     * protects any page locks, and forgets tid if it holds no locks at all.
+     */
+    private void releaseUnusedIntention(TransactionId tid, int tableid, HeldLocks held) {
+        LockMode tableMode = held.tableMode(tableid);
+        if ((tableMode == LockMode.IS || tableMode == LockMode.IX) && held.pageCount(tableid) == 0) {
+            held.removeTable(tableid, true);
+            release(tid, tableid);
+        }
+        if (held.isEmpty()) {
+            locksByTid.remove(tid, held);
         }
     }
 
     @Override
-    public synchronized List<PageId> getPagesForTid(TransactionId tid) {
-        List<PageId> pages = new ArrayList<PageId>();
-        for (PageId pid : lockTable.keySet()) {
-            LockTableEntry pageLock = lockTable.get(pid);
-            if (pageLock.txHoldsLock(tid)) {
-                pages.add(pid);
-            }
+    public void releaseAllLocks(TransactionId tid) {
+        wounded.remove(tid);
+        HeldLocks held = locksByTid.remove(tid);
+        if (held == null) {
+            return;
+        }
+        for (RecordId rid : held.records()) {
+            release(tid, rid);
+        }
+        for (PageId pid : held.pages()) {
+            release(tid, pid);
+        }
+        for (Integer tableid : held.tables()) {
+            release(tid, tableid);
+        }
+    }
+
+    private void release(TransactionId tid, Object key) {
+        LockTableEntry entry = lockTable.get(key);
+        if (entry != null && entry.txHoldsLock(tid)) {
+            entry.release(tid);
+            retireIfIdle(key);
+        }
+    }
+
+    /**
+     * Removes the entry for key from the lock table if no one holds or waits for
+     * the lock.
+     */
+    private void retireIfIdle(Object key) {
+        lockTable.computeIfPresent(key, (k, entry) -> entry.retireIfIdle() ? null : entry);
+    }
+
+    @Override
+    public List<PageId> getPagesForTid(TransactionId tid) {
+        HeldLocks held = locksByTid.get(tid);
+        if (held == null) {
+            return new ArrayList<PageId>();
         }
-        return pages;
+        return held.pages();
     }
 
     @Override
-    public synchronized List<TransactionId> getTidsForPage(PageId pid) {
-        LockTableEntry pageLock = lockTable.get(pid);
-        List<TransactionId> tids = new ArrayList<TransactionId>(pageLock.getLockHolders());
-        return tids;
+    public List<TransactionId> getTidsForPage(PageId pid) {
+        LockTableEntry entry = lockTable.get(pid);
+        if (entry == null) {
+            return new ArrayList<TransactionId>();
+        }
+        return entry.getLockHolders();
+    }
+
+    /**
+     * The contention for one page or table: how often and how long lock requests
+     * have waited for it, and how many of those were aborted.
+     */
+    public static final class Contention {
+        private final LongAdder waits = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder aborts = new LongAdder();
+
+        void add(long nanos, boolean aborted) {
+            waits.increment();
+            waitNanos.add(nanos);
+            if (aborted) {
+                aborts.increment();
+            }
+        }
+
+        public long getWaitCount() {
+            return waits.sum();
+        }
+
+        public long getWaitNanos() {
+            return waitNanos.sum();
+        }
+
+        public long getAbortCount() {
+            return aborts.sum();
+        }
+
+        public String toString() {
+            return "Contention[waits=" + getWaitCount() + ", waitNanos=" + getWaitNanos()
+                    + ", aborts=" + getAbortCount() + "]";
+        }
     }
 
+    /**
+     * The locks one transaction holds: its record locks, grouped by page so that the
+     * locks on a page's records are released in one step, the mode of each of its
+     * page and table locks, and how many pages of each table it has locked.  Only
+     * the transaction's own threads use it, so its monitor is not contended.
+     */
+    private static class HeldLocks {
+        private final Map<PageId, Set<RecordId>> records = new HashMap<PageId, Set<RecordId>>();
+        private final Map<PageId, LockMode> pageModes = new HashMap<PageId, LockMode>();
+        private final Map<Integer, LockMode> tableModes = new HashMap<Integer, LockMode>();
+        private final Map<Integer, int[]> pageCounts = new HashMap<Integer, int[]>();
+
+        synchronized LockMode tableMode(int tableid) {
+            return tableModes.get(tableid);
+        }
+
+        synchronized LockMode pageMode(PageId pid) {
+            return pageModes.get(pid);
+        }
+
+        synchronized void addTable(int tableid, LockMode mode) {
+            tableModes.merge(tableid, mode, LockMode::join);
+        }
+
+        /**
+         * @return the number of pages of pid's table now locked
+         */
+        synchronized int addPage(PageId pid, LockMode mode) {
+            int[] count = pageCounts.computeIfAbsent(pid.getTableId(), t -> new int[1]);
+            LockMode held = pageModes.get(pid);
+            if (held == null) {
+                pageModes.put(pid, mode);
+                count[0]++;
+            } else {
+                pageModes.put(pid, held.join(mode));
+            }
+            return count[0];
+        }
+
+        synchronized void addRecord(RecordId rid) {
+            records.computeIfAbsent(rid.getPageId(), p -> new HashSet<RecordId>()).add(rid);
+        }
+
+        synchronized int pageCount(int tableid) {
+            int[] count = pageCounts.get(tableid);
+            return count == null ? 0 : count[0];
+        }
+
+        synchronized int recordCount(PageId pid) {
+            Set<RecordId> rids = records.get(pid);
+            return rids == null ? 0 : rids.size();
+        }
+
+        /**
+         * @return the number of pages of pid's table still locked, or -1 if pid was
+         * not locked
+         */
+        synchronized int removePage(PageId pid) {
+            if (pageModes.remove(pid) == null) {
+                return -1;
+            }
+            return --pageCounts.get(pid.getTableId())[0];
+        }
+
+        /**
+         * Forgets the locks on the records of a page.
+         *
+         * @return the records that were locked
+         */
+        synchronized Collection<RecordId> removeRecords(PageId pid) {
+            Set<RecordId> removed = records.remove(pid);
+            return removed == null ? Collections.<RecordId>emptySet() : removed;
+        }
+
+        /**
+         * Forgets the record and page locks on a table, e.g., once they have been
+         * escalated, and also the table lock itself if withTable is set.
+         *
+         * @return the records and pages that were locked
+         */
+        synchronized List<Object> removeTable(int tableid, boolean withTable) {
+            List<Object> removed = new ArrayList<Object>();
+            for (Iterator<Set<RecordId>> it = records.values().iterator(); it.hasNext(); ) {
+                Set<RecordId> rids = it.next();
+                if (rids.iterator().next().getPageId().getTableId() == tableid) {
+                    removed.addAll(rids);
+                    it.remove();
+                }
+            }
+            for (Iterator<PageId> it = pageModes.keySet().iterator(); it.hasNext(); ) {
+                PageId pid = it.next();
+                if (pid.getTableId() == tableid) {
+                    removed.add(pid);
+                    it.remove();
+                }
+            }
+            pageCounts.remove(tableid);
+            if (withTable) {
+                tableModes.remove(tableid);
+            }
+            return removed;
+        }
+
+        synchronized boolean isEmpty() {
+            return records.isEmpty() && pageModes.isEmpty() && tableModes.isEmpty();
+        }
+
+        synchronized List<RecordId> records() {
+            List<RecordId> all = new ArrayList<RecordId>();
+            for (Set<RecordId> rids : records.values()) {
+                all.addAll(rids);
+            }
+            return all;
+        }
+
+        synchronized List<PageId> pages() {
+            return new ArrayList<PageId>(pageModes.keySet());
+        }
+
+        synchronized List<Integer> tables() {
+            return new ArrayList<Integer>(tableModes.keySet());
+        }
+    }
 }
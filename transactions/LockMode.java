@@ -0,0 +1,101 @@
+package colgatedb.transactions;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * The modes of a lock in the multi-granularity locking protocol (see the textbook,
+ * Ch. 17).  A transaction locks a table in S or X mode to read or write all of it,
+ * or in an intention mode (IS, IX, or SIX for reading all of it and writing some)
+ * before locking some of its pages in S or X mode.  Likewise, a page is locked in S
+ * or X mode, or in IS or IX mode before locking some of its records.  Records are
+ * only locked in S ({@link Permissions#READ_ONLY}) or X
+ * ({@link Permissions#READ_WRITE}) mode.
+ */
+public enum LockMode {
+    IS, IX, S, SIX, X;
+
+    private static final boolean[][] COMPATIBLE = {
+            //  IS     IX     S      SIX    X
+            {true, true, true, true, false},        // IS
+            {true, true, false, false, false},      // IX
+            {true, false, true, false, false},      // S
+            {true, false, false, false, false},     // SIX
+            {false, false, false, false, false}     // X
+    };
+
+    private static final LockMode[][] JOIN = {
+            //  IS   IX   S    SIX  X
+            {IS, IX, S, SIX, X},        // IS
+            {IX, IX, SIX, SIX, X},      // IX
+            {S, SIX, S, SIX, X},        // S
+            {SIX, SIX, SIX, SIX, X},    // SIX
+            {X, X, X, X, X}             // X
+    };
+
+    /**
+     * @return the page lock mode giving perm
+     */
+    public static LockMode of(Permissions perm) {
+        return perm == Permissions.READ_WRITE ? X : S;
+    }
+
+    /**
+     * @return true if one transaction may hold a lock in this mode while another
+     * holds it in mode other
+     */
+    public boolean isCompatible(LockMode other) {
+        return COMPATIBLE[ordinal()][other.ordinal()];
+    }
+
+    /**
+     * @return the weakest mode that allows everything this mode and other allow,
+     * e.g., SIX for S and IX
+     */
+    public LockMode join(LockMode other) {
+        return JOIN[ordinal()][other.ordinal()];
+    }
+
+    /**
+     * @return true if this mode allows everything other allows
+     */
+    public boolean covers(LockMode other) {
+        return join(other) == this;
+    }
+
+    /**
+     * @return the mode this lock implicitly gives on everything below it (S for S and
+     * SIX, X for X), or null for IS and IX
+     */
+    public LockMode implied() {
+        switch (this) {
+            case S:
+            case SIX:
+                return S;
+            case X:
+                return X;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the mode in which a table (or page) must be locked before locking one
+     * of its pages (or records) in this mode: IS for IS and S, IX otherwise
+     */
+    public LockMode intention() {
+        return this == S || this == IS ? IS : IX;
+    }
+}
@@ -1,10 +1,12 @@
 package colgatedb.transactions;
 
-import colgatedb.page.PageId;
-
-import java.security.Permission;
-import java.util.*;
-import java.util.concurrent.locks.Lock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * ColgateDB
@@ -22,161 +24,290 @@ import java.util.concurrent.locks.Lock;
  */
 
 /**
- * Represents the state associated with the lock on a particular page.
+ * Represents the state associated with the lock on a particular page or table.
+ * Each holder holds the lock in one {@link LockMode}; the entry keeps a count of
+ * the holders in each mode so that checking a request against them takes
+ * constant time, however many transactions hold the lock (e.g., IS on a popular
+ * table).
+ * <p>
+ * An entry is its own monitor: all of its methods synchronize on it and nothing
+ * else, so requests for different pages never contend.  Requests that cannot be
+ * granted right away wait in a FIFO queue.  Whenever the lock is released (or a
+ * waiting request is aborted), the entry grants the requests at the head of the
+ * queue that are now compatible and unparks exactly their threads; waiters are
+ * never woken just to find that they still have to wait.
+ * <p>
+ * A holder's request to strengthen its lock (e.g., from S to X) is granted at once
+ * if it is compatible with the other holders; otherwise it goes ahead of all other
+ * waiting requests, since they would otherwise wait for it anyway.
+ * <p>
+ * A waiting request waits for the holders whose locks conflict with it and for
+ * the requests ahead of it in the queue ({@link LockRequest#blockers}); these are
+ * its edges in the wait-for graph the lock manager checks for deadlocks.
+ * <p>
+ * An entry that nobody holds or waits for is removed from the lock table
+ * ({@link #retireIfIdle}); a request that finds its entry retired gets
+ * {@link #RETIRED} and looks the lock up again.
  */
 public class LockTableEntry {
 
-    // some suggested private instance variables; feel free to modify
-    private Permissions lockType;             // null if no one currently has a lock
-    private Set<TransactionId> lockHolders;   // a set of txns currently holding a lock on this page
-    private List<LockRequest> requests;       // a queue of outstanding requests
+    private static final LockMode[] MODES = LockMode.values();
 
-    public LockTableEntry() {
-        lockType = null;
-        lockHolders = new HashSet<>();
-        requests = new LinkedList<>();
-    }
+    /**
+     * Returned by {@link #request} if the entry has been removed from the lock table.
+     */
+    static final LockRequest RETIRED = new LockTableEntry().new LockRequest(null, null, null);
 
+    private final Map<TransactionId, LockMode> lockHolders = new HashMap<>();  // txns currently holding the lock
+    private final int[] modeCounts = new int[MODES.length];        // number of holders in each mode
+    private final LinkedList<LockRequest> requests = new LinkedList<>();   // waiting requests, in the order they are granted
+    private boolean retired;
 
-    public synchronized Set<TransactionId> getLockHolders() {
-        return this.lockHolders;
+    /**
+     * Grants the lock if possible without waiting.
+     *
+     * @return null if the lock has been granted (or tid already held it in a mode
+     * covering mode), {@link #RETIRED} if the entry is no longer in the lock table,
+     * or the queued request to wait on otherwise
+     */
+    synchronized LockRequest request(TransactionId tid, LockMode mode) {
+        if (retired) {
+            return RETIRED;
+        }
+        LockMode held = lockHolders.get(tid);
+        if (held != null) {
+            if (held.covers(mode)) {
+                return null;
+            }
+            LockMode target = held.join(mode);
+            if (isCompatible(tid, target)) {
+                grant(tid, target);     // upgrade that conflicts with no other holder
+                return null;
+            }
+            LockRequest upgrade = new LockRequest(tid, target, Thread.currentThread());
+            int i = 0;
+            for (LockRequest r : requests) {
+                if (!r.isUpgrade()) {
+                    break;
+                }
+                i++;
+            }
+            requests.add(i, upgrade);
+            return upgrade;
+        }
+        if (requests.isEmpty() && isCompatible(tid, mode)) {
+            grant(tid, mode);
+            return null;
+        }
+        LockRequest request = new LockRequest(tid, mode, Thread.currentThread());
+        requests.add(request);
+        return request;
     }
-    public synchronized Permissions getLockType() {
-        return this.lockType;
+
+    /**
+     * Grants the lock if that is possible without waiting, and does nothing
+     * otherwise.
+     *
+     * @return true if tid now holds the lock in a mode covering mode
+     */
+    synchronized boolean tryRequest(TransactionId tid, LockMode mode) {
+        if (retired) {
+            return false;
+        }
+        LockMode held = lockHolders.get(tid);
+        if (held != null && held.covers(mode)) {
+            return true;
+        }
+        LockMode target = held == null ? mode : held.join(mode);
+        if ((held != null || requests.isEmpty()) && isCompatible(tid, target)) {
+            grant(tid, target);
+            return true;
+        }
+        return false;
     }
 
+    /**
+     * Withdraws a waiting request because its transaction is being aborted, and
+     * wakes its thread.
+     *
+     * @param reason why the transaction is aborted; only the first reason given
+     *               for a request is kept
+     * @return false if the request had already been granted
+     */
+    synchronized boolean abort(LockRequest request, LockManagerImpl.AbortReason reason) {
+        if (request.granted) {
+            return false;
+        }
+        if (!request.aborted) {
+            request.reason = reason;
+            request.aborted = true;
+            requests.remove(request);
+            grantWaiting();
+            LockSupport.unpark(request.thread);
+        }
+        return true;
+    }
 
-    public synchronized boolean txHoldsLock (TransactionId tid) {
-        return lockHolders.contains(tid);
+    /**
+     * Releases tid's lock and grants the waiting requests that this makes possible.
+     *
+     * @throws LockManagerException if tid does not hold the lock
+     */
+    synchronized void release(TransactionId tid) {
+        LockMode held = lockHolders.remove(tid);
+        if (held == null) {
+            throw new LockManagerException("This transaction does not hold this lock");
+        }
+        modeCounts[held.ordinal()]--;
+        grantWaiting();
     }
 
-    public synchronized void addNewLock (Permissions perm, TransactionId tid) {
-        this.lockType = perm;
-        lockHolders.add(tid);
+    /**
+     * Marks the entry retired if no transaction holds or waits for the lock, in
+     * which case the caller removes it from the lock table.
+     *
+     * @return true if the entry has been retired
+     */
+    synchronized boolean retireIfIdle() {
+        retired = lockHolders.isEmpty() && requests.isEmpty();
+        return retired;
     }
-    public synchronized void setPermission (Permissions perm) {
-        this.lockType = perm;
+
+    /**
+     * @return true if tid holds the lock in a mode covering mode
+     */
+    synchronized boolean holdsLock(TransactionId tid, LockMode mode) {
+        LockMode held = lockHolders.get(tid);
+        return held != null && held.covers(mode);
     }
 
-    public synchronized void releaseLockForTid (TransactionId tid) {
-        lockHolders.remove(tid);
-        if (lockHolders.isEmpty()) { // If only lockholder, fully release lock on page
-            this.lockType = null;
-        }
+    synchronized boolean txHoldsLock(TransactionId tid) {
+        return lockHolders.containsKey(tid);
     }
 
-    // METHODS ON REQUESTS
-    public synchronized List<LockRequest> getRequests() {
-        return this.requests;
+    /**
+     * @return the mode in which tid holds the lock, or null if it does not
+     */
+    synchronized LockMode getLockMode(TransactionId tid) {
+        return lockHolders.get(tid);
     }
 
-    public synchronized void addNewRequest(Permissions perm, TransactionId tid){
-        LockRequest newRequest = new LockRequest(tid, perm);
-        if (perm.permLevel == 1) {
-            int i = 0;
-            if (requestsIsEmpty()) {
-                requests.add(newRequest);
-            }
-            else {
-
-                for (LockRequest req : requests) {
-                    if (req.perm.permLevel == 0) {
-                        requests.add(i, newRequest);
-                        return; // just added this
-                    }
-                    i++;
-                }
-                requests.add(i, newRequest); // this should either be 0, newRequest or just newRequest
-
-                /*
-                for (Iterator<LockRequest> iterator = requests.iterator(); iterator.hasNext()) {
-                    LockRequest temp = iterator.next();
-                    if(temp.perm.permLevel == 0) {
-                        iterator
-                    }
-                }
-                */
-            }
+    /**
+     * @return a copy of the set of transactions holding the lock
+     */
+    synchronized List<TransactionId> getLockHolders() {
+        return new ArrayList<TransactionId>(lockHolders.keySet());
+    }
 
+    /**
+     * @return the transactions the given waiting request waits for, or an empty list
+     * if it is no longer waiting
+     */
+    private synchronized List<TransactionId> blockers(LockRequest request) {
+        List<TransactionId> blockers = new ArrayList<TransactionId>();
+        if (request.granted || request.aborted) {
+            return blockers;
         }
-        else {
-            requests.add(newRequest);
+        for (Map.Entry<TransactionId, LockMode> holder : lockHolders.entrySet()) {
+            if (!holder.getKey().equals(request.tid) && !holder.getValue().isCompatible(request.mode)) {
+                blockers.add(holder.getKey());
+            }
         }
-    }
-
-    public synchronized TransactionId getFirstTid () {
-        for (LockRequest req : requests) {
-            return req.tid;
+        for (LockRequest r : requests) {
+            if (r == request) {
+                break;
+            }
+            if (!r.tid.equals(request.tid) && !blockers.contains(r.tid)) {
+                blockers.add(r.tid);
+            }
         }
-        return null;
+        return blockers;
     }
 
-    public synchronized boolean upgradeGranted (TransactionId tid) {
-        if (this.lockType == null) {return false;}
-        if (this.lockType.permLevel == 0) {
-            for (LockRequest req : requests) {
-                if (req.perm.permLevel == 1 && tid == req.tid) {
-                    return true;
-                }
+    /**
+     * @return true if tid could hold the lock in mode given the other holders
+     */
+    private boolean isCompatible(TransactionId tid, LockMode mode) {
+        LockMode held = lockHolders.get(tid);
+        for (LockMode m : MODES) {
+            int others = modeCounts[m.ordinal()] - (m == held ? 1 : 0);
+            if (others > 0 && !m.isCompatible(mode)) {
+                return false;
             }
         }
-        return false;
-
+        return true;
     }
 
-    public synchronized int getFirstPerm () {
-        for (LockRequest req : requests) {
-            return req.perm.permLevel;
+    private void grant(TransactionId tid, LockMode mode) {
+        LockMode held = lockHolders.get(tid);
+        if (held != null) {
+            modeCounts[held.ordinal()]--;
+            mode = held.join(mode);
         }
-        return -1;
+        lockHolders.put(tid, mode);
+        modeCounts[mode.ordinal()]++;
     }
 
-    public synchronized void clearFirstRequest (TransactionId tid, Permissions perm) {
-        LockRequest firstRequest = new LockRequest(tid, perm);
-        requests.remove(firstRequest);
-    }
-
-    public synchronized boolean isFirstRequest (TransactionId tid) {
-        for (LockRequest req : requests) {
-            return req.tid == tid;
+    /**
+     * Grants requests from the head of the queue for as long as they are
+     * compatible with the holders, in FIFO order.
+     */
+    private void grantWaiting() {
+        ListIterator<LockRequest> it = requests.listIterator();
+        while (it.hasNext()) {
+            LockRequest r = it.next();
+            if (!isCompatible(r.tid, r.mode)) {
+                return;
+            }
+            it.remove();
+            grant(r.tid, r.mode);
+            r.granted = true;
+            LockSupport.unpark(r.thread);
         }
-        return false;
-    }
-
-    public synchronized void removeFirstRequest () {
-        requests.remove(0);
     }
 
-    public synchronized boolean requestsIsEmpty () {
-        return requests.size() == 0;
-    }
-
-    public synchronized void clearRequests () {
-        requests = new ArrayList<LockRequest>();
-    }
     /**
-     * A class representing a single lock request.  Simply tracks the txn and the desired lock type.
-     * Feel free to use this, modify it, or not use it at all.
+     * A waiting request: the txn, the desired lock mode and the thread to hand
+     * the lock to.
      */
-    private class LockRequest {
-        public final TransactionId tid;
-        public final Permissions perm;
+    final class LockRequest {
+        final TransactionId tid;
+        final LockMode mode;
+        final Thread thread;
+        volatile boolean granted;
+        volatile boolean aborted;       // see abort
+        volatile LockManagerImpl.AbortReason reason;    // why it was aborted
 
-        public LockRequest(TransactionId tid, Permissions perm) {
+        LockRequest(TransactionId tid, LockMode mode, Thread thread) {
             this.tid = tid;
-            this.perm = perm;
+            this.mode = mode;
+            this.thread = thread;
         }
 
-        public boolean equals(Object o) {
-            if (!(o instanceof LockRequest)) {
-                return false;
-            }
-            LockRequest otherLockRequest = (LockRequest) o;
-            return tid.equals(otherLockRequest.tid) && perm.equals(otherLockRequest.perm);
+        /**
+         * @return true if the request is an upgrade of a lock tid already holds
+         */
+        boolean isUpgrade() {
+            return lockHolders.containsKey(tid);
+        }
+
+        /**
+         * @return the transactions this request waits for, or an empty list if it is
+         * no longer waiting
+         */
+        List<TransactionId> blockers() {
+            return LockTableEntry.this.blockers(this);
+        }
+
+        /**
+         * @see LockTableEntry#abort
+         */
+        boolean abort(LockManagerImpl.AbortReason reason) {
+            return LockTableEntry.this.abort(this, reason);
         }
 
         public String toString() {
-            return "Request[" + tid + "," + perm + "]";
+            return "Request[" + tid + "," + mode + "]";
         }
     }
 }
@@ -0,0 +1,303 @@
+package colgatedb.transactions;
+
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.BufferManager;
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.PageMaker;
+import colgatedb.page.SlottedPage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Multi-version concurrency control for read-only transactions (snapshot isolation).
+ * <p>
+ * A read-only transaction calls {@link #beginSnapshot} before reading anything and
+ * {@link #endSnapshot} when it completes.  In between, it reads each page as it was
+ * when the snapshot began, i.e., as of the last commit before it, without taking any
+ * locks: it never waits for a writer and a writer never waits for it.
+ * <p>
+ * Committed page images come from the before image machinery of {@link Page}: the
+ * before image of a page is its content as of the last commit.  When a transaction
+ * commits, {@link #commit} stamps it with the next commit timestamp and, if some
+ * snapshot is active, appends the old and new before images of each of its pages to
+ * the page's version chain.  A snapshot reads the newest version in the chain
+ * committed at or before its start; a page without a chain has not been committed to
+ * since the oldest snapshot began, so its committed image is read instead: the one
+ * kept by {@link #beginWrite} if a transaction is modifying it, and its current
+ * before image otherwise.
+ * Versions are discarded as soon as no active snapshot can read them, and no
+ * versions are kept at all while there are no snapshots.
+ * <p>
+ * Versions are kept per page, so a committing transaction is assumed to be the only
+ * writer of its pages (it holds them in X mode), unless it gives their committed
+ * contents explicitly (see {@link #commit(Collection, Map)}).
+ */
+public class VersionStore {
+
+    private static final int NUM_STRIPES = 64;
+
+    private long clock = 0;     // timestamp of the last commit; guarded by this
+    private final Map<TransactionId, Long> snapshots = new ConcurrentHashMap<>();
+    private final Map<PageId, List<Version>> chains = new ConcurrentHashMap<>();
+    private final Map<PageId, Page> committedImages = new ConcurrentHashMap<>();
+    private final Object[] stripes = new Object[NUM_STRIPES];
+
+    public VersionStore() {
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Starts a snapshot for read-only transaction tid as of the last commit.
+     * @throws DbException if tid already has a snapshot
+     */
+    public synchronized void beginSnapshot(TransactionId tid) {
+        if (snapshots.putIfAbsent(tid, clock) != null) {
+            throw new DbException(tid + " already has a snapshot");
+        }
+    }
+
+    /**
+     * Ends the snapshot of tid, if any, and discards the versions only it could read.
+     */
+    public void endSnapshot(TransactionId tid) {
+        long oldest;
+        synchronized (this) {
+            Long ts = snapshots.remove(tid);
+            if (ts == null) {
+                return;
+            }
+            oldest = oldestSnapshot();
+            if (oldest != -1 && oldest <= ts) {
+                return;     // an older snapshot still needs every version this one did
+            }
+        }
+        for (PageId pid : chains.keySet()) {
+            synchronized (stripe(pid)) {
+                List<Version> chain = chains.get(pid);
+                if (chain != null && prune(chain, oldest)) {
+                    chains.remove(pid);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if tid is a read-only transaction reading a snapshot
+     */
+    public boolean hasSnapshot(TransactionId tid) {
+        return tid != null && snapshots.containsKey(tid);
+    }
+
+    /**
+     * Keeps before, the committed image of a page that a transaction has started to
+     * modify, until the transaction commits or {@link #abort}s.  Once the page may be
+     * written to disk with uncommitted changes (STEAL), its before image can't be
+     * relied on, since it is lost when the page is evicted and read back.
+     */
+    public void beginWrite(PageId pid, Page before) {
+        synchronized (stripe(pid)) {
+            committedImages.putIfAbsent(pid, before);
+        }
+    }
+
+    /**
+     * Forgets the committed image kept for pid by {@link #beginWrite} when the
+     * transaction modifying it aborts.
+     */
+    public void abort(PageId pid) {
+        synchronized (stripe(pid)) {
+            committedImages.remove(pid);
+        }
+    }
+
+    /**
+     * Makes the current contents of pages the committed ones (see
+     * {@link Page#setBeforeImage}) as of a new commit timestamp, keeping the
+     * versions active snapshots still need.  Called when a transaction that
+     * modified pages commits, after its changes are durable.
+     *
+     * @return the commit timestamp
+     */
+    public synchronized long commit(Collection<? extends Page> pages) {
+        return commit(pages, Collections.<PageId, byte[]>emptyMap());
+    }
+
+    /**
+     * Like {@link #commit(Collection)}, but the committed contents of the pages in
+     * images are the given ones rather than their current contents, which may also
+     * hold changes of transactions that have not committed (under record locking).
+     *
+     * @param images the serialized committed contents of some of the pages, which
+     *               must be {@link SlottedPage}s
+     * @return the commit timestamp
+     */
+    public synchronized long commit(Collection<? extends Page> pages, Map<PageId, byte[]> images) {
+        long ts = clock + 1;
+        boolean keep = !snapshots.isEmpty();
+        long oldest = keep ? oldestSnapshot() : -1;
+        for (Page page : pages) {
+            PageId pid = page.getId();
+            synchronized (stripe(pid)) {
+                List<Version> chain = chains.get(pid);
+                Page committed = committedImages.remove(pid);
+                if (keep && chain == null) {
+                    chain = new ArrayList<>(2);
+                    chain.add(new Version(0, committed != null ? committed : page.getBeforeImage()));
+                    chains.put(pid, chain);
+                }
+                byte[] image = images.get(pid);
+                if (image != null) {
+                    ((SlottedPage) page).setBeforeImage(image);
+                } else {
+                    page.setBeforeImage();
+                }
+                if (chain != null) {
+                    chain.add(new Version(ts, page.getBeforeImage()));
+                    if (prune(chain, oldest)) {
+                        chains.remove(pid);
+                    }
+                }
+            }
+        }
+        clock = ts;     // snapshots begun from here on see this commit
+        return ts;
+    }
+
+    /**
+     * Returns page pid as of tid's snapshot.  The page is a private copy that is not
+     * in the buffer pool and must not be modified.
+     *
+     * @throws DbException if tid has no snapshot
+     */
+    public Page readVersion(TransactionId tid, PageId pid, PageMaker pageMaker) {
+        Long ts = snapshots.get(tid);
+        if (ts == null) {
+            throw new DbException(tid + " has no snapshot");
+        }
+        synchronized (stripe(pid)) {
+            List<Version> chain = chains.get(pid);
+            if (chain != null) {
+                return versionAt(chain, ts);
+            }
+            Page committed = committedImages.get(pid);
+            if (committed != null) {
+                return committed;
+            }
+        }
+        // no commit since the oldest snapshot began and no writer: the committed
+        // contents are the page's before image, read under the stripe so that a
+        // commit can't slip in
+        BufferManager bufferManager = Database.getBufferManager();
+        Page page = bufferManager.pinPage(pid, pageMaker);
+        try {
+            synchronized (stripe(pid)) {
+                List<Version> chain = chains.get(pid);
+                if (chain != null) {
+                    return versionAt(chain, ts);
+                }
+                Page committed = committedImages.get(pid);
+                return committed != null ? committed : page.getBeforeImage();
+            }
+        } finally {
+            bufferManager.unpinPage(pid, false);
+        }
+    }
+
+    /**
+     * @return the number of page versions currently kept
+     */
+    public int getVersionCount() {
+        int count = 0;
+        for (PageId pid : chains.keySet()) {
+            synchronized (stripe(pid)) {
+                List<Version> chain = chains.get(pid);
+                count += chain == null ? 0 : chain.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the start of the oldest active snapshot, or -1 if there are none
+     */
+    private long oldestSnapshot() {
+        long oldest = -1;
+        for (long ts : snapshots.values()) {
+            if (oldest == -1 || ts < oldest) {
+                oldest = ts;
+            }
+        }
+        return oldest;
+    }
+
+    private Object stripe(PageId pid) {
+        return stripes[(pid.hashCode() & 0x7fffffff) % NUM_STRIPES];
+    }
+
+    private static Page versionAt(List<Version> chain, long ts) {
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            if (chain.get(i).ts <= ts) {
+                return chain.get(i).page;
+            }
+        }
+        throw new DbException("no version old enough for snapshot " + ts);  // pruned too much
+    }
+
+    /**
+     * Drops the versions of a chain that no snapshot starting at or after oldest can
+     * read: all but the newest one committed at or before oldest.
+     *
+     * @return true if the whole chain can be dropped, i.e., there are no snapshots
+     */
+    private static boolean prune(List<Version> chain, long oldest) {
+        if (oldest == -1) {
+            return true;
+        }
+        int keepFrom = 0;
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            if (chain.get(i).ts <= oldest) {
+                keepFrom = i;
+                break;
+            }
+        }
+        chain.subList(0, keepFrom).clear();
+        return false;
+    }
+
+    /**
+     * A committed page image and the timestamp of the commit that produced it.
+     */
+    private static class Version {
+        final long ts;
+        final Page page;
+
+        Version(long ts, Page page) {
+            this.ts = ts;
+            this.page = page;
+        }
+    }
+}
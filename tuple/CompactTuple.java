@@ -0,0 +1,294 @@
+package colgatedb.tuple;
+
+import colgatedb.page.PageId;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A Tuple whose fields are read straight from a serialized row (in the format
+ * written by {@link Field#serialize}) instead of being held as Field objects.
+ * Typed accessors such as {@link #getInt} and {@link #getLong} read a field
+ * without allocating, and {@link #getField} decodes a Field only when asked.
+ * A CompactTuple is a view:
+ * it refers to, and never modifies, the bytes it was created over, so those bytes
+ * must not change while the tuple is in use (the bytes of a page read from disk
+ * never do; see {@link colgatedb.page.SlottedPage#getPageData()}).
+ * <p>
+ * Operators can use a CompactTuple as a flyweight, repositioning one object over
+ * each row in turn with {@link #reset}.  Anyone holding on to such a tuple past the
+ * next reset must keep a {@link #copy()} of it instead.
+ * <p>
+ * A row may be followed by a null bitmap (as rows on a page are; see
+ * {@link colgatedb.page.SlottedPageFormatter}), in which case {@link #isNull}
+ * reads a field's NULL flag from it.  The typed accessors do not check the flag:
+ * callers must check isNull first.
+ * <p>
+ * {@link #setField} and {@link #setNull} are supported for compatibility: the new
+ * value replaces the serialized one in this tuple only.
+ */
+public class CompactTuple extends Tuple {
+
+    private static final long serialVersionUID = 1L;
+
+    private byte[] data;
+    private int offset;
+    private final int[] fieldOffsets;
+    private final int[] nullBits;       // see the constructor; null if the row has no null bitmap
+    private boolean[] overridden;       // fields set with setField or setNull, or null if there are none
+    private Field[] overrides;          // the values of the overridden fields; null for NULL
+    private PageId pid;                 // where the row is, if its RecordId is made lazily; see reset
+    private int slot;
+
+    /**
+     * @param td           the schema of the tuple
+     * @param data         the bytes holding the row
+     * @param offset       the position of the row in data
+     * @param fieldOffsets the position of each field relative to offset; field i has
+     *                     type td.getFieldType(i).  Shared, never modified.
+     */
+    public CompactTuple(TupleDesc td, byte[] data, int offset, int[] fieldOffsets) {
+        this(td, data, offset, fieldOffsets, null);
+    }
+
+    /**
+     * @param nullBits the position, in bits from the start of the row, of the NULL
+     *                 flag of each field: field i is NULL if bit nullBits[i] % 8 of
+     *                 byte offset + nullBits[i] / 8 of data is set.  Shared, never
+     *                 modified.  Null if the row has no null bitmap.
+     * @see #CompactTuple(TupleDesc, byte[], int, int[])
+     */
+    public CompactTuple(TupleDesc td, byte[] data, int offset, int[] fieldOffsets, int[] nullBits) {
+        super(td, false);
+        if (fieldOffsets.length != td.numFields()
+                || (nullBits != null && nullBits.length != fieldOffsets.length)) {
+            throw new IllegalArgumentException("expected an offset for each field");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.fieldOffsets = fieldOffsets;
+        this.nullBits = nullBits;
+    }
+
+    /**
+     * Repositions this tuple over another row with the same layout, discarding any
+     * fields set with setField and the RecordId.
+     */
+    public void reset(byte[] data, int offset) {
+        this.data = data;
+        this.offset = offset;
+        this.overridden = null;
+        this.overrides = null;
+        setRecordId(null);
+    }
+
+    /**
+     * Repositions this tuple over row slot of page pid.  Its RecordId is only
+     * created if asked for, so a scan can reposition a tuple over every row of a
+     * page without allocating.
+     *
+     * @see #reset(byte[], int)
+     */
+    public void reset(byte[] data, int offset, PageId pid, int slot) {
+        reset(data, offset);
+        this.pid = pid;
+        this.slot = slot;
+    }
+
+    @Override
+    public RecordId getRecordId() {
+        RecordId rid = super.getRecordId();
+        if (rid == null && pid != null) {
+            rid = new RecordId(pid, slot);
+            super.setRecordId(rid);
+        }
+        return rid;
+    }
+
+    @Override
+    public void setRecordId(RecordId rid) {
+        super.setRecordId(rid);
+        this.pid = null;
+    }
+
+    /**
+     * @return a tuple with the contents and RecordId of this one that is not
+     * affected by later calls to {@link #reset} on this one
+     */
+    public CompactTuple copy() {
+        CompactTuple t = new CompactTuple(getTupleDesc(), data, offset, fieldOffsets, nullBits);
+        if (overridden != null) {
+            t.overridden = overridden.clone();
+            t.overrides = overrides.clone();
+        }
+        t.setRecordId(getRecordId());
+        return t;
+    }
+
+    /**
+     * Returns a view of some of the fields of this tuple over the same bytes, e.g.
+     * for a projection; no field is decoded or copied.
+     *
+     * @param fields the fields of this tuple that make up the new tuple, in order
+     * @param td     the schema of the new tuple; field i must have the type of field
+     *               fields[i] of this tuple
+     */
+    public CompactTuple project(int[] fields, TupleDesc td) {
+        int[] offsets = new int[fields.length];
+        int[] bits = nullBits == null ? null : new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            offsets[i] = fieldOffsets[fields[i]];
+            if (bits != null) {
+                bits[i] = nullBits[fields[i]];
+            }
+        }
+        CompactTuple t = new CompactTuple(td, data, offset, offsets, bits);
+        if (overridden != null) {
+            for (int i = 0; i < fields.length; i++) {
+                if (overridden[fields[i]]) {
+                    t.setField(i, overrides[fields[i]]);
+                }
+            }
+        }
+        return t;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= fieldOffsets.length) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    private boolean isOverridden(int i) {
+        return overridden != null && overridden[i];
+    }
+
+    @Override
+    public boolean isNull(int i) {
+        if (isOverridden(i)) {
+            return overrides[i] == null;
+        }
+        if (nullBits == null) {
+            return false;
+        }
+        int bit = nullBits[i];
+        return (data[offset + (bit >>> 3)] & (1 << (bit & 7))) != 0;
+    }
+
+    @Override
+    public int getInt(int i) {
+        checkIndex(i);
+        if (isOverridden(i)) {
+            return ((IntField) overrides[i]).getValue();
+        }
+        if (getTupleDesc().getFieldType(i) != Type.INT_TYPE) {
+            throw new IllegalArgumentException("field " + i + " is not of type INT_TYPE");
+        }
+        return Type.readInt(data, offset + fieldOffsets[i]);
+    }
+
+    @Override
+    public long getLong(int i) {
+        checkIndex(i);
+        Type type = getTupleDesc().getFieldType(i);
+        if (isOverridden(i) || type == Type.INT_TYPE) {
+            return super.getLong(i);
+        }
+        if (type == Type.STRING_TYPE || type == Type.DOUBLE_TYPE) {
+            throw new IllegalArgumentException("field " + i + " is not an integer");
+        }
+        return Type.readLong(data, offset + fieldOffsets[i]);
+    }
+
+    @Override
+    public double getDouble(int i) {
+        checkIndex(i);
+        if (isOverridden(i)) {
+            return super.getDouble(i);
+        }
+        if (getTupleDesc().getFieldType(i) != Type.DOUBLE_TYPE) {
+            throw new IllegalArgumentException("field " + i + " is not of type DOUBLE_TYPE");
+        }
+        return Double.longBitsToDouble(Type.readLong(data, offset + fieldOffsets[i]));
+    }
+
+    /**
+     * @return the UTF-8 bytes of the STRING_TYPE field i
+     */
+    public byte[] getStringBytes(int i) {
+        checkIndex(i);
+        if (isOverridden(i)) {
+            return ((StringField) overrides[i]).getBytes();
+        }
+        if (getTupleDesc().getFieldType(i) != Type.STRING_TYPE) {
+            throw new IllegalArgumentException("field " + i + " is not of type STRING_TYPE");
+        }
+        int pos = offset + fieldOffsets[i];
+        return Arrays.copyOfRange(data, pos + 4, pos + 4 + Type.readInt(data, pos));
+    }
+
+    @Override
+    public void setField(int i, Field f) {
+        checkIndex(i);
+        if (f != null && !f.getType().equals(getTupleDesc().getFieldType(i))) {
+            throw new RuntimeException();
+        }
+        if (overridden == null) {
+            overridden = new boolean[fieldOffsets.length];
+            overrides = new Field[fieldOffsets.length];
+        }
+        overridden[i] = true;
+        overrides[i] = f;
+    }
+
+    @Override
+    public void setNull(int i) {
+        setField(i, null);
+    }
+
+    @Override
+    public Field getField(int i) {
+        checkIndex(i);
+        if (isOverridden(i)) {
+            return overrides[i];
+        }
+        if (isNull(i)) {
+            return null;
+        }
+        return getTupleDesc().getFieldType(i).parse(data, offset + fieldOffsets[i]);
+    }
+
+    @Override
+    public Iterator<Field> fields() {
+        return new Iterator<Field>() {
+            private int i = 0;
+
+            public boolean hasNext() {
+                return i < fieldOffsets.length;
+            }
+
+            public Field next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getField(i++);
+            }
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package colgatedb.tuple;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Instance of Field that stores a point in time (a date, or a date and time) as
+ * the number of milliseconds since 1970-01-01T00:00:00Z.  Dates compare as their
+ * millisecond values.
+ */
+public class DateField implements Field {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final long millis;
+
+    /**
+     * @return the number of milliseconds since the epoch
+     */
+    public long getValue() {
+        return millis;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param millis The number of milliseconds since 1970-01-01T00:00:00Z.
+     */
+    public DateField(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * Parses a date (e.g. 2017-03-31, which is taken to be midnight UTC) or an
+     * ISO-8601 instant (e.g. 2017-03-31T12:30:00Z).
+     *
+     * @throws IllegalArgumentException if s is neither
+     */
+    public static DateField valueOf(String s) {
+        try {
+            if (s.indexOf('T') < 0) {
+                return new DateField(LocalDate.parse(s).toEpochDay() * MILLIS_PER_DAY);
+            }
+            return new DateField(Instant.parse(s).toEpochMilli());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid date " + s, e);
+        }
+    }
+
+    /**
+     * @return the date (e.g. 2017-03-31) if the time is midnight UTC, and the
+     * ISO-8601 instant otherwise
+     */
+    public String toString() {
+        if (Math.floorMod(millis, MILLIS_PER_DAY) == 0) {
+            return LocalDate.ofEpochDay(Math.floorDiv(millis, MILLIS_PER_DAY)).toString();
+        }
+        return Instant.ofEpochMilli(millis).toString();
+    }
+
+    public int hashCode() {
+        return Long.hashCode(millis);
+    }
+
+    public boolean equals(Object field) {
+        return (field instanceof DateField) && (((DateField) field).millis == millis);
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeLong(millis);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @see Field#compare
+     */
+    public boolean compare(Op op, Field val) {
+        return Op.compare(op, millis, ((DateField) val).millis);
+    }
+
+    /**
+     * Return the Type of this field.
+     *
+     * @return Type.DATE_TYPE
+     */
+    public Type getType() {
+        return Type.DATE_TYPE;
+    }
+}
@@ -0,0 +1,115 @@
+package colgatedb.tuple;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Instance of Field that stores a fixed-point decimal number with
+ * {@link #SCALE} digits after the decimal point, e.g. an amount of money.  The
+ * number is held as a 64-bit unscaled value (the number times 10^SCALE), so
+ * comparisons and sums are exact integer operations.
+ */
+public class DecimalField implements Field {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of digits after the decimal point.
+     */
+    public static final int SCALE = 4;
+
+    private final long unscaled;
+
+    /**
+     * @return the value of this field times 10^SCALE
+     */
+    public long getUnscaledValue() {
+        return unscaled;
+    }
+
+    /**
+     * @return the value of this field
+     */
+    public BigDecimal getValue() {
+        return BigDecimal.valueOf(unscaled, SCALE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param unscaled The value of this field times 10^SCALE.
+     */
+    public DecimalField(long unscaled) {
+        this.unscaled = unscaled;
+    }
+
+    /**
+     * @param d the value, which is rounded half-up to SCALE digits after the
+     *          decimal point
+     * @throws ArithmeticException if the value does not fit
+     */
+    public DecimalField(BigDecimal d) {
+        this(d.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+    }
+
+    /**
+     * Parses a decimal number such as 12.99 or -0.5.
+     *
+     * @throws NumberFormatException if s is not a decimal number
+     */
+    public static DecimalField valueOf(String s) {
+        return new DecimalField(new BigDecimal(s));
+    }
+
+    public String toString() {
+        return getValue().toPlainString();
+    }
+
+    public int hashCode() {
+        return Long.hashCode(unscaled);
+    }
+
+    public boolean equals(Object field) {
+        return (field instanceof DecimalField) && (((DecimalField) field).unscaled == unscaled);
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeLong(unscaled);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @see Field#compare
+     */
+    public boolean compare(Op op, Field val) {
+        return Op.compare(op, unscaled, ((DecimalField) val).unscaled);
+    }
+
+    /**
+     * Return the Type of this field.
+     *
+     * @return Type.DECIMAL_TYPE
+     */
+    public Type getType() {
+        return Type.DECIMAL_TYPE;
+    }
+}
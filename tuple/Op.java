@@ -29,6 +29,50 @@ public enum Op implements Serializable {
         return values()[i];
     }
 
+    /**
+     * @return the result of comparing a to b with op; LIKE is the same as EQUALS
+     */
+    public static boolean compare(Op op, long a, long b) {
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return a == b;
+            case NOT_EQUALS:
+                return a != b;
+            case GREATER_THAN:
+                return a > b;
+            case GREATER_THAN_OR_EQ:
+                return a >= b;
+            case LESS_THAN:
+                return a < b;
+            case LESS_THAN_OR_EQ:
+                return a <= b;
+        }
+        return false;
+    }
+
+    /**
+     * @return the result of comparing a to b with op; LIKE is the same as EQUALS
+     */
+    public static boolean compare(Op op, double a, double b) {
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return a == b;
+            case NOT_EQUALS:
+                return a != b;
+            case GREATER_THAN:
+                return a > b;
+            case GREATER_THAN_OR_EQ:
+                return a >= b;
+            case LESS_THAN:
+                return a < b;
+            case LESS_THAN_OR_EQ:
+                return a <= b;
+        }
+        return false;
+    }
+
     public String toString() {
         if (this == EQUALS)
             return "=";
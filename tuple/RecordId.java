@@ -80,7 +80,7 @@ public class RecordId implements Serializable {
      */
     @Override
     public int hashCode() {
-        return this.pid.hashCode() * this.tupleno;
+        return 31 * this.pid.hashCode() + this.tupleno;
     }
 
 }
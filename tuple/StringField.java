@@ -2,6 +2,8 @@ package colgatedb.tuple;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * ColgateDB
@@ -17,67 +19,165 @@ import java.io.IOException;
 
 /**
  * Instance of Field that stores a single String of a fixed length.
+ * <p>
+ * The string is held as its UTF-8 encoding, which may be a range of a larger
+ * array such as the bytes of a page (see {@link #StringField(byte[], int, int, int)}),
+ * so reading a field from a page copies nothing.  Comparisons work on the bytes;
+ * a String is only decoded when {@link #getValue()} or {@link #toString()} is
+ * called.  Ordering is by the unsigned UTF-8 bytes, i.e., by Unicode code point.
  */
 public class StringField implements Field {
 
     private static final long serialVersionUID = 1L;
 
-    private final String value;
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
     private final int maxSize;
+    private transient String value;
 
     public String getValue() {
-        return value;
+        String v = value;
+        if (v == null) {
+            v = new String(bytes, offset, length, StandardCharsets.UTF_8);
+            value = v;
+        }
+        return v;
     }
 
     /**
      * Constructor.
      *
      * @param s       The value of this field.
-     * @param maxSize The maximum size of this string
+     * @param maxSize The maximum size of this string, in bytes of its UTF-8
+     *                encoding; longer strings are cut at the last whole character
+     *                that fits
      */
     public StringField(String s, int maxSize) {
-        this.maxSize = maxSize;
-
-        if (s.length() > maxSize)
-            value = s.substring(0, maxSize);
-        else
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        int len = b.length;
+        if (len > maxSize) {
+            len = maxSize;
+            while (len > 0 && (b[len] & 0xc0) == 0x80) {
+                len--;   // don't split a multi-byte character
+            }
+        } else {
             value = s;
+        }
+        this.bytes = b;
+        this.offset = 0;
+        this.length = len;
+        this.maxSize = maxSize;
     }
 
     public StringField(String s) {
         this(s, Type.STRING_LEN);
     }
 
+    /**
+     * Creates a field whose value is the UTF-8 string in bytes[offset, offset +
+     * length).  The bytes are not copied, so they must not be modified afterwards.
+     *
+     * @param maxSize The maximum size of this string; length must not exceed it
+     */
+    public StringField(byte[] bytes, int offset, int length, int maxSize) {
+        if (length < 0 || length > maxSize || offset + length > bytes.length) {
+            throw new IllegalArgumentException("invalid string length " + length);
+        }
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return a copy of the UTF-8 encoding of this string
+     */
+    public byte[] getBytes() {
+        return Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+
+    /**
+     * @return a field with the same value that holds only its own bytes; for
+     * keeping a field created over a larger array, e.g. a page, without keeping
+     * the whole array
+     */
+    public StringField copy() {
+        if (offset == 0 && length == bytes.length) {
+            return this;
+        }
+        StringField f = new StringField(getBytes(), 0, length, maxSize);
+        f.value = value;
+        return f;
+    }
+
+    /**
+     * Serializes a view of a larger array as a field holding only its own bytes.
+     */
+    private Object writeReplace() {
+        return copy();
+    }
+
     public String toString() {
-        return value;
+        return getValue();
     }
 
     public int hashCode() {
-        return value.hashCode();
+        int h = 1;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + bytes[i];
+        }
+        return h;
     }
 
     public boolean equals(Object field) {
-        return ((StringField) field).value.equals(value);
+        StringField other = (StringField) field;
+        return Arrays.equals(bytes, offset, offset + length,
+                other.bytes, other.offset, other.offset + other.length);
+    }
+
+    /**
+     * Compares the UTF-8 bytes of this string and other as unsigned values.
+     *
+     * @return a negative number, zero, or a positive number as this string is less
+     * than, equal to, or greater than other
+     */
+    public int compareTo(StringField other) {
+        return Arrays.compareUnsigned(bytes, offset, offset + length,
+                other.bytes, other.offset, other.offset + other.length);
+    }
+
+    /**
+     * @return true if other occurs in this string
+     */
+    public boolean contains(StringField other) {
+        int n = other.length;
+        if (n == 0) {
+            return true;
+        }
+        byte first = other.bytes[other.offset];
+        for (int i = offset; i + n <= offset + length; i++) {
+            if (bytes[i] == first && Arrays.mismatch(bytes, i, i + n,
+                    other.bytes, other.offset, other.offset + n) < 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Write this string to dos. Always writes maxSize + 4 bytes to the passed
-     * in dos. First four bytes are string length, next bytes are string, with
-     * remainder padded with 0 to maxSize.
+     * in dos. First four bytes are the length of the string's UTF-8 encoding,
+     * next bytes are the encoding, with remainder padded with 0 to maxSize.
      *
      * @param dos Where the string is written
      */
     public void serialize(DataOutputStream dos) throws IOException {
-        String s = value;
-        int overflow = maxSize - s.length();
-        if (overflow < 0) {
-            String news = s.substring(0, maxSize);
-            s = news;
-        }
-        dos.writeInt(s.length());
-        dos.writeBytes(s);
-        while (overflow-- > 0)
+        dos.writeInt(length);
+        dos.write(bytes, offset, length);
+        for (int i = length; i < maxSize; i++) {
             dos.write((byte) 0);
+        }
     }
 
     /**
@@ -89,7 +189,10 @@ public class StringField implements Field {
     public boolean compare(Op op, Field val) {
 
         StringField iVal = (StringField) val;
-        int cmpVal = value.compareTo(iVal.value);
+        if (op == Op.LIKE) {
+            return contains(iVal);
+        }
+        int cmpVal = compareTo(iVal);
 
         switch (op) {
             case EQUALS:
@@ -109,9 +212,6 @@ public class StringField implements Field {
 
             case LESS_THAN_OR_EQ:
                 return cmpVal <= 0;
-
-            case LIKE:
-                return value.indexOf(iVal.value) >= 0;
         }
 
         return false;
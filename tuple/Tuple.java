@@ -23,6 +23,10 @@ import java.util.List;
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * Any field may be SQL NULL, which a tuple records in a bitmap with one bit per
+ * field (see {@link #setNull} and {@link #isNull}).  A NULL field has no Field
+ * object: getField returns null for it.
  */
 public class Tuple implements Serializable {
 
@@ -30,6 +34,7 @@ public class Tuple implements Serializable {
     private ArrayList<Field> tuple;
     private TupleDesc tupleDesc;
     private RecordId rid;
+    private long[] nulls;   // bit i is set if field i is NULL; null if no field has been set to NULL
 
     /**
      * Create a new tuple with the specified schema (type).
@@ -37,11 +42,21 @@ public class Tuple implements Serializable {
      * @param td the schema of this tuple. It must be a valid TupleDesc instance with at least one field.
      */
     public Tuple(TupleDesc td) {
+        this(td, true);
+    }
+
+    /**
+     * @param allocateFields false for subclasses that store their fields some other
+     *                       way (see {@link CompactTuple}) and override the accessors
+     */
+    Tuple(TupleDesc td, boolean allocateFields) {
         if (td.numFields() > 0) {
             tupleDesc = td;
-            tuple = new ArrayList<Field>(td.numFields());
-            for (int i = 0; i < td.numFields(); i++) {
-                tuple.add(i, null);
+            if (allocateFields) {
+                tuple = new ArrayList<Field>(td.numFields());
+                for (int i = 0; i < td.numFields(); i++) {
+                    tuple.add(i, null);
+                }
             }
         }
     }
@@ -57,7 +72,7 @@ public class Tuple implements Serializable {
      * Change the value of the ith field of this tuple.
      *
      * @param i index of the field to change. It must be a valid index.
-     * @param f new value for the field.
+     * @param f new value for the field, or null to make the field NULL.
      * @throws RuntimeException if f does not match type of field i.
      * @throws NoSuchElementException if i is not a valid field reference.
      */
@@ -65,6 +80,10 @@ public class Tuple implements Serializable {
         if (tuple.size() <= i || i < 0) {
             throw new NoSuchElementException();
         }
+        else if (f == null) {
+            setNull(i);
+            return;
+        }
         else if (!f.getType().equals(tupleDesc.getFieldType(i))) {
             throw new RuntimeException();
         }
@@ -75,11 +94,39 @@ public class Tuple implements Serializable {
             tuple.set(i, f);
 
         }
+        if (nulls != null) {
+            nulls[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    /**
+     * Makes the ith field of this tuple NULL.
+     *
+     * @param i index of the field to change. It must be a valid index.
+     * @throws NoSuchElementException if i is not a valid field reference.
+     */
+    public void setNull(int i) throws NoSuchElementException {
+        if (tuple.size() <= i || i < 0) {
+            throw new NoSuchElementException();
+        }
+        tuple.set(i, null);
+        if (nulls == null) {
+            nulls = new long[(tuple.size() + 63) >>> 6];
+        }
+        nulls[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * @param i index of the field. It must be a valid index.
+     * @return true if the ith field is NULL
+     */
+    public boolean isNull(int i) {
+        return nulls != null && (nulls[i >>> 6] & (1L << i)) != 0;
     }
 
     /**
      * @param i field index to return. Must be a valid index.
-     * @return the value of the ith field, or null if it has not been set.
+     * @return the value of the ith field, or null if it is NULL or has not been set.
      * @throws NoSuchElementException if i is not a valid field reference.
      */
     public Field getField(int i) throws NoSuchElementException {
@@ -91,6 +138,42 @@ public class Tuple implements Serializable {
             }
         }
 
+    /**
+     * @param i index of an INT_TYPE field. It must be a valid index and the field
+     *          must not be NULL (see {@link #isNull}).
+     * @return the value of the ith field
+     */
+    public int getInt(int i) {
+        return ((IntField) getField(i)).getValue();
+    }
+
+    /**
+     * @param i index of an INT_TYPE, LONG_TYPE, DATE_TYPE or DECIMAL_TYPE field. It
+     *          must be a valid index and the field must not be NULL.
+     * @return the value of the ith field; milliseconds since the epoch for a date and
+     * the unscaled value for a decimal
+     */
+    public long getLong(int i) {
+        Field f = getField(i);
+        if (f instanceof LongField) {
+            return ((LongField) f).getValue();
+        } else if (f instanceof DateField) {
+            return ((DateField) f).getValue();
+        } else if (f instanceof DecimalField) {
+            return ((DecimalField) f).getUnscaledValue();
+        }
+        return ((IntField) f).getValue();
+    }
+
+    /**
+     * @param i index of a DOUBLE_TYPE field. It must be a valid index and the field
+     *          must not be NULL.
+     * @return the value of the ith field
+     */
+    public double getDouble(int i) {
+        return ((DoubleField) getField(i)).getValue();
+    }
+
     /**
      * Returns the contents of this Tuple as a string. Note that to pass the
      * system tests, the format needs to be as follows:
@@ -100,20 +183,18 @@ public class Tuple implements Serializable {
      * where \t is a tab and \n is a newline
      */
     public String toString() {
-        String str = "";
-        for (int i = 0; i < tuple.size() - 1; i++) {
-            String column = tuple.get(i).toString();
-            str += column;
-            str += "\t";
+        StringBuilder str = new StringBuilder();
+        int n = tupleDesc.numFields();
+        for (int i = 0; i < n - 1; i++) {
+            str.append(getField(i)).append('\t');
         }
-        int lastIndex = tuple.size() - 1;
-        String lastColumn = tuple.get(lastIndex).toString();
-        return str +=  lastColumn;
+        return str.append(getField(n - 1)).toString();
     }
 
 
     /**
-     * @return An iterator which iterates over all the fields of this tuple
+     * @return An iterator which iterates over all the fields of this tuple; NULL
+     * fields are returned as null
      */
     public Iterator<Field> fields() {
         // hint: use java.util.Arrays.asList to convert array into a list, then return list iterator.
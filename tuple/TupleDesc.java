@@ -1,11 +1,13 @@
 package colgatedb.tuple;
 
 import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * ColgateDB
@@ -21,10 +23,33 @@ import java.util.List;
 
 /**
  * TupleDesc describes the schema of a tuple.
+ * <p>
+ * A TupleDesc is immutable.  Its size, the offset of each field within a
+ * serialized tuple and the index of each field name are computed when it is
+ * created, so none of the accessors loop over the fields.  Descriptors can be
+ * interned ({@link #intern()}) so that all descriptors with the same field types
+ * and names share one instance, which makes {@link #equals} a reference check in
+ * the common case.  Interned descriptors are only weakly referenced by the intern
+ * table, so the schemas of ad-hoc queries (e.g., of joins and aliased scans) are
+ * dropped once no operator uses them.
  */
 public class TupleDesc implements Serializable {
 
-    private ArrayList<TDItem> TDItems;
+    /**
+     * The canonical descriptors, keyed by their field types and names.
+     */
+    private static final ConcurrentHashMap<Key, Interned> interned =
+            new ConcurrentHashMap<Key, Interned>();
+    private static final ReferenceQueue<TupleDesc> collected = new ReferenceQueue<TupleDesc>();
+
+    private final TDItem[] TDItems;
+    private final Type[] types;
+    private final int[] offsets;
+    private final int size;
+    private final HashMap<String, Integer> nameToIndex;
+    private final int hash;
+    private transient volatile Merged lastMerge;    // see merge
+
     /**
      * A helper class to facilitate organizing the information of each field
      */
@@ -64,11 +89,7 @@ public class TupleDesc implements Serializable {
      *                be null.
      */
     public TupleDesc(Type[] typeAr, String[] fieldAr) {
-        TDItems = new ArrayList<TDItem>();
-        for(int i = 0; i < typeAr.length; i++) {
-            TDItem td = new TDItem(typeAr[i], fieldAr[i]);
-            TDItems.add(td);
-        }
+        this(items(typeAr, fieldAr));
     }
 
     /**
@@ -80,10 +101,71 @@ public class TupleDesc implements Serializable {
      *               TupleDesc. It must contain at least one entry.
      */
     public TupleDesc(Type[] typeAr) {
-        TDItems = new ArrayList<TDItem>();
+        this(items(typeAr, null));
+    }
+
+    private TupleDesc(TDItem[] items) {
+        this.TDItems = items;
+        this.types = new Type[items.length];
+        this.offsets = new int[items.length];
+        this.nameToIndex = new HashMap<String, Integer>();
+        int offset = 0;
+        for (int i = 0; i < items.length; i++) {
+            types[i] = items[i].fieldType;
+            offsets[i] = offset;
+            offset += types[i].getLen();
+            if (items[i].fieldName != null && !nameToIndex.containsKey(items[i].fieldName)) {
+                nameToIndex.put(items[i].fieldName, i);
+            }
+        }
+        this.size = offset;
+        this.hash = Arrays.hashCode(types);
+    }
+
+    private static TDItem[] items(Type[] typeAr, String[] fieldAr) {
+        TDItem[] items = new TDItem[typeAr.length];
         for (int i = 0; i < typeAr.length; i++) {
-            TDItem td = new TDItem(typeAr[i], "");
-            TDItems.add(td);
+            items[i] = new TDItem(typeAr[i], fieldAr == null ? "" : fieldAr[i]);
+        }
+        return items;
+    }
+
+    /**
+     * Returns the canonical descriptor with the same field types and names as this
+     * one; like {@link String#intern()}, descriptors that are interned can be
+     * compared with ==.
+     *
+     * @return the canonical descriptor, which is this one if it is the first with
+     * these types and names to be interned
+     */
+    public TupleDesc intern() {
+        expungeCollected();
+        Key key = new Key(this);
+        Interned mine = null;
+        while (true) {
+            Interned ref = interned.get(key);
+            TupleDesc td = ref == null ? null : ref.get();
+            if (td != null) {
+                return td;
+            }
+            if (mine == null) {
+                mine = new Interned(this, key);
+            }
+            if (ref == null ? interned.putIfAbsent(key, mine) == null : interned.replace(key, ref, mine)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Removes the entries of descriptors that have been garbage collected from the
+     * intern table.
+     */
+    private static void expungeCollected() {
+        Object ref;
+        while ((ref = collected.poll()) != null) {
+            Interned entry = (Interned) ref;
+            interned.remove(entry.key, entry);
         }
     }
 
@@ -91,7 +173,7 @@ public class TupleDesc implements Serializable {
      * @return the number of fields in this TupleDesc
      */
     public int numFields() {
-        return TDItems.size();
+        return TDItems.length;
     }
 
     /**
@@ -103,12 +185,10 @@ public class TupleDesc implements Serializable {
      * @throws NoSuchElementException if i is not a valid field reference.
      */
     public Type getFieldType(int i) throws NoSuchElementException {
-        if (TDItems.size() <= i) {
+        if (i < 0 || i >= types.length) {
             throw new NoSuchElementException();
         }
-        else {
-            return TDItems.get(i).fieldType;
-        }
+        return types[i];
     }
 
     /**
@@ -119,12 +199,25 @@ public class TupleDesc implements Serializable {
      * @throws NoSuchElementException if i is not a valid field reference.
      */
     public String getFieldName(int i) throws NoSuchElementException {
-        if (TDItems.size() <= i) {
+        if (i < 0 || i >= TDItems.length) {
             throw new NoSuchElementException();
         }
-        else {
-            return TDItems.get(i).fieldName;
+        return TDItems[i].fieldName;
+    }
+
+    /**
+     * Gets the position of the ith field within a serialized tuple, i.e. the total
+     * length of the fields before it.
+     *
+     * @param i index of the field. It must be a valid index.
+     * @return the offset in bytes of the ith field
+     * @throws NoSuchElementException if i is not a valid field reference.
+     */
+    public int getFieldOffset(int i) throws NoSuchElementException {
+        if (i < 0 || i >= offsets.length) {
+            throw new NoSuchElementException();
         }
+        return offsets[i];
     }
 
     /**
@@ -135,16 +228,11 @@ public class TupleDesc implements Serializable {
      * @throws NoSuchElementException if no field with a matching name is found.
      */
     public int fieldNameToIndex(String name) throws NoSuchElementException {
-        for (int i = 0; i < TDItems.size(); i++) {
-            TDItem item = TDItems.get(i);
-            if (item == null || item.fieldName == null) {
-                continue;
-            }
-            else if (item.fieldName.equals(name)) {
-                return i;
-            }
+        Integer i = name == null ? null : nameToIndex.get(name);
+        if (i == null) {
+            throw new NoSuchElementException();
         }
-        throw new NoSuchElementException();
+        return i;
     }
 
     /**
@@ -155,12 +243,7 @@ public class TupleDesc implements Serializable {
      * @see Type#getLen()
      */
     public int getSize() {
-        int totalSize = 0;
-        for (int i = 0; i < TDItems.size(); i++) {
-            int fieldSize = TDItems.get(i).fieldType.getLen();
-            totalSize += fieldSize;
-        }
-        return totalSize;
+        return size;
     }
 
     /**
@@ -168,7 +251,7 @@ public class TupleDesc implements Serializable {
      * that are included in this TupleDesc
      */
     public Iterator<TDItem> iterator() {
-        return TDItems.iterator();
+        return Arrays.asList(TDItems).iterator();
     }
 
     /**
@@ -180,26 +263,21 @@ public class TupleDesc implements Serializable {
      * @return true if the object is equal to this TupleDesc.
      */
     public boolean equals(Object o) {
-        if (o instanceof TupleDesc) {
-            TupleDesc tupleDesc = (TupleDesc)o;
-            if (tupleDesc.TDItems.size() != TDItems.size()) {
-                return false;
-            }
-            else {
-                for (int i = 0; i < TDItems.size(); i++) {
-                    return (TDItems.get(i).fieldType == tupleDesc.TDItems.get(i).fieldType);
-                }
-            }
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TupleDesc)) {
+            return false;
         }
-        return false;
+        TupleDesc other = (TupleDesc) o;
+        return hash == other.hash && Arrays.equals(types, other.types);
     }
 
+    /**
+     * Consistent with {@link #equals}: depends only on the field types.
+     */
     public int hashCode() {
-        // If you want to use TupleDesc as keys for HashMap, implement this so
-        // that equal objects have equals hashCode() results.  If you're not
-        // sure yet (you may not be), then leave the UnsupportedOperationException
-        // so that if this method ever gets called, it will trigger an exception.
-        throw new UnsupportedOperationException("unimplemented");
+        return hash;
     }
 
     /**
@@ -209,19 +287,14 @@ public class TupleDesc implements Serializable {
      * @return String describing this descriptor.
      */
     public String toString() {
-        String str = "";
-        for (int i = 0; i < TDItems.size() - 1; i++) {
-            String type = TDItems.get(i).fieldType.toString();
-            String name = TDItems.get(i).fieldName.toString();
-            str += name + "(";
-            str += type + "), ";
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < TDItems.length; i++) {
+            if (i > 0) {
+                str.append(", ");
+            }
+            str.append(TDItems[i].fieldName).append("(").append(TDItems[i].fieldType).append(")");
         }
-        int lastIndex = TDItems.size() - 1;
-        String type = TDItems.get(lastIndex).fieldType.toString();
-        String name = TDItems.get(lastIndex).fieldName.toString();
-        str += name + "(";
-        str += type + ")";
-        return str;
+        return str.toString();
     }
 
     /**
@@ -230,19 +303,76 @@ public class TupleDesc implements Serializable {
      *
      * @param td1 The TupleDesc with the first fields of the new TupleDesc
      * @param td2 The TupleDesc with the last fields of the TupleDesc
-     * @return the new TupleDesc
+     * @return the new TupleDesc, interned.  The last merge of td1 is remembered,
+     * so merging the same pair again (e.g., for each row) allocates nothing.
      */
     public static TupleDesc merge(TupleDesc td1, TupleDesc td2) {
-        TupleDesc td = new TupleDesc(new Type[] {});
-        for (int i = 0; i < td1.numFields(); i++) {
-            TDItem item = td1.TDItems.get(i);
-            td.TDItems.add(item);
+        Merged last = td1.lastMerge;
+        if (last != null && last.with == td2) {
+            return last.result;
         }
-        for (int i = 0; i < td2.numFields(); i++) {
-            TDItem item = td2.TDItems.get(i);
-            td.TDItems.add(item);
+        TDItem[] items = Arrays.copyOf(td1.TDItems, td1.TDItems.length + td2.TDItems.length);
+        System.arraycopy(td2.TDItems, 0, items, td1.TDItems.length, td2.TDItems.length);
+        TupleDesc result = new TupleDesc(items).intern();
+        td1.lastMerge = new Merged(td2, result);
+        return result;
+    }
+
+    /**
+     * The result of merging a descriptor with another one.
+     */
+    private static final class Merged {
+        final TupleDesc with;
+        final TupleDesc result;
+
+        Merged(TupleDesc with, TupleDesc result) {
+            this.with = with;
+            this.result = result;
         }
-        return td;
     }
-}
 
+    /**
+     * An entry of the intern table, which does not keep its descriptor alive.
+     */
+    private static final class Interned extends WeakReference<TupleDesc> {
+        final Key key;
+
+        Interned(TupleDesc td, Key key) {
+            super(td, collected);
+            this.key = key;
+        }
+    }
+
+    /**
+     * The identity of a descriptor for interning: its field types and names.  It
+     * does not refer to the descriptor itself.
+     */
+    private static final class Key {
+        private final Type[] types;     // shared with the descriptor, never modified
+        private final String[] names;
+        private final int hash;
+
+        Key(TupleDesc td) {
+            this.types = td.types;
+            this.names = new String[td.TDItems.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = td.TDItems[i].fieldName;
+            }
+            this.hash = td.hash * 31 + Arrays.hashCode(names);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && Arrays.equals(types, other.types) && Arrays.equals(names, other.names);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -21,6 +21,9 @@ import java.text.ParseException;
  * Class representing a type in ColgateDB.
  * Types are static objects defined by this class; hence, the Type
  * constructor is private.
+ * <p>
+ * LONG_TYPE, DATE_TYPE and DECIMAL_TYPE values are serialized as 8-byte
+ * big-endian integers and DOUBLE_TYPE values as 8-byte IEEE doubles.
  */
 public enum Type implements Serializable {
     INT_TYPE() {
@@ -38,6 +41,10 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(byte[] bytes, int pos) {
+            return new IntField(readInt(bytes, pos));
+        }
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -49,13 +56,94 @@ public enum Type implements Serializable {
             try {
                 int strLen = dis.readInt();
                 byte bs[] = new byte[strLen];
-                dis.read(bs);
+                dis.readFully(bs);
                 dis.skipBytes(STRING_LEN - strLen);
-                return new StringField(new String(bs), STRING_LEN);
+                return new StringField(bs, 0, strLen, STRING_LEN);
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading from stream", new ParseException("couldn't parse", 0));
+            }
+        }
+
+        @Override
+        public Field parse(byte[] bytes, int pos) {
+            return new StringField(bytes, pos + 4, readInt(bytes, pos), STRING_LEN);
+        }
+    }, LONG_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) {
+            try {
+                return new LongField(dis.readLong());
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading from stream", new ParseException("couldn't parse", 0));
+            }
+        }
+
+        @Override
+        public Field parse(byte[] bytes, int pos) {
+            return new LongField(readLong(bytes, pos));
+        }
+    }, DOUBLE_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) {
+            try {
+                return new DoubleField(dis.readDouble());
             } catch (IOException e) {
                 throw new RuntimeException("Error reading from stream", new ParseException("couldn't parse", 0));
             }
         }
+
+        @Override
+        public Field parse(byte[] bytes, int pos) {
+            return new DoubleField(Double.longBitsToDouble(readLong(bytes, pos)));
+        }
+    }, DATE_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) {
+            try {
+                return new DateField(dis.readLong());
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading from stream", new ParseException("couldn't parse", 0));
+            }
+        }
+
+        @Override
+        public Field parse(byte[] bytes, int pos) {
+            return new DateField(readLong(bytes, pos));
+        }
+    }, DECIMAL_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) {
+            try {
+                return new DecimalField(dis.readLong());
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading from stream", new ParseException("couldn't parse", 0));
+            }
+        }
+
+        @Override
+        public Field parse(byte[] bytes, int pos) {
+            return new DecimalField(readLong(bytes, pos));
+        }
     };
 
     public static final int STRING_LEN = 128;
@@ -74,4 +162,29 @@ public enum Type implements Serializable {
      */
     public abstract Field parse(DataInputStream dis);
 
+    /**
+     * Reads a field of this type from bytes written by its serialize method.
+     * Variable-length contents (a string's bytes) are not copied, so bytes must not
+     * be modified afterwards.
+     *
+     * @param bytes the serialized data, e.g. a page
+     * @param pos   the position of the field in bytes
+     */
+    public abstract Field parse(byte[] bytes, int pos);
+
+    /**
+     * Reads a big-endian int, as written by DataOutputStream.writeInt.
+     */
+    public static int readInt(byte[] bytes, int pos) {
+        return (bytes[pos] << 24) | ((bytes[pos + 1] & 0xff) << 16)
+                | ((bytes[pos + 2] & 0xff) << 8) | (bytes[pos + 3] & 0xff);
+    }
+
+    /**
+     * Reads a big-endian long, as written by DataOutputStream.writeLong.
+     */
+    public static long readLong(byte[] bytes, int pos) {
+        return ((long) readInt(bytes, pos) << 32) | (readInt(bytes, pos + 4) & 0xffffffffL);
+    }
+
 }